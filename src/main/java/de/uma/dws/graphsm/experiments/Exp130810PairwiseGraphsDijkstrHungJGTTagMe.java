@@ -1,8 +1,10 @@
 package de.uma.dws.graphsm.experiments;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -17,6 +19,9 @@ import org.slf4j.LoggerFactory;
 import de.uma.dws.graphsm.ConfFactory;
 import de.uma.dws.graphsm.datamodel.Tuple;
 import de.uma.dws.graphsm.jgrapht.DijkstraParallel;
+import de.uma.dws.graphsm.jgrapht.DijkstraPathLengthSweep;
+import de.uma.dws.graphsm.jgrapht.DocGraphSnapshot;
+import de.uma.dws.graphsm.jgrapht.EntityDistanceIndex;
 import de.uma.dws.graphsm.main.BuildSeparateDocGraphs;
 import de.uma.dws.graphsm.neo4j.Neo4jGraphUtils;
 import de.uma.dws.graphsm.neo4j.Neo4jRdfGraph;
@@ -50,6 +55,9 @@ public class Exp130810PairwiseGraphsDijkstrHungJGTTagMe {
    static Double MAX_PATH_COST = Double.MAX_VALUE; 
 //   			MAX_PATH_LENGTH * MAX_EDGE_COST * PATH_COST_FACTOR;
    
+   //Look up entity distances on the graph of the whole collection instead of searching each document pair graph
+   static boolean COLLECTION_GRAPH_INDEX = false;
+   
    final static TripleCostWeighter weigher = new TripleWeighterEqualWeights(true);
 
    
@@ -86,21 +94,40 @@ public class Exp130810PairwiseGraphsDijkstrHungJGTTagMe {
 			graph.commit();
 		}
 		
-		System.out.println("Loading networks from disk finished");
-		System.out.println("Processing time " + (System.currentTimeMillis() - startTime) / (1000d * 60d) + " mins.");
-
-		for (int i = 1; i <= 4; i++) {
-			
-			MAX_PATH_LENGTH = i;
-			MAX_PATH_COST = Double.MAX_VALUE; //weigher.getMaxCostValue() * MAX_PATH_LENGTH;
-			
+		//Read each document graph only once, all pairs and path lengths share the snapshots
+		ArrayList<DocGraphSnapshot> snapshots = DocGraphSnapshot.loadAll(graphs);
+		
+		//One hop constrained search per source node serves all path lengths 1..4
+		MAX_PATH_LENGTH = 4;
+		MAX_PATH_COST = Double.MAX_VALUE; //weigher.getMaxCostValue() * MAX_PATH_LENGTH;
+		
+		//Entity distances are computed once per weighting scheme and serve all path lengths 1..MAX_PATH_LENGTH
+		EntityDistanceIndex index = null;
+		if (COLLECTION_GRAPH_INDEX) {
+			HashSet<String> entities = new HashSet<String>();
+			for (DocGraphSnapshot snapshot : snapshots)
+				entities.addAll(snapshot.getSourceNodes());
 			try {
-				runPaths(OUTPUT + weigher.toString() + "-steps-" + MAX_PATH_LENGTH, graphs);
+				index = EntityDistanceIndex.loadOrBuild(
+							new File(OUTPUT + weigher.toString() + "-entity-distances.ser"), 
+							DocGraphSnapshot.mergeAll("LP50", snapshots), 
+							entities, 
+							MAX_PATH_LENGTH,
+							MAX_PATH_COST);
 			}
 			catch (IOException e) {
 				e.printStackTrace();
 			}
+		}
+		
+		System.out.println("Loading networks from disk finished");
+		System.out.println("Processing time " + (System.currentTimeMillis() - startTime) / (1000d * 60d) + " mins.");
 
+		try {
+			runPathSweep(OUTPUT + weigher.toString() + "-steps-", snapshots, index);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
 		}
 		
 		for (Neo4jRdfGraph graph : graphs)
@@ -112,7 +139,7 @@ public class Exp130810PairwiseGraphsDijkstrHungJGTTagMe {
 	}
  
    
-   public static void runPaths(String resultDir, ArrayList<Neo4jRdfGraph> graphs) 
+   public static void runPaths(String resultDir, ArrayList<DocGraphSnapshot> graphs, EntityDistanceIndex index) 
    			throws IOException {
    	
    	long startTime = System.currentTimeMillis();
@@ -151,8 +178,13 @@ public class Exp130810PairwiseGraphsDijkstrHungJGTTagMe {
 			for (int j=i+1; j < graphs.size(); j++) {
 //				if (i > 10 | j > 10)
 //					continue;
-				docSimResults.add(pool.submit(
-										new DijkstraParallel(
+				docSimResults.add(pool.submit((index != null)
+										? new DijkstraParallel(
+													graphs.get(i),
+													graphs.get(j),
+													index,
+													MAX_PATH_LENGTH)
+										: new DijkstraParallel(
 													graphs.get(i),
 													graphs.get(j),
 													MAX_PATH_LENGTH,
@@ -187,6 +219,77 @@ public class Exp130810PairwiseGraphsDijkstrHungJGTTagMe {
 
 	}
    
+	/**
+	 * As {@link #runPaths(String, ArrayList, EntityDistanceIndex)} for all path lengths 1..MAX_PATH_LENGTH at once,
+	 * results for path length l are written to resultDirPrefix + l + ".txt" and, without index, the paths to
+	 * resultDirPrefix + l + "-all-path.txt"
+	 */
+	public static void runPathSweep(String resultDirPrefix, ArrayList<DocGraphSnapshot> graphs, EntityDistanceIndex index) 
+				throws IOException {
+		
+		long startTime = System.currentTimeMillis();
+		
+		System.out.println("Running Dijkstra sweep with" +
+				" MAX_PATH_COST " + MAX_PATH_COST + 
+				" (MAX_PATH_LENGTH 1.." + MAX_PATH_LENGTH + ")");
+		
+		ExecutorService pool = Executors.newFixedThreadPool(
+					conf.getInt("system.parallel.threads", 1));
+		
+		ArrayList<Future<Tuple<String,double[]>>> docSimResults = 
+					new ArrayList<Future<Tuple<String,double[]>>>();
+		
+		FileWriter[] pathWriters = new FileWriter[MAX_PATH_LENGTH];
+		if (index == null)
+			for (int l = 1; l <= MAX_PATH_LENGTH; l++)
+				pathWriters[l - 1] = new FileWriter(resultDirPrefix + l + "-all-path.txt");
+		
+		for (int i=0; i < graphs.size(); i++) {
+			for (int j=i+1; j < graphs.size(); j++) {
+				docSimResults.add(pool.submit((index != null)
+										? new DijkstraPathLengthSweep(
+													graphs.get(i),
+													graphs.get(j),
+													index,
+													MAX_PATH_LENGTH)
+										: new DijkstraPathLengthSweep(
+													graphs.get(i),
+													graphs.get(j),
+													MAX_PATH_LENGTH,
+													MAX_PATH_COST,
+													pathWriters)));
+			}
+		}
+		
+		pool.shutdown();
+		
+		FileWriter[] w = new FileWriter[MAX_PATH_LENGTH];
+		for (int l = 1; l <= MAX_PATH_LENGTH; l++)
+			w[l - 1] = new FileWriter(resultDirPrefix + l + ".txt");
+		
+		for (Future<Tuple<String,double[]>> docSim : docSimResults) {
+			try {
+				Tuple<String, double[]> t = docSim.get(2, TimeUnit.HOURS);
+				for (int l = 1; l <= MAX_PATH_LENGTH; l++) {
+					log.info("{} ; {} ; {}", t.k, l, t.v[l - 1]);
+					w[l - 1].write(t.k + "\t" + t.v[l - 1] + "\n");
+				}
+			}
+			catch (InterruptedException | ExecutionException | TimeoutException | IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		for (FileWriter writer : w)
+			writer.close();
+		for (FileWriter writer : pathWriters)
+			if (writer != null)
+				writer.close();
+		
+		System.out.println("Results written to ouput files " + resultDirPrefix + "1.." + MAX_PATH_LENGTH + ".txt");
+		System.out.println("Processing time " + (System.currentTimeMillis() - startTime) / (1000d * 60d) + " mins.");
+	}
+   
 	public static ArrayList<Neo4jRdfGraph> build(String input, String graphdir) {
 
 		System.out.println("Creating network from dbpedia with" + " input " + input + " graph output " + graphdir);
@@ -22,11 +22,14 @@ import de.uma.dws.eleval.wikipedia.WikiRedir;
 import de.uma.dws.eleval.wikipedia.WikiRedirMySql;
 import de.uma.dws.graphsm.ConfFactory;
 import de.uma.dws.graphsm.datamodel.JGraphTNode;
+import de.uma.dws.graphsm.datamodel.Tuple;
 import de.uma.dws.graphsm.jgrapht.JGraphTWeightedRdf;
 import de.uma.dws.graphsm.neo4j.DBPediaDocCollectionGraphBuilder;
 import de.uma.dws.graphsm.neo4j.Neo4jGraphUtils;
 import de.uma.dws.graphsm.neo4j.Neo4jRdfGraph;
+import de.uma.dws.graphsm.tools.FilePathCache;
 import de.uma.dws.graphsm.tools.FileSystem;
+import de.uma.dws.graphsm.tripleweighter.CachingTripleCostWeighter;
 import de.uma.dws.graphsm.tripleweighter.TripleWeighter;
 import de.uma.dws.graphsm.tripleweighter.TripleWeighterAddedIC;
 import de.uma.dws.graphsm.tripleweighter.TripleWeighterEqualWeights;
@@ -55,6 +58,9 @@ public class Exp131122KoreEntityRanking {
 
 	public static String	 graphDirBase	  = "neo4j/kore/";
 	
+	//Path costs of earlier runs, null if pathcache.file is not set
+	public static final FilePathCache pathCache = FilePathCache.getInstance();
+	
 	public static final WikiRedir redirectResolver = WikiRedirMySql.getInstance();
 
 
@@ -70,13 +76,13 @@ public class Exp131122KoreEntityRanking {
 		tripleWeighter = new TripleWeighterEqualWeights(true);
 		ArrayList<double[]> unweighted = runExperiment(inputFile);
 		
-		tripleWeighter = new TripleWeighterJointIC(true);
+		tripleWeighter = new CachingTripleCostWeighter(new TripleWeighterJointIC(true));
 		ArrayList<double[]> jointIC = runExperiment(inputFile);
 		
-		tripleWeighter = new TripleWeighterAddedIC(true);
+		tripleWeighter = new CachingTripleCostWeighter(new TripleWeighterAddedIC(true));
 		ArrayList<double[]> addedIC = runExperiment(inputFile);
 		
-		tripleWeighter = new TripleWeighterPMIPlusIC(true);
+		tripleWeighter = new CachingTripleCostWeighter(new TripleWeighterPMIPlusIC(true));
 		ArrayList<double[]> PMIPlusIC = runExperiment(inputFile);
 		
 		int i = 0;
@@ -183,6 +189,30 @@ public class Exp131122KoreEntityRanking {
 		//Prepare results array for later eval		
 		Double[] scores = new Double[prob.size() - 1];
 
+		//Reuse path costs of earlier runs, the graph is only built if a pair is missing
+		String cacheScheme = tripleWeighter + "/" + prob.get(0) + "/L" + MAX_PATH_LENGTH;
+		
+		if (pathCache != null) {
+			String n1 = lodUtils.toPrefixedUri(inst.get(0));
+			ArrayList<Tuple<Integer, Double>> cached = new ArrayList<>();
+			for (int j = 1; j < inst.size(); j++) {
+				Tuple<Integer, Double> path = pathCache.get(cacheScheme, n1, lodUtils.toPrefixedUri(inst.get(j)));
+				if (path == null)
+					break;
+				cached.add(path);
+			}
+			if (cached.size() == scores.length) {
+				for (int j = 0; j < scores.length; j++) {
+					Double cost = cached.get(j).v;
+					scores[j] = (cost == null) ? -999999999d : -cost;
+					out.write(URIref.decode(n1) + "\t" + URIref.decode(lodUtils.toPrefixedUri(inst.get(j + 1))) + "\t"
+					         + cost + "\n");
+				}
+				out.flush();
+				return scores;
+			}
+		}
+
 		//Build neo4 graph
 		String graphDir = graphDirBase + prob.get(0) + ".db/";
 
@@ -231,6 +261,9 @@ public class Exp131122KoreEntityRanking {
 				else
 					scores[j] = -cost;
 				
+				if (pathCache != null)
+					pathCache.put(cacheScheme, n1, n2, null, cost);
+				
             out.write(URIref.decode(n1) + "\t" + URIref.decode(n2) + "\t" + cost + "\n");
          }
          catch (IllegalArgumentException e) {
@@ -0,0 +1,200 @@
+package de.uma.dws.graphsm.jgrapht;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.datamodel.JGraphTNode;
+import de.uma.dws.graphsm.tools.Alphabet;
+
+/**
+ * Immutable, undirected weighted graph in compressed sparse row (CSR) layout. Nodes are int ids interned by an
+ * {@link Alphabet} of labels (prefixed URIs), the neighbours of node i are targets[offsets[i]..offsets[i+1]-1] with
+ * edge costs in costs[]. Counterpart of {@link JGraphTWeightedRdf} for the cheapest path computations (see
+ * {@link IntIndexedRdfGraph#dijkstra(int, int[], int, double, java.io.Writer)}), without any per node or per edge
+ * objects. Instances are read-only and can be shared between threads.
+ */
+public class CompactRdfGraph extends IntIndexedRdfGraph {
+
+	final static Logger	   log	= LoggerFactory.getLogger(CompactRdfGraph.class);
+
+	final Alphabet<String>	labels;
+	final boolean[]	      sourceNode;
+	final int[]	         offsets;
+	final int[]	         targets;
+	final double[]	      costs;
+
+	double	               maxEdgeCost;
+	double	               minEdgeCost;
+
+	private CompactRdfGraph(String graphName, Alphabet<String> labels, boolean[] sourceNode, int[] offsets,
+	         int[] targets, double[] costs, double maxEdgeCost, double minEdgeCost) {
+		this.graphName = graphName;
+		this.labels = labels;
+		this.sourceNode = sourceNode;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.costs = costs;
+		this.maxEdgeCost = maxEdgeCost;
+		this.minEdgeCost = minEdgeCost;
+	}
+
+	public static CompactRdfGraph fromJGraphT(JGraphTWeightedRdf g) {
+
+		Builder builder = new Builder(g.graphName);
+
+		for (JGraphTNode node : g.graph.vertexSet())
+			builder.addNode(node.name, node.sourceNode);
+
+		for (DefaultWeightedEdge e : g.graph.edgeSet()) {
+			// Edges carry no hop count here, so path length limits would be wrong
+			if (JGraphTWeightedRdf.hopsOf(e) != 1)
+				throw new IllegalArgumentException("Graph with contracted chains can not be compacted: " + g.graphName);
+			builder.addEdge(g.graph.getEdgeSource(e).name, g.graph.getEdgeTarget(e).name, g.graph.getEdgeWeight(e));
+		}
+
+		return builder.build();
+	}
+
+	@Override
+	public int nodeCount() {
+		return sourceNode.length;
+	}
+
+	/**
+	 * @return Number of undirected edges
+	 */
+	public int edgeCount() {
+		return targets.length / 2;
+	}
+
+	@Override
+	public int getNodeId(String label) {
+		return labels.lookupIndex(label);
+	}
+
+	@Override
+	public String getLabel(int nodeId) {
+		return labels.lookupObject(nodeId);
+	}
+
+	@Override
+	public boolean isSourceNode(int nodeId) {
+		return sourceNode[nodeId];
+	}
+
+	@Override
+	public int degreeOf(int nodeId) {
+		return offsets[nodeId + 1] - offsets[nodeId];
+	}
+
+	@Override
+	public int getNeighbour(int nodeId, int k) {
+		return targets[offsets[nodeId] + k];
+	}
+
+	@Override
+	public double getCost(int nodeId, int k) {
+		return costs[offsets[nodeId] + k];
+	}
+
+	@Override
+	public String toString() {
+		return "CompactRdfGraph " + graphName + " [nodes=" + nodeCount() + ", edges=" + edgeCount() + "]";
+	}
+
+	/**
+	 * Collects nodes and edges and creates the immutable {@link CompactRdfGraph}. Looping edges are skipped as in
+	 * {@link JGraphTWeightedRdf#addGraph(de.uma.dws.graphsm.neo4j.Neo4jRdfGraph)}.
+	 */
+	public static class Builder {
+
+		String	                graphName;
+		final Alphabet<String>	labels	    = new Alphabet<String>();
+		final TIntArrayList	    sourceNodes	= new TIntArrayList();
+		final TIntArrayList	    edgeFrom	   = new TIntArrayList();
+		final TIntArrayList	    edgeTo	   = new TIntArrayList();
+		final TDoubleArrayList	 edgeCost	   = new TDoubleArrayList();
+
+		public Builder(String graphName) {
+			this.graphName = graphName;
+		}
+
+		public int addNode(String label, boolean sourceNode) {
+			int id = labels.lookupIndex(label);
+			if (sourceNode)
+				sourceNodes.add(id);
+			return id;
+		}
+
+		public Builder addEdge(String label1, String label2, double cost) {
+			return addEdge(labels.lookupIndex(label1), labels.lookupIndex(label2), cost);
+		}
+
+		/**
+		 * Adds an edge between two node ids as returned by {@link #addNode(String, boolean)}
+		 */
+		public Builder addEdge(int id1, int id2, double cost) {
+			if (id1 == id2) {
+				log.debug("Looping edge skiped {}", labels.lookupObject(id1));
+				return this;
+			}
+			edgeFrom.add(id1);
+			edgeTo.add(id2);
+			edgeCost.add(cost);
+			return this;
+		}
+
+		public CompactRdfGraph build() {
+
+			labels.stopGrowth();
+
+			int n = labels.size();
+			int m = edgeFrom.size();
+
+			boolean[] sourceNode = new boolean[n];
+			for (int i = 0; i < sourceNodes.size(); i++)
+				sourceNode[sourceNodes.get(i)] = true;
+
+			// Counting sort of both edge directions into CSR layout
+			int[] offsets = new int[n + 1];
+			for (int e = 0; e < m; e++) {
+				offsets[edgeFrom.get(e) + 1]++;
+				offsets[edgeTo.get(e) + 1]++;
+			}
+			for (int i = 0; i < n; i++)
+				offsets[i + 1] += offsets[i];
+
+			int[] fill = Arrays.copyOf(offsets, n);
+			int[] targets = new int[2 * m];
+			double[] costs = new double[2 * m];
+			double maxEdgeCost = 0d;
+			double minEdgeCost = Double.POSITIVE_INFINITY;
+
+			for (int e = 0; e < m; e++) {
+				int a = edgeFrom.get(e);
+				int b = edgeTo.get(e);
+				double c = edgeCost.get(e);
+				targets[fill[a]] = b;
+				costs[fill[a]++] = c;
+				targets[fill[b]] = a;
+				costs[fill[b]++] = c;
+				if (c > maxEdgeCost)
+					maxEdgeCost = c;
+				if (c < minEdgeCost)
+					minEdgeCost = c;
+			}
+
+			CompactRdfGraph g = new CompactRdfGraph(graphName, labels, sourceNode, offsets, targets, costs, maxEdgeCost,
+			         minEdgeCost);
+			log.debug("Built {}", g);
+			return g;
+		}
+	}
+
+}
@@ -0,0 +1,363 @@
+package de.uma.dws.graphsm.jgrapht;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.datamodel.JGraphTNode;
+import de.uma.dws.graphsm.tools.Alphabet;
+import de.uma.dws.graphsm.tools.AssignmentSolver;
+import de.uma.dws.graphsm.tools.NodeDistMatrix;
+import de.uma.dws.graphsm.tools.SparseAssignmentSolver;
+
+/**
+ * Similarity of two document graphs: cheapest paths between the source nodes of both documents on their joined graph,
+ * best 1:1 match of the source nodes on the normalized path costs and normalization by the number of distinct source
+ * nodes. Compares {@link DocGraphSnapshot}s, JGraphT graphs are copied into snapshots first.
+ */
+public class DijkstraHungarianComparator implements GraphComparator<JGraphTNode, DefaultWeightedEdge> {
+
+	final static Logger log = LoggerFactory.getLogger(DijkstraHungarianComparator.class);
+	final static Configuration conf = ConfFactory.getConf();
+
+	int maxPathLength;
+	Double maxPathCost = null;
+
+	Writer out = null;
+	Writer[] pathWriters = null;
+
+	EntityDistanceIndex index = null;
+
+	boolean sparse = conf.getBoolean("similarity.assignment.sparse", true);
+
+	/**
+	 * @param maxPathCost
+	 *           Set maximum path cost to limit search radius. Set null for unbound search.
+	 * @param writer
+	 *           Provide writer, eg. FileWriter, to get details on path found; provide null to deactive
+	 */
+	public DijkstraHungarianComparator(int maxPathLength, Double maxPathCost, Writer writer) {
+		this.maxPathLength = maxPathLength;
+		this.maxPathCost = maxPathCost;
+		this.out = writer;
+	}
+
+	/**
+	 * Looks up the cheapest paths in index instead of searching them on the pair graph, see
+	 * {@link DijkstraParallel#DijkstraParallel(DocGraphSnapshot, DocGraphSnapshot, EntityDistanceIndex, int)}
+	 * 
+	 * @throws IllegalArgumentException
+	 *            if the index was built for shorter paths than maxPathLength
+	 */
+	public DijkstraHungarianComparator(EntityDistanceIndex index, int maxPathLength) {
+		this(maxPathLength, index.maxPathCost, null);
+		if (maxPathLength > index.maxPathLength)
+			throw new IllegalArgumentException(index + " does not cover paths of length " + maxPathLength);
+		this.index = index;
+	}
+
+	@Override
+	public double computeSimilarity(Graph<JGraphTNode, DefaultWeightedEdge> g1, Graph<JGraphTNode, DefaultWeightedEdge> g2) {
+		return computeSimilarityAtLeast(g1, g2, Double.NEGATIVE_INFINITY);
+	}
+
+	@Override
+	public double computeSimilarityAtLeast(Graph<JGraphTNode, DefaultWeightedEdge> g1,
+	         Graph<JGraphTNode, DefaultWeightedEdge> g2, double tau) {
+
+		Alphabet<String> dictionary = new Alphabet<String>();
+
+		return computeSimilarityAtLeast(
+					DocGraphSnapshot.fromJGraphT("g1", g1, dictionary),
+					DocGraphSnapshot.fromJGraphT("g2", g2, dictionary),
+					tau);
+	}
+
+	/**
+	 * Prints the paths found by {@link #computeSimilarities(String, DocGraphSnapshot, DocGraphSnapshot)} per maximal
+	 * path length, paths of at most l edges to writers[l - 1] (entries may be null), instead of the paths of
+	 * maxPathLength only to the writer of the constructor
+	 */
+	public DijkstraHungarianComparator setPathWriters(Writer[] writers) {
+		this.pathWriters = writers;
+		return this;
+	}
+
+	/**
+	 * @return true if distinct source nodes of the pair may have a path of cost 0, so that common source node counts do
+	 *         not bound the similarity
+	 */
+	public boolean hasZeroCostPaths(DocGraphSnapshot s1, DocGraphSnapshot s2) {
+		if (index != null)
+			return index.hasZeroCosts();
+		return Math.min(s1.graph.minEdgeCost, s2.graph.minEdgeCost) <= 0d;
+	}
+
+	public double computeSimilarity(DocGraphSnapshot s1, DocGraphSnapshot s2) {
+		return computeSimilarityAtLeast(s1, s2, Double.NEGATIVE_INFINITY);
+	}
+
+	public double computeSimilarityAtLeast(DocGraphSnapshot s1, DocGraphSnapshot s2, double tau) {
+		try {
+			return computeSimilarityAtLeast(s1.getName() + "\t" + s2.getName(), s1, s2, tau);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param pairId
+	 *           Name of the pair for logging and path printing
+	 * @return The similarity if it is >= tau, otherwise an upper bound of the similarity which is < tau
+	 * @throws IOException
+	 *            if paths can not be written
+	 */
+	public double computeSimilarityAtLeast(String pairId, DocGraphSnapshot s1, DocGraphSnapshot s2, double tau)
+	         throws IOException {
+
+		//Join both document graphs on their shared nodes, dead end nodes are never part of a cheapest path 
+		//between two source nodes and thus need not be removed
+		PairGraphOverlay graph = (index == null) ? new PairGraphOverlay(pairId, s1, s2) : null;
+		
+		log.debug("{}", (index == null) ? graph : index);
+
+		List<String> sNodes1 = s1.getSourceNodes();
+		List<String> sNodes2 = s2.getSourceNodes();
+
+		//Ensure that snodes1 node cnt >= snode2 node cnt 
+		if (sNodes1.size() < sNodes2.size()) {
+			List<String> tmp = sNodes1;
+			sNodes1 = sNodes2;
+			sNodes2 = tmp;
+		}
+
+		int sNode1Cnt = sNodes1.size();
+		int sNode2Cnt = sNodes2.size();
+
+		//Skip pairs which can not reach tau, based on common source nodes and nearest neighbours only
+		if (tau > 0d && graph != null) {
+			double upperBound = upperBound(graph, sNodes1, sNodes2);
+			if (upperBound < tau) {
+				log.info("Dijkstra computation pruned: Pair {} upperBound {} < tau {}", pairId, upperBound, tau);
+				return upperBound;
+			}
+		}
+
+		//Cheapest paths with at most maxPathLength edges between all pairs of source nodes, one search per row
+		Double[][] rowCosts = new Double[sNode1Cnt][];
+		for (int i = 0; i < sNode1Cnt; i++)
+			rowCosts[i] = (index != null)
+						? index.getCosts(sNodes1.get(i), sNodes2, maxPathLength)
+						: graph.dijkstraByPathLength(sNodes1.get(i), sNodes2, maxPathLength, maxPathCost, out)[maxPathLength - 1];
+
+		return score(pairId, maxPathLength, sNode1Cnt, sNode2Cnt, rowCosts);
+	}
+
+	/**
+	 * Similarities for all path lengths 1..maxPathLength at the cost of one, as needed by the path length sweeps of the
+	 * experiments: each source node is searched once with
+	 * {@link IntIndexedRdfGraph#dijkstraByPathLength(String, List, int, Double, Writer)}.
+	 *
+	 * @return similarities[l - 1] with paths of at most l edges
+	 * @throws IOException
+	 *            if paths can not be written
+	 */
+	public double[] computeSimilarities(String pairId, DocGraphSnapshot s1, DocGraphSnapshot s2) throws IOException {
+
+		PairGraphOverlay graph = (index == null) ? new PairGraphOverlay(pairId, s1, s2) : null;
+
+		List<String> sNodes1 = s1.getSourceNodes();
+		List<String> sNodes2 = s2.getSourceNodes();
+
+		//Ensure that snodes1 node cnt >= snode2 node cnt 
+		if (sNodes1.size() < sNodes2.size()) {
+			List<String> tmp = sNodes1;
+			sNodes1 = sNodes2;
+			sNodes2 = tmp;
+		}
+
+		int sNode1Cnt = sNodes1.size();
+		int sNode2Cnt = sNodes2.size();
+
+		//rowCosts[l][i] cheapest paths from source node i with at most l + 1 edges
+		Double[][][] rowCosts = new Double[maxPathLength][sNode1Cnt][];
+		for (int i = 0; i < sNode1Cnt; i++) {
+			Double[][] costs = new Double[maxPathLength][];
+			if (index != null)
+				for (int l = 0; l < maxPathLength; l++)
+					costs[l] = index.getCosts(sNodes1.get(i), sNodes2, l + 1);
+			else if (pathWriters != null)
+				costs = graph.dijkstraByPathLength(sNodes1.get(i), sNodes2, maxPathLength, maxPathCost, pathWriters);
+			else
+				costs = graph.dijkstraByPathLength(sNodes1.get(i), sNodes2, maxPathLength, maxPathCost, out);
+			for (int l = 0; l < maxPathLength; l++)
+				rowCosts[l][i] = costs[l];
+		}
+
+		double[] similarities = new double[maxPathLength];
+		for (int l = 0; l < maxPathLength; l++)
+			similarities[l] = score(pairId, l + 1, sNode1Cnt, sNode2Cnt, rowCosts[l]);
+
+		return similarities;
+	}
+
+	/**
+	 * Normalizes the path costs, finds the best 1:1 match of the source nodes and normalizes its cost by the number of
+	 * distinct source nodes.
+	 *
+	 * @param rowCosts
+	 *           rowCosts[i][j] cheapest path cost between source node i of the larger and j of the smaller document, null
+	 *           if there is no path
+	 */
+	double score(String pairId, int pathLength, int sNode1Cnt, int sNode2Cnt, Double[][] rowCosts) {
+
+		//Collect the cheapest paths between all pairs of source nodes, the sparse mode keeps only the pairs 
+		//connected by a path instead of the full distance matrix
+		Double mostExpensivePath = 0d;
+		int commonNodesCnt = 0;
+		
+		Double[][] distMatrix = sparse ? null : new Double[sNode1Cnt][sNode2Cnt];
+		
+		TIntArrayList entryRows = new TIntArrayList();
+		TIntArrayList entryCols = new TIntArrayList();
+		TDoubleArrayList entryCosts = new TDoubleArrayList();
+
+		for (int i = 0; i < sNode1Cnt; i++) {
+
+			Double[] costs = rowCosts[i];
+
+			for (int j = 0; j < sNode2Cnt; j++) {
+
+				Double cost = costs[j];
+				
+				if (distMatrix != null)
+					distMatrix[i][j] = cost;
+				
+				if (cost == null)
+					continue;
+
+				if (cost > mostExpensivePath)
+					mostExpensivePath = cost;
+				
+				if (cost.equals(0d))
+					commonNodesCnt++;
+
+				entryRows.add(i);
+				entryCols.add(j);
+				entryCosts.add(cost);
+			}
+		}
+		
+//		mostExpensivePath = mostExpensivePath * 0.9;//28.10429968;
+
+		int unconnectedNodesCnt = sNode1Cnt * sNode2Cnt - entryCosts.size();
+		
+		log.info("DijkstraResult {} DistMatrixSize={} MaxPathLength={} mostExpensivePath={} commonNodesCnt={} unconnectedNodesCnt={}", 
+					pairId, sNode1Cnt * sNode2Cnt, pathLength, mostExpensivePath, commonNodesCnt, unconnectedNodesCnt);
+		if (distMatrix != null)
+			log.debug(NodeDistMatrix.printMatrix(distMatrix));
+				
+		//If no paths were found at all, skip further processing and return norm sim score of 0d
+		if (entryCosts.isEmpty()) {
+			log.info("Dijkstra computation finished: Pair {} normalizedSimilarity {}", pairId, 0d);
+			return 0d;
+		}
+		
+		double hungarianMin;
+		
+		if (sparse) {
+			//Normalize costs as NodeDistMatrix.normalizeValues, missing pairs and unmatched source nodes cost 1
+			double maxValue = mostExpensivePath.equals(0d) ? 1d : mostExpensivePath;
+			
+			SparseAssignmentSolver assignmentSolver = new SparseAssignmentSolver(sNode1Cnt, sNode2Cnt, 1d);
+			for (int k = 0; k < entryCosts.size(); k++)
+				assignmentSolver.addEntry(entryRows.get(k), entryCols.get(k), entryCosts.get(k) / maxValue);
+			
+			hungarianMin = assignmentSolver.getMinimum();
+		}
+		else {
+			//Set cost of those paths with length > maxPathLength to 1 and normalize values 
+			double[][] normDistMatrix = NodeDistMatrix.normalizeValues(distMatrix, mostExpensivePath, true);
+			
+			log.debug(NodeDistMatrix.printMatrix(normDistMatrix));
+			
+			//Find best 1:1 match, each of the sNode1Cnt - sNode2Cnt unmatched source nodes costs 1 (max normalized distance)
+			AssignmentSolver assignmentSolver = new AssignmentSolver();
+			
+			assignmentSolver.setInputMatrix(normDistMatrix);
+			hungarianMin = assignmentSolver.getMinimum() + (sNode1Cnt - sNode2Cnt);
+		}
+		
+		log.debug("Results from assignmentSolver.getMinimum() {}", hungarianMin);
+
+		Double normalizedSimilarity = 
+					(sNode1Cnt - hungarianMin) //sNode1Cnt * 1 (which is max posibily distance)
+				 / (sNode1Cnt + sNode2Cnt - commonNodesCnt); //was before (m.length + m[0].length - commonNodesCnt);
+		
+		log.info("Dijkstra computation finished: Pair {} normalizedSimilarity {}", pairId, normalizedSimilarity);
+		
+		return normalizedSimilarity;
+	}
+
+	/**
+	 * Optimistic similarity from cheap signals. As the similarity is (sNode1Cnt - hungarianMin) / (sNode1Cnt +
+	 * sNode2Cnt - commonNodesCnt), any lower bound of hungarianMin gives an upper bound of the similarity: each of the
+	 * sNode1Cnt - sNode2Cnt unmatched source nodes costs 1, and each source node costs at least its normalized distance
+	 * to the nearest source node of the other document. Path costs are normalized by the most expensive path found,
+	 * which is at most maxPathLength times the most expensive edge.
+	 */
+	double upperBound(PairGraphOverlay graph, List<String> sNodes1, List<String> sNodes2) {
+
+		int sNode1Cnt = sNodes1.size();
+		int sNode2Cnt = sNodes2.size();
+
+		// With edges of cost 0 distinct source nodes may be counted as common nodes, no bound then
+		if (Math.min(graph.a.minEdgeCost, graph.b.minEdgeCost) <= 0d || sNode1Cnt == 0)
+			return Double.POSITIVE_INFINITY;
+
+		HashSet<String> labels1 = new HashSet<String>(sNodes1);
+		int commonNodesCnt = 0;
+		for (String label : sNodes2)
+			if (labels1.contains(label))
+				commonNodesCnt++;
+
+		double denominator = sNode1Cnt + sNode2Cnt - commonNodesCnt;
+		double minHungarian = sNode1Cnt - sNode2Cnt;
+
+		double maxNormalization = maxPathLength * Math.max(graph.a.maxEdgeCost, graph.b.maxEdgeCost);
+		if (maxPathCost != null)
+			maxNormalization = Math.min(maxNormalization, maxPathCost);
+
+		if (maxNormalization > 0d) {
+
+			HashSet<String> labels2 = new HashSet<String>(sNodes2);
+			int[] targetIds = new int[sNode2Cnt];
+			for (int j = 0; j < sNode2Cnt; j++)
+				targetIds[j] = graph.getNodeId(sNodes2.get(j));
+
+			double rowMinSum = 0d;
+			for (String label : sNodes1) {
+				if (labels2.contains(label))
+					continue;
+				double nearest = graph.nearestTargetCost(graph.getNodeId(label), targetIds, maxNormalization);
+				rowMinSum += Double.isInfinite(nearest) ? 1d : Math.min(1d, nearest / maxNormalization);
+			}
+			minHungarian = Math.max(minHungarian, rowMinSum);
+		}
+
+		return (sNode1Cnt - minHungarian) / denominator;
+	}
+
+}
@@ -1,20 +1,14 @@
 package de.uma.dws.graphsm.jgrapht;
 
 import java.io.Writer;
-import java.util.LinkedList;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.tinkerpop.blueprints.Vertex;
-
-import de.uma.dws.graphsm.datamodel.JGraphTNode;
 import de.uma.dws.graphsm.datamodel.Tuple;
-import de.uma.dws.graphsm.neo4j.Neo4jGraphUtils;
 import de.uma.dws.graphsm.neo4j.Neo4jRdfGraph;
-import de.uma.dws.graphsm.tools.NodeDistMatrix;
-import de.unima.alcomox.algorithms.HungarianMethod;
+import de.uma.dws.graphsm.tools.Alphabet;
 
 public class DijkstraParallel implements Callable<Tuple<String,Double>> {
 	
@@ -23,8 +17,15 @@ public class DijkstraParallel implements Callable<Tuple<String,Double>> {
 	Neo4jRdfGraph graph1 = null;
 	Neo4jRdfGraph graph2 = null;
 	
+	DocGraphSnapshot snapshot1 = null;
+	DocGraphSnapshot snapshot2 = null;
+	
+	EntityDistanceIndex index = null;
+	
 	int maxPathLength;
 	Double maxPathCost = null;
+	
+	double minSimilarity = Double.NEGATIVE_INFINITY;
 
 	String pairId;
 	
@@ -38,12 +39,7 @@ public class DijkstraParallel implements Callable<Tuple<String,Double>> {
 	   this.maxPathLength 	= maxPathLength;
 	   this.maxPathCost 		= maxPathCost;
 	      
-	   this.pairId = 
-	   			(Integer.valueOf(graph1.actualGraphDBDirectory.getName().
-	   						replace("doc-", "").replace(".db", "")) +1)
-	   			+ "\t" +
-	   			(Integer.valueOf(graph2.actualGraphDBDirectory.getName().
-	   						replace("doc-", "").replace(".db", "")) +1) ;
+	   this.pairId = getPairId(graph1.actualGraphDBDirectory.getName(), graph2.actualGraphDBDirectory.getName());
 	   
 	   this.out = writer;
    }
@@ -51,101 +47,67 @@ public class DijkstraParallel implements Callable<Tuple<String,Double>> {
 	public DijkstraParallel(Neo4jRdfGraph graph1, Neo4jRdfGraph graph2, int maxPathLength, Double maxPathCost) {
 		this(graph1, graph2, maxPathLength, maxPathCost, null);
 	}
-
-	@Override
-	public Tuple<String,Double> call() throws Exception {
-		
-		//Join two neo4j graphs into one jgrapht graph
-		JGraphTWeightedRdf graph = new JGraphTWeightedRdf(pairId);
-
-		graph.addGraph(graph1);
-		graph.addGraph(graph2);
-		
-		graph.removeDeadEndNodes();
+	
+	/**
+	 * Compares two document graph snapshots, which are created once per document (see
+	 * {@link DocGraphSnapshot#loadAll(java.util.List)}) and shared by all pairs
+	 */
+	public DijkstraParallel(DocGraphSnapshot snapshot1, DocGraphSnapshot snapshot2, int maxPathLength, Double maxPathCost, Writer writer) {
 		
-		//Work around for gml:_Feature with gets a very high 
-//		if (graph.maxPathCost > 1000) {
-//			log.warn("graph.maxPathCost={}", graph.maxPathCost);
-//			graph.maxPathCost = 1000d;
-//		}
+		this.snapshot1 = snapshot1;
+		this.snapshot2 = snapshot2;
 		
-//		System.out.println(graph);
-
-		LinkedList<Vertex> sNodes1 = new LinkedList<Vertex>(Neo4jGraphUtils.getSourceNodes(graph1));
-		LinkedList<Vertex> sNodes2 = new LinkedList<Vertex>(Neo4jGraphUtils.getSourceNodes(graph2));
-
-		//Ensure that snodes1 node cnt >= snode2 node cnt 
-		if (sNodes1.size() < sNodes2.size()) {
-			LinkedList<Vertex> tmp = sNodes1;
-			sNodes1 = sNodes2;
-			sNodes2 = tmp;
-		}
-
-		int sNode1Cnt = sNodes1.size();
-		int sNode2Cnt = sNodes2.size();
-
-		//Compute distance matrix of cheapest paths between all pairs of source nodes with dijkstra
-		//Create artificial distances to ensure square form matrix
-		Double mostExpensivePath = 0d;
+		this.maxPathLength 	= maxPathLength;
+		this.maxPathCost 		= maxPathCost;
 		
-		Double[][] distMatrix = new Double[sNode1Cnt][sNode1Cnt];
-
-		for (int i = 0; i < sNode1Cnt; i++) {
-			for (int j = 0; j < sNode1Cnt; j++) {
-
-				if (j >= sNode2Cnt) {
-					distMatrix[i][j] = null;
-				}
-				else {
-					Double cost = graph.dijkstra(
-								new JGraphTNode(sNodes1.get(i).getProperty("label").toString(), true),
-								new JGraphTNode(sNodes2.get(j).getProperty("label").toString(), true),
-					         maxPathLength,
-					         maxPathCost,
-					         out);
-					         //maxPathLength * graph.maxPathCost);
-
-					if (cost != null && cost > mostExpensivePath)
-						mostExpensivePath = cost;
-
-					distMatrix[i][j] = cost;
-				}
-			}
-		}
+		this.pairId = getPairId(snapshot1.getName(), snapshot2.getName());
 		
-//		mostExpensivePath = mostExpensivePath * 0.9;//28.10429968;
+		this.out = writer;
+	}
+	
+	/**
+	 * Looks up the cheapest paths between the source nodes of both snapshots in index instead of searching them on 
+	 * the pair graph. The index is computed on the collection graph, so paths may pass nodes of other documents.
+	 */
+	public DijkstraParallel(DocGraphSnapshot snapshot1, DocGraphSnapshot snapshot2, EntityDistanceIndex index, int maxPathLength) {
+		this(snapshot1, snapshot2, maxPathLength, index.maxPathCost, null);
+		this.index = index;
+	}
+	
+	/**
+	 * Pairs which can not reach minSimilarity are pruned before the cheapest path search (see
+	 * {@link DijkstraHungarianComparator#computeSimilarityAtLeast}). The similarity of all pairs below minSimilarity is
+	 * null, so they are not mistaken for scored pairs.
+	 */
+	public DijkstraParallel(DocGraphSnapshot snapshot1, DocGraphSnapshot snapshot2, int maxPathLength, Double maxPathCost, Writer writer, double minSimilarity) {
+		this(snapshot1, snapshot2, maxPathLength, maxPathCost, writer);
+		this.minSimilarity = minSimilarity;
+	}
+	
+	static String getPairId(String docDir1, String docDir2) {
+		return (Integer.valueOf(docDir1.replace("doc-", "").replace(".db", "")) +1)
+					+ "\t" +
+					(Integer.valueOf(docDir2.replace("doc-", "").replace(".db", "")) +1);
+	}
 
-		int commonNodesCnt = NodeDistMatrix.getCntOfValues(distMatrix, 0d);
-		int unconnectedNodesCnt = NodeDistMatrix.getCntOfNullValues(distMatrix);
+	@Override
+	public Tuple<String,Double> call() throws Exception {
 		
-		log.info("DijkstraResult {} DistMatrixSize={} MaxPathLength={} mostExpensivePath={} commonNodesCnt={} unconnectedNodesCnt={}", 
-					pairId, distMatrix.length*distMatrix[0].length, maxPathLength, mostExpensivePath, commonNodesCnt, unconnectedNodesCnt);
-		log.debug(NodeDistMatrix.printMatrix(distMatrix));
-				
-		//If no paths were found at all, skip further processing and return norm sim score of 0d
-		if (NodeDistMatrix.allValuesNull(distMatrix)) {
-			log.info("Dijkstra computation finished: Pair {} normalizedSimilarity {}", pairId, 0d);
-			return new Tuple<String, Double>(pairId, 0d);
+		if (snapshot1 == null) {
+			Alphabet<String> dictionary = new Alphabet<String>();
+			snapshot1 = DocGraphSnapshot.fromNeo4j(graph1, dictionary);
+			snapshot2 = DocGraphSnapshot.fromNeo4j(graph2, dictionary);
 		}
 		
-		//Set cost of those paths with length > maxPathLength to 1 and normalize values 
-		double[][] normDistMatrix = NodeDistMatrix.normalizeValues(distMatrix, mostExpensivePath, true);
+		DijkstraHungarianComparator comparator = (index != null)
+					? new DijkstraHungarianComparator(index, maxPathLength)
+					: new DijkstraHungarianComparator(maxPathLength, maxPathCost, out);
 		
-		log.debug(NodeDistMatrix.printMatrix(normDistMatrix));
-		
-		//Use hungrian method to find best match
-		HungarianMethod hungarianMethod = new HungarianMethod();
-		
-		hungarianMethod.setInputMatrix(normDistMatrix);
-		double hungarianMin = hungarianMethod.getMinimum();
-		
-		log.debug("Results from hungarianMethod.getMinimum() {}", hungarianMin);
-
-		Double normalizedSimilarity = 
-					(sNode1Cnt - hungarianMin) //sNode1Cnt * 1 (which is max posibily distance)
-				 / (sNode1Cnt + sNode2Cnt - commonNodesCnt); //was before (m.length + m[0].length - commonNodesCnt);
+		Double normalizedSimilarity = comparator.computeSimilarityAtLeast(pairId, snapshot1, snapshot2, minSimilarity);
 		
-		log.info("Dijkstra computation finished: Pair {} normalizedSimilarity {}", pairId, normalizedSimilarity);
+		//Below minSimilarity the comparator may return an upper bound instead of the similarity
+		if (normalizedSimilarity < minSimilarity)
+			normalizedSimilarity = null;
 		
 		return new Tuple<String, Double>(pairId, normalizedSimilarity);
 	}
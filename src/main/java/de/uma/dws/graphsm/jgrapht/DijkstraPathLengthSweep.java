@@ -0,0 +1,51 @@
+package de.uma.dws.graphsm.jgrapht;
+
+import java.io.Writer;
+import java.util.concurrent.Callable;
+
+import de.uma.dws.graphsm.datamodel.Tuple;
+
+/**
+ * Runs {@link DijkstraParallel} for all maximum path lengths 1..maxPathLength at once, see
+ * {@link DijkstraHungarianComparator#computeSimilarities(String, DocGraphSnapshot, DocGraphSnapshot)}. Returns the pair
+ * id with one similarity per path length.
+ */
+public class DijkstraPathLengthSweep implements Callable<Tuple<String, double[]>> {
+
+	DocGraphSnapshot	           snapshot1;
+	DocGraphSnapshot	           snapshot2;
+
+	DijkstraHungarianComparator	comparator;
+
+	String	                     pairId;
+
+	/**
+	 * @param writers
+	 *           writers[l - 1] gets the paths of at most l edges, as {@link DijkstraParallel} with maxPathLength l would
+	 *           print them. null or null entries to skip path lengths.
+	 */
+	public DijkstraPathLengthSweep(DocGraphSnapshot snapshot1, DocGraphSnapshot snapshot2, int maxPathLength,
+	         Double maxPathCost, Writer[] writers) {
+		this(snapshot1, snapshot2, new DijkstraHungarianComparator(maxPathLength, maxPathCost, null)
+		         .setPathWriters(writers));
+	}
+
+	public DijkstraPathLengthSweep(DocGraphSnapshot snapshot1, DocGraphSnapshot snapshot2, EntityDistanceIndex index,
+	         int maxPathLength) {
+		this(snapshot1, snapshot2, new DijkstraHungarianComparator(index, maxPathLength));
+	}
+
+	private DijkstraPathLengthSweep(DocGraphSnapshot snapshot1, DocGraphSnapshot snapshot2,
+	         DijkstraHungarianComparator comparator) {
+		this.snapshot1 = snapshot1;
+		this.snapshot2 = snapshot2;
+		this.comparator = comparator;
+		this.pairId = DijkstraParallel.getPairId(snapshot1.getName(), snapshot2.getName());
+	}
+
+	@Override
+	public Tuple<String, double[]> call() throws Exception {
+		return new Tuple<String, double[]>(pairId, comparator.computeSimilarities(pairId, snapshot1, snapshot2));
+	}
+
+}
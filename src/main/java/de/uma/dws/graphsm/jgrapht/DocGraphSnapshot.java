@@ -0,0 +1,211 @@
+package de.uma.dws.graphsm.jgrapht;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uma.dws.graphsm.datamodel.JGraphTNode;
+import de.uma.dws.graphsm.neo4j.Neo4jRdfGraph;
+import de.uma.dws.graphsm.tools.Alphabet;
+
+/**
+ * In-memory, read-only copy of one document graph (nodes, weighted edges, source nodes). Read once from Neo4j and then
+ * reused for all pairwise comparisons of the document, see {@link PairGraphOverlay}. Node labels of all snapshots of a
+ * corpus are interned into one shared dictionary, so two snapshots can be joined on int ids instead of labels.
+ */
+public class DocGraphSnapshot {
+
+	final static Logger	    log	= LoggerFactory.getLogger(DocGraphSnapshot.class);
+
+	final String	          name;
+	final CompactRdfGraph	 graph;
+	final int[]	          globalIds;	  // local node id -> id in shared dictionary
+	final TIntIntHashMap	 globalToLocal; // id in shared dictionary -> local node id, -1 if absent
+	final List<String>	    sourceNodes;
+
+	private DocGraphSnapshot(String name, CompactRdfGraph graph, Alphabet<String> dictionary) {
+
+		this.name = name;
+		this.graph = graph;
+
+		int n = graph.nodeCount();
+
+		this.globalIds = new int[n];
+		this.globalToLocal = new TIntIntHashMap(n, 0.5f, -1, -1);
+
+		ArrayList<String> sNodes = new ArrayList<String>();
+
+		for (int i = 0; i < n; i++) {
+			String label = graph.getLabel(i);
+			int globalId;
+			synchronized (dictionary) {
+				globalId = dictionary.lookupIndex(label);
+			}
+			globalIds[i] = globalId;
+			globalToLocal.put(globalId, i);
+			if (graph.isSourceNode(i))
+				sNodes.add(label);
+		}
+		this.sourceNodes = Collections.unmodifiableList(sNodes);
+	}
+
+	/**
+	 * Reads all vertices and edges with their label, sourceNode and cost properties from g.
+	 *
+	 * @param dictionary
+	 *           Label dictionary shared by all snapshots which are compared with each other
+	 * @throws RuntimeException
+	 *            if g is empty or an edge has no cost value
+	 */
+	public static DocGraphSnapshot fromNeo4j(Neo4jRdfGraph g, Alphabet<String> dictionary) throws RuntimeException {
+
+		String name = g.actualGraphDBDirectory.getName();
+
+		log.debug("Start creating snapshot of Neo4jRdfGraph {}", g.actualGraphDBDirectory);
+
+		CompactRdfGraph.Builder builder = new CompactRdfGraph.Builder(name);
+		HashMap<Object, Integer> vertexIds = new HashMap<Object, Integer>();
+
+		int inputNodeCnt = 0;
+
+		for (Vertex v : g.getVertices()) {
+			inputNodeCnt++;
+			if ((long) v.getId() == 0l)
+				continue;
+			JGraphTNode node = new JGraphTNode(v.getProperty("label").toString(), v.getProperty("sourceNode"));
+			vertexIds.put(v.getId(), builder.addNode(node.name, node.sourceNode));
+		}
+
+		if (inputNodeCnt <= 1) {
+			log.warn("Neo4j input graph {} is empty!", g.actualGraphDBDirectory);
+			throw new RuntimeException("Neo4j input graph is empty! " + g.actualGraphDBDirectory);
+		}
+
+		for (Edge e : g.getEdges()) {
+
+			// Edges of the reference node are skipped with the node, as in JGraphTWeightedRdf.addGraph
+			Integer out = vertexIds.get(e.getVertex(Direction.OUT).getId());
+			Integer in = vertexIds.get(e.getVertex(Direction.IN).getId());
+			if (out == null || in == null)
+				continue;
+
+			Object cost = e.getProperty("cost");
+			if (cost == null)
+				throw new RuntimeException("No cost value for edge found: " + e);
+
+			builder.addEdge(out, in, Double.valueOf(cost.toString()));
+		}
+
+		DocGraphSnapshot snapshot = new DocGraphSnapshot(name, builder.build(), dictionary);
+
+		log.debug("Neo4jRdfGraph {} successfully transformed into {}", g.actualGraphDBDirectory, snapshot);
+
+		return snapshot;
+	}
+
+	/**
+	 * Copies a JGraphT graph, e.g. the graph of {@link JGraphTWeightedRdf}, with edge weights as costs.
+	 */
+	public static DocGraphSnapshot fromJGraphT(String name, Graph<JGraphTNode, DefaultWeightedEdge> g,
+	         Alphabet<String> dictionary) {
+
+		CompactRdfGraph.Builder builder = new CompactRdfGraph.Builder(name);
+
+		for (JGraphTNode node : g.vertexSet())
+			builder.addNode(node.name, node.sourceNode);
+
+		for (DefaultWeightedEdge e : g.edgeSet())
+			builder.addEdge(g.getEdgeSource(e).name, g.getEdgeTarget(e).name, g.getEdgeWeight(e));
+
+		return new DocGraphSnapshot(name, builder.build(), dictionary);
+	}
+
+	/**
+	 * Creates the snapshots of all graphs with one shared label dictionary. Entries of graphs being null stay null.
+	 */
+	public static ArrayList<DocGraphSnapshot> loadAll(List<Neo4jRdfGraph> graphs) {
+
+		Alphabet<String> dictionary = new Alphabet<String>();
+
+		ArrayList<DocGraphSnapshot> snapshots = new ArrayList<DocGraphSnapshot>(graphs.size());
+
+		for (Neo4jRdfGraph g : graphs)
+			snapshots.add((g == null) ? null : fromNeo4j(g, dictionary));
+
+		dictionary.stopGrowth();
+
+		log.info("Created {} document graph snapshots with {} distinct node labels", snapshots.size(),
+		         dictionary.size());
+
+		return snapshots;
+	}
+
+	/**
+	 * Merges all snapshots into one collection graph, nodes with equal labels are joined.
+	 */
+	public static CompactRdfGraph mergeAll(String graphName, List<DocGraphSnapshot> snapshots) {
+
+		CompactRdfGraph.Builder builder = new CompactRdfGraph.Builder(graphName);
+
+		for (DocGraphSnapshot snapshot : snapshots) {
+			if (snapshot == null)
+				continue;
+			CompactRdfGraph g = snapshot.graph;
+			for (int u = 0; u < g.nodeCount(); u++) {
+				int id = builder.addNode(g.getLabel(u), g.isSourceNode(u));
+				for (int k = 0; k < g.degreeOf(u); k++) {
+					int v = g.getNeighbour(u, k);
+					// Each undirected edge is stored in both directions
+					if (u < v)
+						builder.addEdge(id, builder.addNode(g.getLabel(v), false), g.getCost(u, k));
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public CompactRdfGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return Labels of the source nodes, i.e. the concepts found in the document
+	 */
+	public List<String> getSourceNodes() {
+		return sourceNodes;
+	}
+
+	/**
+	 * @return Local node id of the node with id globalId in the shared dictionary or -1 if not contained
+	 */
+	public int getLocalId(int globalId) {
+		return globalToLocal.get(globalId);
+	}
+
+	public int getGlobalId(int localId) {
+		return globalIds[localId];
+	}
+
+	@Override
+	public String toString() {
+		return "DocGraphSnapshot " + name + " [nodes=" + graph.nodeCount() + ", edges=" + graph.edgeCount()
+		         + ", sourceNodes=" + sourceNodes.size() + "]";
+	}
+
+}
@@ -0,0 +1,277 @@
+package de.uma.dws.graphsm.jgrapht;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.tools.Alphabet;
+
+/**
+ * Cheapest path costs between all pairs of entities (source node labels) of a document collection, computed once on
+ * one graph and then served in O(1). The costs are hop constrained like the pair searches of
+ * {@link DijkstraHungarianComparator}: for each maximal path length 1..maxPathLength the index holds the cheapest path
+ * with at most that many edges, found by one hop constrained search per entity. The index is persisted per graph and weighting scheme, see
+ * {@link #loadOrBuild(File, IntIndexedRdfGraph, Collection, int, Double)}.
+ */
+public class EntityDistanceIndex implements Serializable {
+
+	private static final long	 serialVersionUID	= 2L;
+
+	final static Logger	       log	            = LoggerFactory.getLogger(EntityDistanceIndex.class);
+	final static Configuration	conf	            = ConfFactory.getConf();
+
+	final String	             graphName;
+	final int	                maxPathLength;
+	final Double	             maxPathCost;
+	final Alphabet<String>	    entities;
+
+	// costs[l - 1] for paths with at most l edges, upper triangular matrix without diagonal, entry of entity pair i < j
+	// at j*(j-1)/2 + i
+	final double[][]	           costs;
+
+	private transient Boolean	 zeroCosts	      = null;
+
+	private EntityDistanceIndex(String graphName, int maxPathLength, Double maxPathCost, Alphabet<String> entities) {
+
+		int n = entities.size();
+		long size = (long) n * (n - 1) / 2;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many entities for EntityDistanceIndex: " + n);
+		if (maxPathLength < 1)
+			throw new IllegalArgumentException("maxPathLength of EntityDistanceIndex has to be >= 1: " + maxPathLength);
+
+		this.graphName = graphName;
+		this.maxPathLength = maxPathLength;
+		this.maxPathCost = maxPathCost;
+		this.entities = entities;
+		this.costs = new double[maxPathLength][(int) size];
+	}
+
+	/**
+	 * Runs one hop constrained single source cheapest path search per entity on graph, in parallel with
+	 * system.parallel.threads threads. Memory grows with maxPathLength times the number of entity pairs.
+	 *
+	 * @param maxPathLength
+	 *           Largest maximal path length the index answers lookups for
+	 * @param maxPathCost
+	 *           Set maximum path cost to limit search radius. Set null for unbound search.
+	 */
+	public static EntityDistanceIndex build(final IntIndexedRdfGraph graph, Collection<String> labels,
+	         final int maxPathLength, Double maxPathCost) {
+
+		long startTime = System.currentTimeMillis();
+
+		Alphabet<String> entities = new Alphabet<String>();
+		for (String label : labels)
+			entities.lookupIndex(label);
+		entities.stopGrowth();
+
+		final EntityDistanceIndex index = new EntityDistanceIndex(graph.graphName, maxPathLength, maxPathCost, entities);
+		final double maxCost = (maxPathCost == null) ? Double.POSITIVE_INFINITY : maxPathCost;
+
+		final int n = entities.size();
+		final int[] nodeIds = new int[n];
+		for (int i = 0; i < n; i++)
+			nodeIds[i] = graph.getNodeId(entities.lookupObject(i));
+
+		log.info("Start building EntityDistanceIndex on {} for {} entities and path lengths 1..{}", graph, n,
+		         maxPathLength);
+
+		ExecutorService pool = Executors.newFixedThreadPool(conf.getInt("system.parallel.threads", 1));
+		ArrayList<Future<?>> results = new ArrayList<Future<?>>(n);
+
+		// Row j covers the entities i < j, rows write disjoint ranges of the matrix
+		for (int j = 1; j < n; j++) {
+			final int row = j;
+			results.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					int[] targets = Arrays.copyOf(nodeIds, row);
+					double[][] pcosts;
+					try {
+						pcosts = graph.dijkstraByPathLength(nodeIds[row], targets, maxPathLength, maxCost,
+						         (Writer[]) null);
+					}
+					catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+					int offset = (int) ((long) row * (row - 1) / 2);
+					for (int l = 0; l < maxPathLength; l++)
+						System.arraycopy(pcosts[l], 0, index.costs[l], offset, row);
+				}
+			}));
+		}
+
+		pool.shutdown();
+
+		try {
+			for (Future<?> result : results)
+				result.get();
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Building EntityDistanceIndex failed", e);
+		}
+
+		log.info("EntityDistanceIndex for {} entity pairs built in {} secs", index.costs[0].length,
+		         (System.currentTimeMillis() - startTime) / 1000d);
+
+		return index;
+	}
+
+	/**
+	 * Loads the index from file if it exists, covers all labels and path lengths up to maxPathLength, otherwise builds
+	 * and saves it. The file name has to identify the graph and the weighting scheme, the index does not detect changed
+	 * edge weights.
+	 */
+	public static EntityDistanceIndex loadOrBuild(File file, IntIndexedRdfGraph graph, Collection<String> labels,
+	         int maxPathLength, Double maxPathCost) throws IOException {
+
+		if (file.exists()) {
+			try {
+				EntityDistanceIndex index = load(file);
+				boolean complete = Objects.equals(index.maxPathCost, maxPathCost)
+				         && index.maxPathLength >= maxPathLength;
+				for (String label : labels)
+					complete &= index.entities.contains(label);
+				if (complete)
+					return index;
+				log.warn("EntityDistanceIndex {} does not match the requested entities, maxPathLength or maxPathCost, rebuilding it", file);
+			}
+			catch (InvalidClassException e) {
+				log.warn("EntityDistanceIndex {} was saved by an older version, rebuilding it", file);
+			}
+		}
+
+		EntityDistanceIndex index = build(graph, labels, maxPathLength, maxPathCost);
+		index.save(file);
+		return index;
+	}
+
+	public static EntityDistanceIndex load(File file) throws IOException {
+
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			EntityDistanceIndex index = (EntityDistanceIndex) in.readObject();
+			log.info("EntityDistanceIndex with {} entities loaded from {}", index.entities.size(), file);
+			return index;
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException("No EntityDistanceIndex in " + file, e);
+		}
+	}
+
+	public void save(File file) throws IOException {
+
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+
+		try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeObject(this);
+		}
+		log.info("EntityDistanceIndex with {} entities saved to {}", entities.size(), file);
+	}
+
+	/**
+	 * @return Cost of cheapest path with at most maxPathLength edges between both entities, 0 for equal entities, null
+	 *         if no such path was found or if an entity is not part of the index
+	 * @throws IllegalArgumentException
+	 *            if maxPathLength exceeds the path length the index was built for
+	 */
+	public Double getCost(String label1, String label2, int maxPathLength) {
+
+		if (maxPathLength > this.maxPathLength)
+			throw new IllegalArgumentException("EntityDistanceIndex " + graphName + " holds paths of at most "
+			         + this.maxPathLength + " edges, requested " + maxPathLength);
+
+		if (label1.equals(label2))
+			return 0d;
+		if (maxPathLength < 1)
+			return null;
+
+		int i = entities.lookupIndex(label1);
+		int j = entities.lookupIndex(label2);
+		if (i < 0 || j < 0)
+			return null;
+
+		int pos = (i < j) ? (int) ((long) j * (j - 1) / 2 + i) : (int) ((long) i * (i - 1) / 2 + j);
+
+		double cost = costs[maxPathLength - 1][pos];
+		return Double.isInfinite(cost) ? null : cost;
+	}
+
+	/**
+	 * @return Cheapest path costs from label to each of labels (same order), see {@link #getCost(String, String, int)}
+	 */
+	public Double[] getCosts(String label, List<String> labels, int maxPathLength) {
+
+		Double[] pcosts = new Double[labels.size()];
+
+		for (int j = 0; j < pcosts.length; j++)
+			pcosts[j] = getCost(label, labels.get(j), maxPathLength);
+
+		return pcosts;
+	}
+
+	/**
+	 * @return Matrix of cheapest path costs between labels1 (rows) and labels2 (columns), see
+	 *         {@link #getCost(String, String, int)}
+	 */
+	public Double[][] getDistMatrix(List<String> labels1, List<String> labels2, int maxPathLength) {
+
+		Double[][] distMatrix = new Double[labels1.size()][];
+
+		for (int i = 0; i < distMatrix.length; i++)
+			distMatrix[i] = getCosts(labels1.get(i), labels2, maxPathLength);
+
+		return distMatrix;
+	}
+
+	/**
+	 * @return true if distinct entities are connected by a path of cost 0
+	 */
+	public synchronized boolean hasZeroCosts() {
+		if (zeroCosts == null) {
+			zeroCosts = false;
+			// Costs only drop with longer paths, the largest path length covers all
+			for (double cost : costs[maxPathLength - 1]) {
+				if (cost <= 0d) {
+					zeroCosts = true;
+					break;
+				}
+			}
+		}
+		return zeroCosts;
+	}
+
+	public int size() {
+		return entities.size();
+	}
+
+	@Override
+	public String toString() {
+		return "EntityDistanceIndex " + graphName + " [entities=" + entities.size() + ", maxPathLength=" + maxPathLength
+		         + ", maxPathCost=" + maxPathCost + "]";
+	}
+
+}
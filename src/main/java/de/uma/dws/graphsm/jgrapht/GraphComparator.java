@@ -4,12 +4,20 @@ import org.jgrapht.Graph;
 
 /**
  * Compares two {@link Graph}s by computing their similarity
- * 
+ *
  * @author ponzetto
  *
  */
 public interface GraphComparator<V,T> {
-	
+
 	double computeSimilarity(Graph<V, T> g1, Graph<V, T> g2);
 
+	/**
+	 * Threshold aware variant of {@link #computeSimilarity(Graph, Graph)} for ranking and near duplicate detection.
+	 *
+	 * @return The similarity if it is >= tau, otherwise any value < tau (e.g. an upper bound of the similarity),
+	 *         which allows to skip the full computation for pairs which can not reach tau
+	 */
+	double computeSimilarityAtLeast(Graph<V, T> g1, Graph<V, T> g2, double tau);
+
 }
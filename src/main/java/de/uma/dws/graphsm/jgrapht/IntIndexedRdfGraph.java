@@ -0,0 +1,434 @@
+package de.uma.dws.graphsm.jgrapht;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import de.uma.dws.graphsm.datamodel.JGraphTNode;
+import de.uma.dws.graphsm.tools.IntMinHeap;
+
+/**
+ * Undirected weighted graph over int node ids 0..nodeCount()-1 with labels (prefixed URIs). Implements the cheapest
+ * path search once for all int indexed graph layouts, see {@link CompactRdfGraph} and {@link PairGraphOverlay}.
+ */
+public abstract class IntIndexedRdfGraph {
+
+	String	graphName;
+
+	public abstract int nodeCount();
+
+	/**
+	 * @return Node id of label or -1 if label is not part of the graph
+	 */
+	public abstract int getNodeId(String label);
+
+	public abstract String getLabel(int nodeId);
+
+	public abstract boolean isSourceNode(int nodeId);
+
+	public abstract int degreeOf(int nodeId);
+
+	/**
+	 * @return k-th neighbour of nodeId, 0 <= k < degreeOf(nodeId)
+	 */
+	public abstract int getNeighbour(int nodeId, int k);
+
+	/**
+	 * @return Cost of the edge to the k-th neighbour of nodeId
+	 */
+	public abstract double getCost(int nodeId, int k);
+
+	public Double dijkstra(String label1, String label2, Integer maxPathLength, Double maxPathCost) throws IOException {
+
+		return dijkstra(label1, Arrays.asList(label2), maxPathLength, maxPathCost, null)[0];
+	}
+
+	/**
+	 * Single source, multi target cheapest path search, see
+	 * {@link JGraphTWeightedRdf#dijkstra(JGraphTNode, List, Integer, Double, Writer)} for the semantics.
+	 *
+	 * @return Array with cost of cheapest path for each target (same order as targets), null if no path was found or if
+	 *         path was of length > maxPathLenght
+	 */
+	public Double[] dijkstra(String source, List<String> targetLabels, Integer maxPathLength, Double maxPathCost,
+	         Writer pathPrinter) throws IOException {
+
+		int[] targetIds = new int[targetLabels.size()];
+		for (int j = 0; j < targetIds.length; j++)
+			targetIds[j] = getNodeId(targetLabels.get(j));
+
+		double[] dist = dijkstra(getNodeId(source), targetIds, maxPathLength,
+		         (maxPathCost == null) ? Double.POSITIVE_INFINITY : maxPathCost, pathPrinter);
+
+		Double[] pcosts = new Double[targetIds.length];
+		for (int j = 0; j < targetIds.length; j++) {
+			if (source.equals(targetLabels.get(j)))
+				pcosts[j] = new Double(0d);
+			else if (!Double.isInfinite(dist[j]))
+				pcosts[j] = dist[j];
+		}
+		return pcosts;
+	}
+
+	/**
+	 * Dijkstra over node ids with a primitive binary heap. Unknown nodes are given as -1.
+	 *
+	 * @return Cheapest path cost for each target, Double.POSITIVE_INFINITY if no path was found or if path was of
+	 *         length > maxPathLength
+	 */
+	public double[] dijkstra(int source, int[] targetIds, int maxPathLength, double maxPathCost, Writer pathPrinter)
+	         throws IOException {
+
+		return dijkstra(source, targetIds, maxPathLength, maxPathCost, null, pathPrinter);
+	}
+
+	/**
+	 * As {@link #dijkstra(int, int[], int, double, Writer)}, additionally stores the length of each cheapest path in
+	 * pathLengths (same order as targetIds) if not null.
+	 */
+	public double[] dijkstra(int source, int[] targetIds, int maxPathLength, double maxPathCost, int[] pathLengths,
+	         Writer pathPrinter) throws IOException {
+
+		double[] pcosts = new double[targetIds.length];
+		Arrays.fill(pcosts, Double.POSITIVE_INFINITY);
+
+		if (source < 0)
+			return pcosts;
+
+		int n = nodeCount();
+
+		// Linked list of target columns per node, to know when all targets are settled
+		int[] firstColumn = new int[n];
+		int[] nextColumn = new int[targetIds.length];
+		Arrays.fill(firstColumn, -1);
+		int openTargets = 0;
+		for (int j = 0; j < targetIds.length; j++) {
+			int t = targetIds[j];
+			if (t < 0)
+				continue;
+			if (t == source) {
+				pcosts[j] = 0d;
+				continue;
+			}
+			if (firstColumn[t] < 0)
+				openTargets++;
+			nextColumn[j] = firstColumn[t];
+			firstColumn[t] = j;
+		}
+
+		if (openTargets == 0)
+			return pcosts;
+
+		double[] dist = new double[n];
+		int[] hops = new int[n];
+		int[] pred = (pathPrinter != null) ? new int[n] : null;
+		boolean[] settled = new boolean[n];
+
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		dist[source] = 0d;
+		if (pred != null)
+			pred[source] = -1;
+
+		IntMinHeap heap = new IntMinHeap(n);
+		heap.insertOrDecrease(source, 0d);
+
+		while (!heap.isEmpty() && openTargets > 0) {
+
+			int u = heap.poll();
+			settled[u] = true;
+
+			if (firstColumn[u] >= 0) {
+				openTargets--;
+				if (hops[u] <= maxPathLength) {
+					for (int j = firstColumn[u]; j >= 0; j = nextColumn[j]) {
+						pcosts[j] = dist[u];
+						if (pathLengths != null)
+							pathLengths[j] = hops[u];
+					}
+
+					if (pathPrinter != null)
+						printPath(pathPrinter, source, u, dist[u], hops[u], pred);
+				}
+				firstColumn[u] = -1;
+			}
+
+			int degree = degreeOf(u);
+			for (int k = 0; k < degree; k++) {
+
+				int v = getNeighbour(u, k);
+				if (settled[v])
+					continue;
+
+				double cost = dist[u] + getCost(u, k);
+				if (cost > maxPathCost)
+					continue;
+
+				if (cost < dist[v] || (cost == dist[v] && hops[u] + 1 < hops[v])) {
+					dist[v] = cost;
+					hops[v] = hops[u] + 1;
+					if (pred != null)
+						pred[v] = u;
+					heap.insertOrDecrease(v, cost);
+				}
+			}
+		}
+		return pcosts;
+	}
+
+	/**
+	 * Hop constrained variant of {@link #dijkstra(String, List, Integer, Double, Writer)}, see
+	 * {@link #dijkstraByPathLength(int, int[], int, double, Writer)}.
+	 *
+	 * @return pcosts[l - 1][j] cost of the cheapest path with at most l edges to targetLabels[j], null if there is none
+	 */
+	public Double[][] dijkstraByPathLength(String source, List<String> targetLabels, int maxPathLength,
+	         Double maxPathCost, Writer pathPrinter) throws IOException {
+
+		return dijkstraByPathLength(source, targetLabels, maxPathLength, maxPathCost,
+		         printersOfLast(maxPathLength, pathPrinter));
+	}
+
+	/**
+	 * As {@link #dijkstraByPathLength(String, List, int, Double, Writer)}, with the paths of at most l edges printed to
+	 * pathPrinters[l - 1] (entries may be null)
+	 */
+	public Double[][] dijkstraByPathLength(String source, List<String> targetLabels, int maxPathLength,
+	         Double maxPathCost, Writer[] pathPrinters) throws IOException {
+
+		int[] targetIds = new int[targetLabels.size()];
+		for (int j = 0; j < targetIds.length; j++)
+			targetIds[j] = getNodeId(targetLabels.get(j));
+
+		double[][] dist = dijkstraByPathLength(getNodeId(source), targetIds, maxPathLength,
+		         (maxPathCost == null) ? Double.POSITIVE_INFINITY : maxPathCost, pathPrinters);
+
+		Double[][] pcosts = new Double[maxPathLength][targetIds.length];
+		for (int l = 0; l < maxPathLength; l++) {
+			for (int j = 0; j < targetIds.length; j++) {
+				if (source.equals(targetLabels.get(j)))
+					pcosts[l][j] = new Double(0d);
+				else if (!Double.isInfinite(dist[l][j]))
+					pcosts[l][j] = dist[l][j];
+			}
+		}
+		return pcosts;
+	}
+
+	/**
+	 * Cheapest paths with at most 1..maxPathLength edges in one pass, unlike
+	 * {@link #dijkstra(int, int[], int, double, Writer)} which drops cheapest paths longer than maxPathLength. Hop
+	 * layered Bellman-Ford: layer l relaxes the edges of the nodes improved in layer l - 1 only, so no path with more
+	 * than maxPathLength edges or a cost above maxPathCost is ever expanded. Paths are printed for maxPathLength.
+	 *
+	 * @return pcosts[l - 1][j] cost of the cheapest path with at most l edges to targetIds[j],
+	 *         Double.POSITIVE_INFINITY if there is none
+	 */
+	public double[][] dijkstraByPathLength(int source, int[] targetIds, int maxPathLength, double maxPathCost,
+	         Writer pathPrinter) throws IOException {
+
+		return dijkstraByPathLength(source, targetIds, maxPathLength, maxPathCost,
+		         printersOfLast(maxPathLength, pathPrinter));
+	}
+
+	/**
+	 * As {@link #dijkstraByPathLength(int, int[], int, double, Writer)}, with the cheapest paths of at most l edges
+	 * printed to pathPrinters[l - 1] (entries may be null), as a separate search per maximal path length would print
+	 * them
+	 */
+	public double[][] dijkstraByPathLength(int source, int[] targetIds, int maxPathLength, double maxPathCost,
+	         Writer[] pathPrinters) throws IOException {
+
+		boolean printPaths = false;
+		if (pathPrinters != null)
+			for (Writer pathPrinter : pathPrinters)
+				printPaths |= (pathPrinter != null);
+
+		double[][] pcosts = new double[maxPathLength][targetIds.length];
+		for (double[] layer : pcosts)
+			Arrays.fill(layer, Double.POSITIVE_INFINITY);
+
+		if (source < 0)
+			return pcosts;
+
+		int n = nodeCount();
+
+		double[] dist = new double[n];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		dist[source] = 0d;
+
+		// pred[l][v] predecessor of v on its cheapest path with l edges, -2 if v was not improved in layer l
+		int[][] pred = printPaths ? new int[maxPathLength + 1][n] : null;
+		if (pred != null) {
+			for (int[] layer : pred)
+				Arrays.fill(layer, -2);
+			pred[0][source] = -1;
+		}
+
+		// Nodes improved in the last layer with their cost in that layer
+		int[] frontier = { source };
+		double[] frontierCost = { 0d };
+		int frontierSize = 1;
+
+		int[] next = new int[Math.min(n, 16)];
+		boolean[] inNext = new boolean[n];
+
+		for (int l = 1; l <= maxPathLength; l++) {
+
+			int nextSize = 0;
+
+			for (int f = 0; f < frontierSize; f++) {
+				int u = frontier[f];
+				int degree = degreeOf(u);
+				for (int k = 0; k < degree; k++) {
+
+					int v = getNeighbour(u, k);
+					double cost = frontierCost[f] + getCost(u, k);
+					if (cost > maxPathCost || cost >= dist[v])
+						continue;
+
+					dist[v] = cost;
+					if (pred != null)
+						pred[l][v] = u;
+					if (!inNext[v]) {
+						inNext[v] = true;
+						if (nextSize == next.length)
+							next = Arrays.copyOf(next, Math.min(n, 2 * nextSize));
+						next[nextSize++] = v;
+					}
+				}
+			}
+
+			for (int j = 0; j < targetIds.length; j++) {
+				int t = targetIds[j];
+				if (t >= 0)
+					pcosts[l - 1][j] = dist[t];
+			}
+
+			// The improved nodes form the next frontier, with their costs of this layer
+			frontier = Arrays.copyOf(next, nextSize);
+			frontierCost = new double[nextSize];
+			for (int f = 0; f < nextSize; f++) {
+				frontierCost[f] = dist[frontier[f]];
+				inNext[frontier[f]] = false;
+			}
+			frontierSize = nextSize;
+
+			if (frontierSize == 0) {
+				for (int m = l; m < maxPathLength; m++)
+					pcosts[m] = pcosts[l - 1].clone();
+				break;
+			}
+		}
+
+		for (int l = 1; printPaths && l <= maxPathLength; l++) {
+			if (l > pathPrinters.length || pathPrinters[l - 1] == null)
+				continue;
+			for (int j = 0; j < targetIds.length; j++) {
+				int t = targetIds[j];
+				if (t >= 0 && t != source && !Double.isInfinite(pcosts[l - 1][j]))
+					printPath(pathPrinters[l - 1], source, t, pcosts[l - 1][j], l, pred);
+			}
+		}
+		return pcosts;
+	}
+
+	/**
+	 * @return Printers for {@link #dijkstraByPathLength(int, int[], int, double, Writer[])} printing the paths of
+	 *         maxPathLength only, null if pathPrinter is null
+	 */
+	private static Writer[] printersOfLast(int maxPathLength, Writer pathPrinter) {
+		if (pathPrinter == null || maxPathLength < 1)
+			return null;
+		Writer[] pathPrinters = new Writer[maxPathLength];
+		pathPrinters[maxPathLength - 1] = pathPrinter;
+		return pathPrinters;
+	}
+
+	/**
+	 * Cheapest path search which stops at the first target settled, regardless of its path length. Used as lower bound
+	 * for the cheapest path to any of the targets.
+	 *
+	 * @return Cost of the cheapest path to the nearest target, Double.POSITIVE_INFINITY if no target is reachable
+	 *         within maxPathCost
+	 */
+	public double nearestTargetCost(int source, int[] targetIds, double maxPathCost) {
+
+		if (source < 0)
+			return Double.POSITIVE_INFINITY;
+
+		int n = nodeCount();
+
+		boolean[] target = new boolean[n];
+		for (int t : targetIds)
+			if (t >= 0)
+				target[t] = true;
+
+		double[] dist = new double[n];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		dist[source] = 0d;
+
+		IntMinHeap heap = new IntMinHeap(n);
+		heap.insertOrDecrease(source, 0d);
+
+		while (!heap.isEmpty()) {
+
+			int u = heap.poll();
+			if (target[u])
+				return dist[u];
+
+			int degree = degreeOf(u);
+			for (int k = 0; k < degree; k++) {
+				int v = getNeighbour(u, k);
+				double cost = dist[u] + getCost(u, k);
+				if (cost <= maxPathCost && cost < dist[v]) {
+					dist[v] = cost;
+					heap.insertOrDecrease(v, cost);
+				}
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Prints the path with at most maxPathLength edges to target from the layered predecessors of
+	 * {@link #dijkstraByPathLength(int, int[], int, double, Writer[])}
+	 */
+	private void printPath(Writer pathPrinter, int source, int target, double pcost, int maxPathLength, int[][] pred)
+	         throws IOException {
+
+		int[] path = new int[maxPathLength + 1];
+		int plen = 0;
+		int l = maxPathLength;
+		for (int v = target; v != source;) {
+			while (pred[l][v] == -2)
+				l--;
+			path[plen++] = v;
+			v = pred[l--][v];
+		}
+		path[plen] = source;
+
+		StringBuffer edges = new StringBuffer();
+		for (int i = plen; i > 0; i--)
+			edges.append(", (" + getLabel(path[i]) + " : " + getLabel(path[i - 1]) + ")");
+
+		pathPrinter.write(this.graphName + "\t" + getLabel(source) + "\t" + getLabel(target) + "\t" + pcost + "\t"
+		         + plen + "\n");
+		pathPrinter.write("[" + (edges.length() > 0 ? edges.substring(2) : "") + "]\n");
+		pathPrinter.flush();
+	}
+
+	private void printPath(Writer pathPrinter, int source, int target, double pcost, int plen, int[] pred)
+	         throws IOException {
+
+		StringBuffer path = new StringBuffer();
+		for (int v = target; pred[v] >= 0; v = pred[v])
+			path.insert(0, ", (" + getLabel(pred[v]) + " : " + getLabel(v) + ")");
+
+		pathPrinter.write(this.graphName + "\t" + getLabel(source) + "\t" + getLabel(target) + "\t" + pcost + "\t"
+		         + plen + "\n");
+		pathPrinter.write("[" + (path.length() > 0 ? path.substring(2) : "") + "]\n");
+		pathPrinter.flush();
+	}
+
+}
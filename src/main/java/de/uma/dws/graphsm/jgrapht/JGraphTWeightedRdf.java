@@ -2,11 +2,17 @@ package de.uma.dws.graphsm.jgrapht;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Set;
+import java.util.List;
+import java.util.PriorityQueue;
 
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.DijkstraShortestPath;
+import org.jgrapht.Graphs;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.WeightedMultigraph;
 import org.slf4j.Logger;
@@ -38,24 +44,136 @@ public class JGraphTWeightedRdf {
 		this.graphName = graphName;
 	}
 
-	public void removeDeadEndNodes() {
+	/**
+	 * Removes all non-source nodes connected to less than two other nodes, repeatedly until none is left (the 2-core
+	 * around the source nodes). Nodes are peeled from a queue, so whole dead-end chains go in O(V+E).
+	 * 
+	 * @return Number of removed nodes
+	 */
+	public int removeDeadEndNodes() {
+		return removeDeadEndNodes(false);
+	}
 
-		Set<JGraphTNode> nodeSet = graph.vertexSet();
+	/**
+	 * @param contractChains
+	 *           Contract the remaining chains of non-source nodes as well, see {@link #contractChains()}
+	 * @return Number of removed nodes
+	 */
+	public int removeDeadEndNodes(boolean contractChains) {
 
-		int cnt = 0;
-		int nodesCnt = nodeSet.size();
+		int nodesCnt = graph.vertexSet().size();
 
-		LinkedList<JGraphTNode> deadEndNodes = new LinkedList<JGraphTNode>();
+		HashMap<JGraphTNode, Integer> neighbourCnt = new HashMap<JGraphTNode, Integer>();
+		ArrayDeque<JGraphTNode> queue = new ArrayDeque<JGraphTNode>();
+		HashSet<JGraphTNode> queued = new HashSet<JGraphTNode>();
 
 		for (JGraphTNode node : graph.vertexSet()) {
-			if (!node.sourceNode && graph.degreeOf(node) < 2) {
-				deadEndNodes.add(node);
-				cnt++;
+			int cnt = neighboursOf(node).size();
+			neighbourCnt.put(node, cnt);
+			if (!node.sourceNode && cnt < 2) {
+				queue.add(node);
+				queued.add(node);
+			}
+		}
+		int deadEndCnt = queue.size();
+		int removedCnt = 0;
+
+		while (!queue.isEmpty()) {
+			JGraphTNode node = queue.poll();
+			HashSet<JGraphTNode> neighbours = neighboursOf(node);
+			graph.removeVertex(node);
+			removedCnt++;
+
+			for (JGraphTNode neighbour : neighbours) {
+				int cnt = neighbourCnt.get(neighbour) - 1;
+				neighbourCnt.put(neighbour, cnt);
+				if (!neighbour.sourceNode && cnt < 2 && queued.add(neighbour))
+					queue.add(neighbour);
 			}
 		}
-		graph.removeAllVertices(deadEndNodes);
 
-		log.info("Removed {} deadend out of {} nodes", cnt, nodesCnt);
+		log.info("Removed {} deadend out of {} nodes ({} in the first round, {} uncovered by their removal)", removedCnt,
+		         nodesCnt, deadEndCnt, removedCnt - deadEndCnt);
+
+		if (contractChains)
+			removedCnt += contractChains();
+
+		return removedCnt;
+	}
+
+	/**
+	 * Replaces each non-source node with exactly two edges to two different nodes by one {@link ContractedEdge} between
+	 * them, with the summed cost and hop count of both edges. Chains of such nodes become single edges, which leaves the
+	 * cheapest paths and their lengths unchanged but shrinks the graph searched by the dijkstra methods. The contracted
+	 * nodes can not be searched for themselves any more.
+	 * 
+	 * @return Number of contracted nodes
+	 */
+	public int contractChains() {
+
+		int nodesCnt = graph.vertexSet().size();
+		int contractedCnt = 0;
+
+		for (JGraphTNode node : new ArrayList<JGraphTNode>(graph.vertexSet())) {
+
+			if (node.sourceNode || graph.degreeOf(node) != 2)
+				continue;
+
+			Iterator<DefaultWeightedEdge> edges = graph.edgesOf(node).iterator();
+			DefaultWeightedEdge e1 = edges.next();
+			DefaultWeightedEdge e2 = edges.next();
+			JGraphTNode n1 = Graphs.getOppositeVertex(graph, e1, node);
+			JGraphTNode n2 = Graphs.getOppositeVertex(graph, e2, node);
+			if (n1.equals(n2))
+				continue;
+
+			ContractedEdge chain = new ContractedEdge(hopsOf(e1) + hopsOf(e2));
+			graph.addEdge(n1, n2, chain);
+			graph.setEdgeWeight(chain, graph.getEdgeWeight(e1) + graph.getEdgeWeight(e2));
+			graph.removeVertex(node);
+			contractedCnt++;
+		}
+
+		log.info("Contracted {} out of {} nodes into chain edges", contractedCnt, nodesCnt);
+		return contractedCnt;
+	}
+
+	/**
+	 * @return Nodes connected to node by at least one edge, except node itself
+	 */
+	private HashSet<JGraphTNode> neighboursOf(JGraphTNode node) {
+		HashSet<JGraphTNode> neighbours = new HashSet<JGraphTNode>();
+		for (DefaultWeightedEdge e : graph.edgesOf(node)) {
+			JGraphTNode neighbour = Graphs.getOppositeVertex(graph, e, node);
+			if (!neighbour.equals(node))
+				neighbours.add(neighbour);
+		}
+		return neighbours;
+	}
+
+	/**
+	 * @return Number of original edges e stands for
+	 */
+	static int hopsOf(DefaultWeightedEdge e) {
+		return (e instanceof ContractedEdge) ? ((ContractedEdge) e).hops : 1;
+	}
+
+	/**
+	 * Edge replacing a chain of hops edges, created by {@link JGraphTWeightedRdf#contractChains()}
+	 */
+	public static class ContractedEdge extends DefaultWeightedEdge {
+
+		private static final long	serialVersionUID	= 1L;
+
+		final int	               hops;
+
+		ContractedEdge(int hops) {
+			this.hops = hops;
+		}
+
+		public int getHops() {
+			return hops;
+		}
 	}
 
 	public void addGraph(Neo4jRdfGraph g) throws RuntimeException {
@@ -121,6 +239,10 @@ public class JGraphTWeightedRdf {
 	}
 
 	/**
+	 * Bidirectional search from node1 and node2 which meets in the middle. Both searches keep (cost, hops) labels per
+	 * node, so a slightly more expensive path within maxPathLength is found even if the cheapest path is longer, and
+	 * labels with more than maxPathLength hops are never expanded. The search with the smaller queue is expanded first and
+	 * both stop as soon as the sum of their queue heads reaches the cheapest connection found.
 	 * 
 	 * @param node1
 	 *           Label (prefixed URL) of node1
@@ -131,8 +253,7 @@ public class JGraphTWeightedRdf {
 	 * @param maxPathCost
 	 *           Set maximum path cost to limit search radius and thus improve performance. Set null for unbound search.
 	 * @param pathPrinter Provide writer, eg. FileWriter, to get details on path found; provide null to deactive 
-	 * @return Cost of cheapest path or Double.POSITIVE_INFINITY if no path was found or if path was of length >
-	 *         maxPathLenght
+	 * @return Cost of cheapest path with at most maxPathLength edges or null if no such path was found
 	 * @throws IOException
 	 */
 	public Double dijkstra(JGraphTNode node1, JGraphTNode node2, Integer maxPathLength, Double maxPathCost,
@@ -143,44 +264,272 @@ public class JGraphTWeightedRdf {
 		if (node1.equals(node2))
 			return new Double(0d);
 
+		if (!graph.containsVertex(node1) || !graph.containsVertex(node2)) {
+			log.warn("Dijkstra: {} or {} not contained in graph {}", node1, node2, graphName);
+			return null;
+		}
+
 		if (maxPathCost == null)
 			maxPathCost = Double.POSITIVE_INFINITY;
 
-		DijkstraShortestPath<JGraphTNode, DefaultWeightedEdge> dijkstra = null;
+		// Settled labels per node and direction, by increasing cost and strictly decreasing hops
+		HashMap<JGraphTNode, LinkedList<QueueEntry>> settledFw = new HashMap<JGraphTNode, LinkedList<QueueEntry>>();
+		HashMap<JGraphTNode, LinkedList<QueueEntry>> settledBw = new HashMap<JGraphTNode, LinkedList<QueueEntry>>();
+
+		PriorityQueue<QueueEntry> queueFw = new PriorityQueue<QueueEntry>();
+		PriorityQueue<QueueEntry> queueBw = new PriorityQueue<QueueEntry>();
+
+		// Start labels are settled right away, so either search can end in the start node of the other one
+		QueueEntry startFw = new QueueEntry(node1, 0d, 0, null, null);
+		QueueEntry startBw = new QueueEntry(node2, 0d, 0, null, null);
+		settledFw.put(node1, new LinkedList<QueueEntry>(Collections.singletonList(startFw)));
+		settledBw.put(node2, new LinkedList<QueueEntry>(Collections.singletonList(startBw)));
+		queueFw.add(startFw);
+		queueBw.add(startBw);
+
+		// Cheapest connection so far: forward label, connecting edge (null if both labels end in the same node), backward label
+		double mu = Double.POSITIVE_INFINITY;
+		QueueEntry muFw = null;
+		DefaultWeightedEdge muEdge = null;
+		QueueEntry muBw = null;
+
+		while (!queueFw.isEmpty() || !queueBw.isEmpty()) {
+
+			double topFw = queueFw.isEmpty() ? Double.POSITIVE_INFINITY : queueFw.peek().cost;
+			double topBw = queueBw.isEmpty() ? Double.POSITIVE_INFINITY : queueBw.peek().cost;
+			if (topFw + topBw >= mu || Math.min(topFw, topBw) > maxPathCost)
+				break;
+
+			boolean forward = !queueFw.isEmpty() && (queueBw.isEmpty() || queueFw.size() <= queueBw.size());
+			PriorityQueue<QueueEntry> queue = forward ? queueFw : queueBw;
+			HashMap<JGraphTNode, LinkedList<QueueEntry>> settled = forward ? settledFw : settledBw;
+			HashMap<JGraphTNode, LinkedList<QueueEntry>> opposite = forward ? settledBw : settledFw;
+
+			QueueEntry current = queue.poll();
+
+			// Labels with as many hops as a cheaper settled label are dominated
+			LinkedList<QueueEntry> labels = settled.get(current.node);
+			if (labels == null) {
+				labels = new LinkedList<QueueEntry>();
+				labels.add(current);
+				settled.put(current.node, labels);
+			}
+			else if (labels.getLast() != current) {
+				if (labels.getLast().hops <= current.hops)
+					continue;
+				labels.add(current);
+			}
+
+			// Connect with the opposite search in this node
+			QueueEntry other = cheapestLabel(opposite.get(current.node), maxPathLength - current.hops);
+			if (other != null && current.cost + other.cost < mu) {
+				mu = current.cost + other.cost;
+				muFw = forward ? current : other;
+				muEdge = null;
+				muBw = forward ? other : current;
+			}
+
+			if (current.hops >= maxPathLength)
+				continue;
+
+			for (DefaultWeightedEdge e : graph.edgesOf(current.node)) {
+
+				JGraphTNode next = Graphs.getOppositeVertex(graph, e, current.node);
+
+				int hops = current.hops + hopsOf(e);
+				if (hops > maxPathLength)
+					continue;
+
+				double cost = current.cost + graph.getEdgeWeight(e);
+				if (cost > maxPathCost)
+					continue;
 
-		try {
-			dijkstra = new DijkstraShortestPath<JGraphTNode, DefaultWeightedEdge>(graph, node1, node2, maxPathCost);
+				// Connect with the opposite search over edge e
+				other = cheapestLabel(opposite.get(next), maxPathLength - hops);
+				if (other != null && cost + other.cost < mu) {
+					mu = cost + other.cost;
+					muFw = forward ? current : other;
+					muEdge = e;
+					muBw = forward ? other : current;
+				}
+
+				LinkedList<QueueEntry> nextLabels = settled.get(next);
+				if (nextLabels == null || nextLabels.getLast().hops > hops)
+					queue.add(new QueueEntry(next, cost, hops, e, current));
+			}
 		}
-		catch (java.lang.IllegalArgumentException e) {
-			System.err.print(node1 + " " + node2 + "\n");
-			e.printStackTrace();
+
+		if (muFw == null || mu > maxPathCost)
 			return null;
+
+		Double pcost = mu;
+
+		if (pathPrinter != null) {
+
+			List<DefaultWeightedEdge> path = muFw.getPathEdgeList();
+			if (muEdge != null)
+				path.add(muEdge);
+			for (QueueEntry e = muBw; e.edge != null; e = e.previous)
+				path.add(e.edge);
+
+			pathPrinter.write(this.graphName + "\t" + node1 + "\t" + node2 + "\t" + pcost + "\t" + path.size() + "\n");
+			pathPrinter.write(path + "\n");
+			pathPrinter.flush();
 		}
+		return pcost;
+	}
+
+	/**
+	 * @return Cheapest of the settled labels with at most maxHops hops or null
+	 */
+	private static QueueEntry cheapestLabel(LinkedList<QueueEntry> labels, int maxHops) {
+		if (labels != null)
+			for (QueueEntry label : labels)
+				if (label.hops <= maxHops)
+					return label;
+		return null;
+	}
+
+	public Double[] dijkstra(JGraphTNode source, List<JGraphTNode> targets, Integer maxPathLength, Double maxPathCost)
+	         throws IOException {
+
+		return dijkstra(source, targets, maxPathLength, maxPathCost, null);
+	}
+
+	/**
+	 * Single source, multi target variant of {@link #dijkstra(JGraphTNode, JGraphTNode, Integer, Double, Writer)}. Runs
+	 * one search from source and returns the cheapest path cost to every target, i.e. one complete row of the distance
+	 * matrix. The search stops as soon as all targets are settled or the cost frontier passes maxPathCost.
+	 *
+	 * @param source
+	 *           Label (prefixed URL) of the start node
+	 * @param targets
+	 *           Labels (prefixed URL) of all target nodes
+	 * @param maxPathLength
+	 *           Maximal path length accepted
+	 * @param maxPathCost
+	 *           Set maximum path cost to limit search radius and thus improve performance. Set null for unbound search.
+	 * @param pathPrinter Provide writer, eg. FileWriter, to get details on path found; provide null to deactive
+	 * @return Array with cost of cheapest path for each target (same order as targets), null if no path was found or if
+	 *         path was of length > maxPathLenght
+	 * @throws IOException
+	 */
+	public Double[] dijkstra(JGraphTNode source, List<JGraphTNode> targets, Integer maxPathLength, Double maxPathCost,
+	         Writer pathPrinter) throws IOException {
+
+		Double[] pcosts = new Double[targets.size()];
+
+		if (maxPathCost == null)
+			maxPathCost = Double.POSITIVE_INFINITY;
 
-		Double pcost = dijkstra.getPathLength();
+		// Targets not yet settled, identical nodes are answered right away
+		HashMap<JGraphTNode, LinkedList<Integer>> openTargets = new HashMap<JGraphTNode, LinkedList<Integer>>();
 
-		// pcost is Double.POSITIVE_INFINITY if no path was found
-		if (pcost.isInfinite()) {
-			pcost = null;
+		for (int j = 0; j < targets.size(); j++) {
+			JGraphTNode target = targets.get(j);
+			if (source.equals(target)) {
+				pcosts[j] = new Double(0d);
+				continue;
+			}
+			if (!graph.containsVertex(target))
+				continue;
+			LinkedList<Integer> columns = openTargets.get(target);
+			if (columns == null) {
+				columns = new LinkedList<Integer>();
+				openTargets.put(target, columns);
+			}
+			columns.add(j);
 		}
-		else {
-			int plen = dijkstra.getPathEdgeList().size();
-			// log.debug("Disjktra: {} {} pcost {} plen {}",
-			// node1, node2, pcost, plen);
-			if (plen > maxPathLength)
-				pcost = null;
 
-			if (pathPrinter != null && pcost != null) {
-				
-				GraphPath<JGraphTNode, DefaultWeightedEdge> path = dijkstra.getPath();
-				
-				pathPrinter.write(this.graphName + "\t" + node1 + "\t" + node2 + "\t" + pcost + "\t" + plen + "\n");
-				pathPrinter.write(path + "\n");
-				pathPrinter.flush();
-				
+		if (openTargets.isEmpty() || !graph.containsVertex(source))
+			return pcosts;
+
+		HashMap<JGraphTNode, QueueEntry> best = new HashMap<JGraphTNode, QueueEntry>();
+		HashSet<JGraphTNode> settled = new HashSet<JGraphTNode>();
+		PriorityQueue<QueueEntry> queue = new PriorityQueue<QueueEntry>();
+
+		QueueEntry start = new QueueEntry(source, 0d, 0, null, null);
+		best.put(source, start);
+		queue.add(start);
+
+		while (!queue.isEmpty() && !openTargets.isEmpty()) {
+
+			QueueEntry current = queue.poll();
+
+			// Lazy deletion of outdated queue entries
+			if (current != best.get(current.node) || !settled.add(current.node))
+				continue;
+
+			if (current.cost > maxPathCost)
+				break;
+
+			LinkedList<Integer> columns = openTargets.remove(current.node);
+			if (columns != null) {
+				Double pcost = (current.hops > maxPathLength) ? null : current.cost;
+				for (Integer j : columns)
+					pcosts[j] = pcost;
+
+				if (pathPrinter != null && pcost != null) {
+					pathPrinter.write(this.graphName + "\t" + source + "\t" + current.node + "\t" + pcost + "\t"
+					         + current.hops + "\n");
+					pathPrinter.write(current.getPathEdgeList() + "\n");
+					pathPrinter.flush();
+				}
+			}
+
+			for (DefaultWeightedEdge e : graph.edgesOf(current.node)) {
+
+				JGraphTNode next = Graphs.getOppositeVertex(graph, e, current.node);
+				if (settled.contains(next))
+					continue;
+
+				double cost = current.cost + graph.getEdgeWeight(e);
+				if (cost > maxPathCost)
+					continue;
+
+				int hops = current.hops + hopsOf(e);
+				QueueEntry known = best.get(next);
+				if (known == null || cost < known.cost || (cost == known.cost && hops < known.hops)) {
+					QueueEntry entry = new QueueEntry(next, cost, hops, e, current);
+					best.put(next, entry);
+					queue.add(entry);
+				}
 			}
 		}
-		return pcost;
+		return pcosts;
+	}
+
+	/**
+	 * Search state of the dijkstra searches, keeps a back pointer for path reconstruction
+	 */
+	static class QueueEntry implements Comparable<QueueEntry> {
+
+		final JGraphTNode		      node;
+		final double		         cost;
+		final int		            hops;
+		final DefaultWeightedEdge	edge;
+		final QueueEntry		      previous;
+
+		QueueEntry(JGraphTNode node, double cost, int hops, DefaultWeightedEdge edge, QueueEntry previous) {
+			this.node = node;
+			this.cost = cost;
+			this.hops = hops;
+			this.edge = edge;
+			this.previous = previous;
+		}
+
+		List<DefaultWeightedEdge> getPathEdgeList() {
+			LinkedList<DefaultWeightedEdge> edges = new LinkedList<DefaultWeightedEdge>();
+			for (QueueEntry e = this; e.edge != null; e = e.previous)
+				edges.addFirst(e.edge);
+			return edges;
+		}
+
+		@Override
+		public int compareTo(QueueEntry o) {
+			int cmp = Double.compare(cost, o.cost);
+			return (cmp != 0) ? cmp : Integer.compare(hops, o.hops);
+		}
 	}
 
 	@SuppressWarnings("unused")
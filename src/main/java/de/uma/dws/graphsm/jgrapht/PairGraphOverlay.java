@@ -0,0 +1,113 @@
+package de.uma.dws.graphsm.jgrapht;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Union of two {@link DocGraphSnapshot}s joined on shared node labels, without copying any edges. Node ids
+ * 0..nA-1 are the nodes of snapshot a, followed by the nodes only contained in snapshot b. The adjacency of a shared
+ * node is the concatenation of its adjacency in a and in b. Creation costs O(nA + nB), so the overlay is meant to be
+ * created per document pair while the snapshots are built once per document.
+ */
+public class PairGraphOverlay extends IntIndexedRdfGraph {
+
+	final CompactRdfGraph	a;
+	final CompactRdfGraph	b;
+	final int	          nA;
+
+	final int[]	          aToB;	     // node id in a -> node id in b, -1 if not contained in b
+	final int[]	          bToOverlay;	// node id in b -> overlay node id
+	final int[]	          bOnly;	     // overlay node id - nA -> node id in b
+
+	public PairGraphOverlay(String graphName, DocGraphSnapshot snapshotA, DocGraphSnapshot snapshotB) {
+
+		this.graphName = graphName;
+		this.a = snapshotA.graph;
+		this.b = snapshotB.graph;
+		this.nA = a.nodeCount();
+
+		int nB = b.nodeCount();
+
+		this.aToB = new int[nA];
+		Arrays.fill(aToB, -1);
+
+		this.bToOverlay = new int[nB];
+		TIntArrayList bOnlyList = new TIntArrayList();
+
+		for (int i = 0; i < nB; i++) {
+			int localA = snapshotA.getLocalId(snapshotB.getGlobalId(i));
+			if (localA >= 0) {
+				aToB[localA] = i;
+				bToOverlay[i] = localA;
+			}
+			else {
+				bToOverlay[i] = nA + bOnlyList.size();
+				bOnlyList.add(i);
+			}
+		}
+		this.bOnly = bOnlyList.toArray();
+	}
+
+	@Override
+	public int nodeCount() {
+		return nA + bOnly.length;
+	}
+
+	@Override
+	public int getNodeId(String label) {
+		int id = a.getNodeId(label);
+		if (id >= 0)
+			return id;
+		id = b.getNodeId(label);
+		return (id < 0) ? -1 : bToOverlay[id];
+	}
+
+	@Override
+	public String getLabel(int nodeId) {
+		return (nodeId < nA) ? a.getLabel(nodeId) : b.getLabel(bOnly[nodeId - nA]);
+	}
+
+	@Override
+	public boolean isSourceNode(int nodeId) {
+		if (nodeId < nA)
+			return a.isSourceNode(nodeId) || (aToB[nodeId] >= 0 && b.isSourceNode(aToB[nodeId]));
+		return b.isSourceNode(bOnly[nodeId - nA]);
+	}
+
+	@Override
+	public int degreeOf(int nodeId) {
+		if (nodeId < nA)
+			return a.degreeOf(nodeId) + ((aToB[nodeId] >= 0) ? b.degreeOf(aToB[nodeId]) : 0);
+		return b.degreeOf(bOnly[nodeId - nA]);
+	}
+
+	@Override
+	public int getNeighbour(int nodeId, int k) {
+		if (nodeId < nA) {
+			int degreeA = a.degreeOf(nodeId);
+			if (k < degreeA)
+				return a.getNeighbour(nodeId, k);
+			return bToOverlay[b.getNeighbour(aToB[nodeId], k - degreeA)];
+		}
+		return bToOverlay[b.getNeighbour(bOnly[nodeId - nA], k)];
+	}
+
+	@Override
+	public double getCost(int nodeId, int k) {
+		if (nodeId < nA) {
+			int degreeA = a.degreeOf(nodeId);
+			if (k < degreeA)
+				return a.getCost(nodeId, k);
+			return b.getCost(aToB[nodeId], k - degreeA);
+		}
+		return b.getCost(bOnly[nodeId - nA], k);
+	}
+
+	@Override
+	public String toString() {
+		return "PairGraphOverlay " + graphName + " [nodes=" + nodeCount() + ", shared=" + (b.nodeCount() - bOnly.length)
+		         + "]";
+	}
+
+}
@@ -0,0 +1,172 @@
+package de.uma.dws.graphsm.jgrapht;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.datamodel.Tuple;
+import de.uma.dws.graphsm.neo4j.Neo4jRdfGraph;
+
+/**
+ * Finds the k documents of a corpus most similar to a query document, without comparing the query to each document.
+ * An inverted index from source node label to documents gives the number of common source nodes per document, which
+ * bounds the similarity from above (see {@link DijkstraHungarianComparator#upperBound}), unless paths of cost 0 make
+ * distinct source nodes count as common ones. Documents are scored in order
+ * of decreasing bound and the search stops as soon as no remaining bound beats the k-th best score so far. Scores
+ * equal the ones of {@link DijkstraParallel}.
+ */
+public class SimilarDocumentsQuery {
+
+	final static Logger	                log	= LoggerFactory.getLogger(SimilarDocumentsQuery.class);
+
+	final List<DocGraphSnapshot>	       corpus;
+	final HashMap<String, TIntArrayList>	postings;	// source node label -> indexes of the documents
+	final DijkstraHungarianComparator	 comparator;
+
+	final static Comparator<Tuple<String, Double>>	BY_SCORE = new Comparator<Tuple<String, Double>>() {
+		@Override
+		public int compare(Tuple<String, Double> t1, Tuple<String, Double> t2) {
+			return Double.compare(t1.v, t2.v);
+		}
+	};
+
+	/**
+	 * @param corpus
+	 *           Document snapshots, created with one shared dictionary (see {@link DocGraphSnapshot#loadAll(List)}).
+	 *           Entries being null are skipped.
+	 * @param comparator
+	 *           Scores the candidates, e.g. new DijkstraHungarianComparator(maxPathLength, maxPathCost, null)
+	 */
+	public SimilarDocumentsQuery(List<DocGraphSnapshot> corpus, DijkstraHungarianComparator comparator) {
+
+		this.corpus = corpus;
+		this.comparator = comparator;
+		this.postings = new HashMap<String, TIntArrayList>();
+
+		for (int d = 0; d < corpus.size(); d++) {
+			DocGraphSnapshot doc = corpus.get(d);
+			if (doc == null)
+				continue;
+			for (String label : new HashSet<String>(doc.getSourceNodes())) {
+				TIntArrayList docs = postings.get(label);
+				if (docs == null) {
+					docs = new TIntArrayList();
+					postings.put(label, docs);
+				}
+				docs.add(d);
+			}
+		}
+		log.info("Inverted index over {} documents with {} source node labels", corpus.size(), postings.size());
+	}
+
+	/**
+	 * @param query
+	 *           Document snapshot created with the dictionary of the corpus. A corpus document with the same name is
+	 *           not returned.
+	 * @return Up to k (document name, similarity) tuples, most similar first
+	 */
+	public List<Tuple<String, Double>> topK(DocGraphSnapshot query, int k) {
+
+		List<String> qNodes = query.getSourceNodes();
+
+		// Common source node count per document from the postings of the query labels
+		int[] commonNodesCnt = new int[corpus.size()];
+		for (String label : new HashSet<String>(qNodes)) {
+			TIntArrayList docs = postings.get(label);
+			if (docs == null)
+				continue;
+			for (int i = 0; i < docs.size(); i++)
+				commonNodesCnt[docs.get(i)]++;
+		}
+
+		// Candidates by decreasing upper bound of the similarity
+		PriorityQueue<Tuple<Integer, Double>> candidates = new PriorityQueue<Tuple<Integer, Double>>(
+		         Math.max(1, corpus.size()), new Comparator<Tuple<Integer, Double>>() {
+			         @Override
+			         public int compare(Tuple<Integer, Double> t1, Tuple<Integer, Double> t2) {
+				         return Double.compare(t2.v, t1.v);
+			         }
+		         });
+
+		for (int d = 0; d < corpus.size(); d++) {
+			DocGraphSnapshot doc = corpus.get(d);
+			if (doc == null || doc.getName().equals(query.getName()))
+				continue;
+			double bound = comparator.hasZeroCostPaths(query, doc) ? Double.POSITIVE_INFINITY : upperBound(qNodes.size(),
+			         doc.getSourceNodes().size(), commonNodesCnt[d]);
+			candidates.add(new Tuple<Integer, Double>(d, bound));
+		}
+
+		// Min heap of the k best scores so far
+		PriorityQueue<Tuple<String, Double>> best = new PriorityQueue<Tuple<String, Double>>(Math.max(1, k), BY_SCORE);
+
+		int scoredCnt = 0;
+
+		while (!candidates.isEmpty() && k > 0) {
+
+			Tuple<Integer, Double> candidate = candidates.poll();
+
+			double tau = (best.size() < k) ? Double.NEGATIVE_INFINITY : best.peek().v;
+			if (candidate.v <= tau)
+				break;
+
+			DocGraphSnapshot doc = corpus.get(candidate.k);
+			double sim = comparator.computeSimilarityAtLeast(query, doc, tau);
+			scoredCnt++;
+
+			if (sim < tau || (best.size() == k && sim == tau))
+				continue;
+
+			best.add(new Tuple<String, Double>(doc.getName(), sim));
+			if (best.size() > k)
+				best.poll();
+		}
+
+		log.info("Top {} query for {} scored {} of {} documents", k, query.getName(), scoredCnt, corpus.size());
+
+		ArrayList<Tuple<String, Double>> result = new ArrayList<Tuple<String, Double>>(best);
+		Collections.sort(result, Collections.reverseOrder(BY_SCORE));
+		return result;
+	}
+
+	/**
+	 * Similarity bound from source node counts only: at least |sNodes1| - |sNodes2| source nodes stay unmatched and only
+	 * common source nodes can have a distance of 0. Only valid without paths of cost 0, see
+	 * {@link DijkstraHungarianComparator#hasZeroCostPaths(DocGraphSnapshot, DocGraphSnapshot)}.
+	 */
+	static double upperBound(int sNodeCntA, int sNodeCntB, int commonNodesCnt) {
+		int sNode1Cnt = Math.max(sNodeCntA, sNodeCntB);
+		int sNode2Cnt = Math.min(sNodeCntA, sNodeCntB);
+		if (sNode2Cnt == 0)
+			return 0d;
+		return sNode2Cnt / (double) (sNode1Cnt + sNode2Cnt - commonNodesCnt);
+	}
+
+	public static void main(String[] args) {
+
+		ArrayList<Neo4jRdfGraph> graphs = new ArrayList<Neo4jRdfGraph>();
+		for (int i = 0; i < 50; i++)
+			graphs.add(Neo4jRdfGraph.getInstance("neo4j/LP50_2Hops_Spotlight/doc-" + i + ".db", false));
+
+		ArrayList<DocGraphSnapshot> snapshots = DocGraphSnapshot.loadAll(graphs);
+
+		for (Neo4jRdfGraph graph : graphs)
+			graph.shutdown();
+
+		SimilarDocumentsQuery engine = new SimilarDocumentsQuery(snapshots, new DijkstraHungarianComparator(2,
+		         Double.MAX_VALUE, null));
+
+		for (Tuple<String, Double> t : engine.topK(snapshots.get(0), 5))
+			System.out.println(t);
+	}
+
+}
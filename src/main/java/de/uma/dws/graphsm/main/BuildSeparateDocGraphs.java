@@ -1,16 +1,29 @@
 package de.uma.dws.graphsm.main;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.configuration.Configuration;
+import org.neo4j.kernel.impl.util.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.uma.dws.graphsm.ConfFactory;
 import de.uma.dws.graphsm.neo4j.DBPediaSingleDocGraphBuilder;
 import de.uma.dws.graphsm.neo4j.Neo4jRdfGraph;
+import de.uma.dws.graphsm.tripleweighter.CachingTripleWeighter;
 import de.uma.dws.graphsm.tripleweighter.TripleWeighter;
 import de.uma.dws.graphsm.tripleweighter.TripleWeighterGlobalPredObjIC;
 import de.uma.dws.graphsm.webservice.Annotator;
+import de.uma.dws.graphsm.webservice.CachingAnnotator;
 import de.uma.dws.graphsm.webservice.DBPediaAllOutgoing;
 import de.uma.dws.graphsm.webservice.DBPediaEdgeSelector;
 import de.uma.dws.graphsm.webservice.DBPediaSpotlight;
@@ -19,6 +32,7 @@ import de.uni_mannheim.informatik.dws.dwslib.MyFileReader;
 public class BuildSeparateDocGraphs {
 
 	final static Logger	log	= LoggerFactory.getLogger(BuildSeparateDocGraphs.class);
+	final static Configuration	conf	= ConfFactory.getConf();
 
 	/**
 	 * Build one new neo4j graph (disk-based) for each document from doc collection file (NL text)
@@ -43,7 +57,7 @@ public class BuildSeparateDocGraphs {
 					hopsLimit, 
 					new DBPediaSpotlight(), 
 					new DBPediaAllOutgoing(), 
-					new TripleWeighterGlobalPredObjIC());
+					new CachingTripleWeighter(new TripleWeighterGlobalPredObjIC()));
 	}
 	
 	@Deprecated
@@ -64,13 +78,22 @@ public class BuildSeparateDocGraphs {
 	}
 	
 	
+	/**
+	 * Builds the documents on a pool of build.docs.parallel workers, each running annotation, expansion and Neo4j writes
+	 * of one document, so the stages of different documents overlap. Documents are handed to the workers in order and
+	 * only when one is free, so at most build.docs.parallel graphs are held in memory at a time. A graph is built in
+	 * doc-N.db.part/ and renamed to doc-N.db/ once it is complete and shut down; existing doc-N.db/ directories are
+	 * skipped, so a failed or aborted run resumes where it stopped.
+	 * 
+	 * @return The graphs of all documents in the order of docsFile
+	 */
 	public static ArrayList<Neo4jRdfGraph> fromDocsTextFile(
 				String docsFile, 
 				String dbdir, 
-				int hopsLimit,
-				Annotator annotator,
-				DBPediaEdgeSelector edgeSelector,
-				TripleWeighter tripleWeighter) {
+				final int hopsLimit,
+				final Annotator annotator,
+				final DBPediaEdgeSelector edgeSelector,
+				final TripleWeighter tripleWeighter) {
 
 		File baseDir = new File(dbdir);
 		if (baseDir.isDirectory())
@@ -78,35 +101,112 @@ public class BuildSeparateDocGraphs {
 				log.warn("Output directory {} is not empty, keeping existing graphs.", baseDir.getAbsolutePath());
 
 		ArrayList<String> docs = MyFileReader.readLinesFile(new File(docsFile));
-		ArrayList<Neo4jRdfGraph> graphs = new ArrayList<Neo4jRdfGraph>();
 		
-		log.info("Start building {} doc graphs from text corpora file", docs.size());
-
-		for (int cnt = 0; cnt < docs.size(); cnt++) {
+		int workers = Math.max(1, conf.getInt("build.docs.parallel", conf.getInt("system.parallel.threads", 1)));
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		final Semaphore freeWorkers = new Semaphore(workers);
+		HashMap<Integer, Future<?>> builds = new HashMap<Integer, Future<?>>();
+
+		log.info("Start building {} doc graphs from text corpora file with {} workers", docs.size(), workers);
+
+		try {
+			for (int cnt = 0; cnt < docs.size(); cnt++) {
+
+				final int docId = cnt;
+				final String doc = docs.get(cnt);
+				final String graphDir = dbdir + "doc-" + cnt + ".db/";
+
+				if (new File(graphDir).exists()) {
+					log.warn("Skipping document {}, directory remains unchanged {}", cnt, new File(graphDir).getAbsolutePath());
+					continue;
+				}
+
+				freeWorkers.acquire();
+				builds.put(cnt, pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							buildDocGraph(docId, doc, graphDir, hopsLimit, annotator, edgeSelector, tripleWeighter);
+						}
+						finally {
+							freeWorkers.release();
+						}
+					}
+				}));
+			}
 
-			String graphDir = dbdir + "doc-" + cnt + ".db/";
-			File graphDirFile = new File(graphDir); 
-			
-			if (graphDirFile.exists()) {
-				log.warn("Skipping document {}, directory remains unchaineged {}", cnt, graphDirFile.getAbsolutePath());
-				graphs.add(Neo4jRdfGraph.getInstance(graphDir, false));
-				continue;
+			int failed = 0;
+			for (Map.Entry<Integer, Future<?>> build : builds.entrySet()) {
+				try {
+					build.getValue().get();
+				}
+				catch (ExecutionException e) {
+					log.error("Building graph of document {} failed: {}", build.getKey(), e.getCause());
+					failed++;
+				}
 			}
+			if (failed > 0)
+				throw new RuntimeException(failed + " of " + builds.size()
+							+ " doc graphs failed, run again to build the missing ones");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while building doc graphs");
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		log.info("Built {} doc graphs, annotation cache: {}", builds.size(), CachingAnnotator.wrap(annotator).getStats());
+
+		ArrayList<Neo4jRdfGraph> graphs = new ArrayList<Neo4jRdfGraph>();
+		for (int cnt = 0; cnt < docs.size(); cnt++)
+			graphs.add(Neo4jRdfGraph.getInstance(dbdir + "doc-" + cnt + ".db/", false));
+		return graphs;
+	}
 
-			Neo4jRdfGraph graph = Neo4jRdfGraph.getInstance(graphDir, false);
+	/**
+	 * Builds the graph of one document in graphDir.part/ and renames it to graphDir when it is complete
+	 */
+	private static void buildDocGraph(
+				int docId, 
+				String doc, 
+				String graphDir, 
+				int hopsLimit, 
+				Annotator annotator,
+				DBPediaEdgeSelector edgeSelector, 
+				TripleWeighter tripleWeighter) {
+
+		File graphDirFile = new File(graphDir);
+		String partDir = graphDirFile.getPath() + ".part/";
+		File partDirFile = new File(partDir);
 
+		if (partDirFile.exists()) {
+			log.warn("Deleting incomplete graph of document {} in {}", docId, partDirFile.getAbsolutePath());
+			try {
+				FileUtils.deleteRecursively(partDirFile);
+			}
+			catch (IOException e) {
+				throw new RuntimeException("Deleting " + partDirFile + " failed", e);
+			}
+		}
+
+		Neo4jRdfGraph graph = Neo4jRdfGraph.getInstance(partDir, false);
+		try {
 			DBPediaSingleDocGraphBuilder graphBuilder = 
 						new DBPediaSingleDocGraphBuilder(graph, tripleWeighter, annotator);
 
-			log.info("Creating DBPedia graph in {} for doc {} ", graphDir, cnt);
-			
-			graphBuilder.addSourceNodes(docs.get(cnt));
-			graphBuilder.addExpandedNetwork(edgeSelector, hopsLimit);
-
-			graphs.add(graph);
+			log.info("Creating DBPedia graph in {} for doc {} ", graphDir, docId);
 
+			graphBuilder.addSourceNodes(doc);
+			graphBuilder.addExpandedNetwork(edgeSelector, hopsLimit);
 		}
-		return graphs;
+		finally {
+			graph.shutdown();
+		}
+
+		if (!partDirFile.renameTo(graphDirFile))
+			throw new RuntimeException("Renaming " + partDirFile + " to " + graphDirFile + " failed");
 	}
 
 	public static void main(String[] args) {
@@ -1,13 +1,19 @@
 package de.uma.dws.graphsm.mysql;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.uma.dws.graphsm.mysql.MySqlConnectionPool.PooledConnection;
+import de.uma.dws.graphsm.tripleweighter.TripleCounts;
+
 /**
  * Class for querying mysql table containing global triple counts. Table Schema:
  * 1) PredCnt (pred, cnt) 
@@ -16,30 +22,27 @@ import org.slf4j.LoggerFactory;
  * Tables are created with {@link de.uma.dws.graphsm.webservice.DBPediaCreateTripleCountsTables}
  */
 
-public class DBPediaCountsMySqlConnector extends MySqlConnector {
+public class DBPediaCountsMySqlConnector extends MySqlConnector implements TripleCounts {
 
 	final static Logger	 log	         = LoggerFactory.getLogger(DBPediaCountsMySqlConnector.class);
 	private static String	db	         = conf.getString("mysql.db.dbpediacounts");
 	private static Double	tripleCnt	= null;
+	private static int	   batchSize	= conf.getInt("mysql.batch.size", 1000);
+
+	private static DBPediaCountsMySqlConnector	instance	= null;
 
 	// Private constructor for singleton
 	private DBPediaCountsMySqlConnector(String database) {
 		super(database);
 	}
 
-	public static DBPediaCountsMySqlConnector getInstance() {
+	public static synchronized DBPediaCountsMySqlConnector getInstance() {
 		if (instance == null)
 			instance = new DBPediaCountsMySqlConnector(db);
-		try {
-			if (connection.isClosed())
-				connect();
-		}
-		catch (SQLException e) {
-			e.printStackTrace();
-		}
-		return (DBPediaCountsMySqlConnector) instance;
+		return instance;
 	}
 
+	@Override
 	public Double getTripleCnt() {
 		if (tripleCnt == null) {
 			String q = "SELECT SUM(cnt) FROM PredCnt";
@@ -49,40 +52,43 @@ public class DBPediaCountsMySqlConnector extends MySqlConnector {
 		return tripleCnt;
 	}
 
+	@Override
 	public Double getPredCnt(String pred) {
 
 //		pred = shortener.toPrefixedUri(pred).replace("'", "\\'");
 
-		String q = "SELECT cnt FROM PredCnt WHERE " + "pred = \"" + pred + "\";";
-		Double cnt = queryForSingleResult(q);
+		String q = "SELECT cnt FROM PredCnt WHERE pred = ?";
+		Double cnt = queryForSingleResult(q, pred);
 
 		if (cnt == null)
-			log.warn("Predicate count not found, check MySQL database! ", q);
+			log.warn("Predicate count not found, check MySQL database! {}", pred);
 
 		return cnt;
 	}
 
+	@Override
 	public Double getObjCnt(String obj) {
 
 //		obj = shortener.toPrefixedUri(obj).replace("'", "\\'");
 
-		String q = "SELECT cnt FROM ObjCnt WHERE " + "obj = \"" + obj + "\";";
-		Double cnt = queryForSingleResult(q);
+		String q = "SELECT cnt FROM ObjCnt WHERE obj = ?";
+		Double cnt = queryForSingleResult(q, obj);
 
 		if (cnt == null)
-			log.warn("Object count not found, check MySQL database! Query=", q);
+			log.warn("Object count not found, check MySQL database! {}", obj);
 
 		return cnt;
 	}
 	
+	@Override
 	public Double getPredObjCnt(String pred, String obj) {
 		
 //		pred = shortener.toPrefixedUri(pred).replace("'", "\\'");
 //		obj = shortener.toPrefixedUri(obj).replace("'", "\\'");
 		
-		String q = "SELECT cnt FROM PredObjCnt WHERE " + "pred = \"" + pred + "\" AND " + "obj  = \"" + obj + "\" ;";
+		String q = "SELECT cnt FROM PredObjCnt WHERE pred = ? AND obj = ?";
 
-		Double cnt = queryForSingleResult(q);
+		Double cnt = queryForSingleResult(q, pred, obj);
 		
 		//Tables contains only <pred,obj> counts > 1
 		//Assuming count of 1 for <pred,obj> combinations not found
@@ -92,58 +98,155 @@ public class DBPediaCountsMySqlConnector extends MySqlConnector {
 		return cnt;
 	}
 
+	@Override
+	public Double[] getPredCnts(List<String> preds) {
+		ArrayList<String[]> keys = new ArrayList<String[]>(preds.size());
+		for (String pred : preds)
+			keys.add(new String[] { pred });
+		return queryCounts("PredCnt", new String[] { "pred" }, keys);
+	}
+
+	@Override
+	public Double[] getObjCnts(List<String> objs) {
+		ArrayList<String[]> keys = new ArrayList<String[]>(objs.size());
+		for (String obj : objs)
+			keys.add(new String[] { obj });
+		return queryCounts("ObjCnt", new String[] { "obj" }, keys);
+	}
+
+	@Override
+	public Double[] getPredObjCnts(List<String> preds, List<String> objs) {
+		ArrayList<String[]> keys = new ArrayList<String[]>(preds.size());
+		for (int i = 0; i < preds.size(); i++)
+			keys.add(new String[] { preds.get(i), objs.get(i) });
+		Double[] cnts = queryCounts("PredObjCnt", new String[] { "pred", "obj" }, keys);
+		//Tables contains only <pred,obj> counts > 1
+		for (int i = 0; i < cnts.length; i++)
+			if (cnts[i] == null)
+				cnts[i] = 1.0;
+		return cnts;
+	}
+
+	/**
+	 * Looks up the counts of many keys with one IN (...) query per chunk of mysql.batch.size distinct keys
+	 * 
+	 * @param keyColumns
+	 *           Names of the key columns, e.g. pred and obj
+	 * @param keys
+	 *           Key values, one array entry per key column
+	 * @return Count of each key (same order as keys), null if not found
+	 */
+	private Double[] queryCounts(String table, String[] keyColumns, List<String[]> keys) {
+
+		// Distinct keys, joined by tab, with their counts
+		LinkedHashMap<String, String[]> distinctKeys = new LinkedHashMap<String, String[]>();
+		for (String[] key : keys)
+			distinctKeys.put(joinKey(key), key);
+
+		HashMap<String, Double> cnts = new HashMap<String, Double>(2 * distinctKeys.size());
+
+		ArrayList<String[]> chunk = new ArrayList<String[]>(batchSize);
+		for (String[] key : distinctKeys.values()) {
+			chunk.add(key);
+			if (chunk.size() == batchSize) {
+				queryChunk(table, keyColumns, chunk, cnts);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty())
+			queryChunk(table, keyColumns, chunk, cnts);
+
+		Double[] result = new Double[keys.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = cnts.get(joinKey(keys.get(i)));
+
+		log.debug("{} counts of {} keys ({} distinct) found in {}", cnts.size(), keys.size(), distinctKeys.size(),
+		         table);
+
+		return result;
+	}
+
+	private void queryChunk(String table, String[] keyColumns, List<String[]> chunk, HashMap<String, Double> cnts) {
+
+		// e.g. SELECT pred, obj, cnt FROM PredObjCnt WHERE (pred, obj) IN ((?,?),(?,?))
+		String columns = keyColumns[0];
+		String placeholder = "?";
+		for (int c = 1; c < keyColumns.length; c++) {
+			columns += ", " + keyColumns[c];
+			placeholder += ",?";
+		}
+		if (keyColumns.length > 1)
+			placeholder = "(" + placeholder + ")";
+
+		// Chunk sizes rounded up to a power of two by repeating the last key, so only a few statements per table are
+		// prepared and cached on each pooled connection
+		int size = Math.min(Integer.highestOneBit(chunk.size() - 1) << 1, batchSize);
+		size = Math.max(size, chunk.size());
+
+		StringBuilder q = new StringBuilder("SELECT " + columns + ", cnt FROM " + table + " WHERE ");
+		q.append((keyColumns.length > 1) ? "(" + columns + ")" : columns).append(" IN (");
+		for (int i = 0; i < size; i++)
+			q.append((i == 0) ? "" : ",").append(placeholder);
+		q.append(")");
+
+		PooledConnection c = pool.borrow();
+		try {
+			PreparedStatement stmt = c.prepare(q.toString());
+			int p = 1;
+			for (int i = 0; i < size; i++)
+				for (String value : chunk.get(Math.min(i, chunk.size() - 1)))
+					stmt.setString(p++, value);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				String[] key = new String[keyColumns.length];
+				while (rs.next()) {
+					for (int k = 0; k < key.length; k++)
+						key[k] = rs.getString(k + 1);
+					String joined = joinKey(key);
+					if (cnts.put(joined, rs.getDouble(key.length + 1)) != null)
+						log.warn("More than one value found for {} in {}", joined, table);
+				}
+			}
+		}
+		catch (SQLException e) {
+			if (MySqlConnectionPool.isConnectionError(e))
+				c.setBroken();
+			log.warn("SQL Connection error: {} {}", e.getMessage(), table);
+			e.printStackTrace();
+			throw new RuntimeException();
+		}
+		finally {
+			pool.release(c);
+		}
+	}
+
+	private static String joinKey(String[] key) {
+		return (key.length == 1) ? key[0] : key[0] + "\t" + key[1];
+	}
 	
 	/**
 	 * Standard executor for queries that result in exactly one numeral value
 	 */
-	private Double queryForSingleResult(String query) {
+	private Double queryForSingleResult(String query, Object... params) {
 
-		Statement stmt = null;
-		ResultSet rs = null;
-		ArrayList<Double> rsValues = new ArrayList<>();
+		ArrayList<Double> rsValues;
 
 		try {
-			stmt = connection.createStatement();
-			rs = stmt.executeQuery(query);
-
+			rsValues = queryDoubles(query, params);
 		}
 		catch (SQLException e) {
 			log.warn("SQL Connection error: {} {}", e.getMessage(), query);
 			e.printStackTrace();
 			throw new RuntimeException();
 		}
-		
-		finally {
-			if (rs == null) {
-				try {
-					stmt.close();
-				}
-				catch (SQLException e) {
-					log.warn("SQL Connection error: {} {}", e.getMessage(), query);
-					e.printStackTrace();
-					throw new RuntimeException();
-				}
-				return null;
-			}
-			try {
-				while (rs.next()) {
-					rsValues.add(rs.getDouble(1));
-				}
-				rs.close();
-				stmt.close();
-			}
-			catch (SQLException e) {
-				log.warn("Reading MySQL results failed with {} {}", e.getMessage(), e.getSQLState());
-				e.printStackTrace();
-			}
-			if (rsValues.size() > 1) {
-				log.warn("More than one value found for your query {}", query);
-				return Double.NaN;
-			}
-			if (rsValues.size() < 1) {
-				//no value found for query (makes sense in some cases)
-				return null;
-			}
+
+		if (rsValues.size() > 1) {
+			log.warn("More than one value found for your query {}", query);
+			return Double.NaN;
+		}
+		if (rsValues.size() < 1) {
+			//no value found for query (makes sense in some cases)
+			return null;
 		}
 
 		return rsValues.get(0);
@@ -1,8 +1,6 @@
 package de.uma.dws.graphsm.mysql;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 
 import org.slf4j.Logger;
@@ -24,84 +22,57 @@ public class DBPediaWeightsMySqlConnector extends MySqlConnector {
 	private static final String db = conf.getString("mysql.db.dbpediaweights");
 	private static Double totalPropObjCnt = null;
 	
+	private static DBPediaWeightsMySqlConnector instance = null;
+	
 	private DBPediaWeightsMySqlConnector(String database) {
 		super(database);
 	}	
 	
-	public static DBPediaWeightsMySqlConnector getInstance() {
+	public static synchronized DBPediaWeightsMySqlConnector getInstance() {
 		if (instance == null)
 			instance = new DBPediaWeightsMySqlConnector(db);
-		try {
-			if (connection.isClosed())
-				connect();
-		} catch (SQLException e) {e.printStackTrace();}	
-		return (DBPediaWeightsMySqlConnector) instance;	
+		return instance;	
 	}
 
 	
 	private Double getTotalPropObjCnt() {
 		
-		String query = "SELECT SUM(cnt) FROM PropObjCombIC;";
+		String query = "SELECT SUM(cnt) FROM PropObjCombIC";
 		return queryIC(query);
 	}
 
 	
 	public Integer getPropCnt(String prop) {
 		
-		Statement stmt 	= null;
-		ResultSet rs 	= null;
-		ArrayList<Integer> rsValues = new ArrayList<>();
-		
-		prop = shortener.toPrefixedUri(prop).replace("'", "\\'");
-		String query = 
-				"SELECT cnt FROM PropCnt WHERE " +
-				"prop = '"+prop+"';";
+		prop = shortener.toPrefixedUri(prop);
+		String query = "SELECT cnt FROM PropCnt WHERE prop = ?";
 
+		ArrayList<Double> rsValues;
 		try {
-			stmt = connection.createStatement();
-			rs = stmt.executeQuery(query);
-		
+			rsValues = queryDoubles(query, prop);
 		} catch (SQLException e) {
 			log.warn("SQL Connection error {}", e.getMessage());
-			
-		} finally {
-			if (rs == null) {
-				try {stmt.close();} 
-				catch (SQLException e) {e.printStackTrace();}
-				return null;
-			}
-			try {
-				while (rs.next()) {
-					rsValues.add(rs.getInt("cnt"));
-				}
-				rs.close();
-				stmt.close();
-			} catch (SQLException e) {
-				log.warn("Reading  MySQL results failed with {} {}", e.getMessage(), e.getSQLState());
-			} 
-			if (rsValues.size() > 1) {
-				log.warn("Duplicate count values found! Check database for inconsistancies");
-				return null;
-			}
-			if (rsValues.size() < 1) {
-				log.warn("No count values found!");
-				return null;
-			}
+			return null;
+		}
+		if (rsValues.size() > 1) {
+			log.warn("Duplicate count values found! Check database for inconsistancies");
+			return null;
+		}
+		if (rsValues.size() < 1) {
+			log.warn("No count values found!");
+			return null;
 		}
 		
-		return rsValues.get(0);
+		return rsValues.get(0).intValue();
 	}
 	
 	public Double getPropObjIC(String prop, String obj) {
 		
-		prop = shortener.toPrefixedUri(prop).replace("'", "\\'");
-		obj  = shortener.toPrefixedUri(obj).replace("'", "\\'");
-		String query = 
-				"SELECT IC FROM PropObjIC WHERE " +
-				"prop = '"+prop+"' AND " +
-				"obj  = '"+obj+"' ;";
+		prop = shortener.toPrefixedUri(prop);
+		obj  = shortener.toPrefixedUri(obj);
+		String query = "SELECT IC FROM PropObjIC WHERE prop = ? AND obj = ?";
 
-		Double infoContentValue = queryIC(query);
+		Double infoContentValue = queryIC(query, prop, obj);
 		
 		if (infoContentValue == null) {
 			infoContentValue = Double.NaN;
@@ -114,14 +85,11 @@ public class DBPediaWeightsMySqlConnector extends MySqlConnector {
 		if (totalPropObjCnt == null) 
 			totalPropObjCnt = getTotalPropObjCnt();
 		
-		prop = shortener.toPrefixedUri(prop).replace("'", "\\'");
-		obj  = shortener.toPrefixedUri(obj).replace("'", "\\'");
-		String q1 = 
-				"SELECT IC FROM PropObjCombIC WHERE " +
-				"prop = '"+prop+"' AND " +
-				"obj  = '"+obj+"' ;";
+		prop = shortener.toPrefixedUri(prop);
+		obj  = shortener.toPrefixedUri(obj);
+		String q1 = "SELECT IC FROM PropObjCombIC WHERE prop = ? AND obj = ?";
 
-		Double infoContentValue = queryIC(q1);
+		Double infoContentValue = queryIC(q1, prop, obj);
 		
 		if (infoContentValue == null) {
 			//Always assume <prop, obj> count = 1 if not found in database
@@ -147,12 +115,10 @@ public class DBPediaWeightsMySqlConnector extends MySqlConnector {
 	
 	public Double getPropIC(String prop) {
 		
-		prop = shortener.toPrefixedUri(prop).replace("'", "\\'");
-		String query = 
-				"SELECT IC FROM PropIC WHERE " +
-				"prop = '"+prop+"';";
+		prop = shortener.toPrefixedUri(prop);
+		String query = "SELECT IC FROM PropIC WHERE prop = ?";
 		
-		Double infoContentValue = queryIC(query);
+		Double infoContentValue = queryIC(query, prop);
 		
 		if (infoContentValue == null) {
 			log.warn("Property {} not found in Information Content Database. Setting value to NaN", prop);
@@ -161,42 +127,22 @@ public class DBPediaWeightsMySqlConnector extends MySqlConnector {
 		return infoContentValue;
 	}
 	
-	private Double queryIC(String query) {
-		
-		Statement stmt 	= null;
-		ResultSet rs 	= null;
-		ArrayList<Double> rsValues = new ArrayList<>();
+	private Double queryIC(String query, Object... params) {
 		
+		ArrayList<Double> rsValues;
 		try {
-			stmt = connection.createStatement();
-			rs = stmt.executeQuery(query);
-		
+			rsValues = queryDoubles(query, params);
 		} catch (SQLException e) {
 			log.warn("SQL Connection error: {} {}", e.getMessage(), query);
-			
-		} finally {
-			if (rs == null) {
-				try {stmt.close();} 
-				catch (SQLException e) {e.printStackTrace();}
-				return null;
-			}
-			try {
-				while (rs.next()) {
-					rsValues.add(rs.getDouble(1));
-				}
-				rs.close();
-				stmt.close();
-			} catch (SQLException e) {
-				log.warn("Reading  MySQL results failed with {} {}", e.getMessage(), e.getSQLState());
-			} 
-			if (rsValues.size() > 1) {
-				log.warn("Duplicate IC values found! Check database for inconsistancies");
-				return Double.NaN;
-			}
-			if (rsValues.size() < 1) {
-//				log.debug("No IC values found!"); Thats okay as <prop,obj> counts of 1 have not been recorded in the database
-				return null;
-			}
+			return null;
+		}
+		if (rsValues.size() > 1) {
+			log.warn("Duplicate IC values found! Check database for inconsistancies");
+			return Double.NaN;
+		}
+		if (rsValues.size() < 1) {
+//			log.debug("No IC values found!"); Thats okay as <prop,obj> counts of 1 have not been recorded in the database
+			return null;
 		}
 		
 		return rsValues.get(0);
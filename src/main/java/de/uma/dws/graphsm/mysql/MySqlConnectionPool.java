@@ -0,0 +1,258 @@
+package de.uma.dws.graphsm.mysql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+
+/**
+ * Thread-safe pool of up to mysql.pool.size connections to one database. A borrowed connection is used by one thread
+ * only until it is released, so its {@link PreparedStatement}s are cached per connection and reused by the next
+ * borrower. If all connections are in use, borrowers wait for the next release.
+ */
+public class MySqlConnectionPool {
+
+	final static Logger	                                 log	               = LoggerFactory
+	                                                                                 .getLogger(MySqlConnectionPool.class);
+	final static Configuration	                         conf	              = ConfFactory.getConf();
+
+	private static final String	                      host	              = conf.getString("mysql.host");
+	private static final int	                         port	              = conf.getInt("mysql.port");
+	private static final String	                      user	              = conf.getString("mysql.user");
+	private static final String	                      passwd	           = conf.getString("mysql.passwd");
+
+	/** Idle connections are pinged before reuse after this time, MySQL drops them after wait_timeout */
+	private static final long	                         VALIDATE_AFTER_MSEC	= 60000;
+
+	private static final HashMap<String, MySqlConnectionPool>	pools	           = new HashMap<String, MySqlConnectionPool>();
+
+	final String	                                       database;
+	final int	                                          maxSize;
+	private final LinkedBlockingQueue<PooledConnection>	idle	              = new LinkedBlockingQueue<PooledConnection>();
+	// Open connections, idle or borrowed, including the ones being opened
+	private int	                                        size	              = 0;
+	private boolean	                                    closed	           = false;
+
+	static {
+		try {
+			Class.forName("com.mysql.jdbc.Driver");
+		}
+		catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private MySqlConnectionPool(String database, int maxSize) {
+		this.database = database;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return The pool of database, created on first use with mysql.pool.size (default system.parallel.threads)
+	 *         connections at most
+	 */
+	public static synchronized MySqlConnectionPool getPool(String database) {
+		MySqlConnectionPool pool = pools.get(database);
+		if (pool == null || pool.closed) {
+			int maxSize = conf.getInt("mysql.pool.size", conf.getInt("system.parallel.threads", 1));
+			pool = new MySqlConnectionPool(database, Math.max(1, maxSize));
+			pools.put(database, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Takes an idle connection, opens a new one if less than maxSize are open or waits for a release. Each borrowed
+	 * connection must be given back with {@link #release(PooledConnection)}, e.g. in a finally block.
+	 */
+	public PooledConnection borrow() {
+
+		PooledConnection c = idle.poll();
+
+		while (c == null) {
+			boolean reserved = false;
+			synchronized (this) {
+				if (closed)
+					throw new IllegalStateException("Connection pool of " + database + " is closed");
+				if (size < maxSize) {
+					size++;
+					reserved = true;
+				}
+			}
+			if (reserved)
+				return open();
+			try {
+				// Timeout to recheck the pool size, broken connections are released without going back to idle
+				c = idle.poll(1, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for a MySQL connection to " + database);
+			}
+		}
+
+		if (System.currentTimeMillis() - c.lastUsed > VALIDATE_AFTER_MSEC && !c.isValid())
+			c = replace(c);
+
+		return c;
+	}
+
+	/**
+	 * Gives c back to the pool. Connections marked as broken with {@link PooledConnection#setBroken()} are closed and
+	 * replaced on the next borrow.
+	 */
+	public void release(PooledConnection c) {
+		if (c == null)
+			return;
+		c.lastUsed = System.currentTimeMillis();
+		synchronized (this) {
+			// Checked together with close(), which must not miss a connection offered concurrently
+			if (!c.broken && !closed) {
+				idle.offer(c);
+				return;
+			}
+			size--;
+		}
+		c.close();
+	}
+
+	/**
+	 * Closes all idle connections, connections still borrowed are closed on their release
+	 */
+	public synchronized void close() {
+		closed = true;
+		PooledConnection c;
+		while ((c = idle.poll()) != null) {
+			c.close();
+			size--;
+		}
+		log.debug("MySQL connection pool of {} closed.", database);
+	}
+
+	/**
+	 * @return true if e signals a lost or unusable connection (SQL state class 08), not e.g. a duplicate key
+	 */
+	public static boolean isConnectionError(SQLException e) {
+		return e.getSQLState() != null && e.getSQLState().startsWith("08");
+	}
+
+	/**
+	 * Closes c and opens a new connection in its slot
+	 */
+	private PooledConnection replace(PooledConnection c) {
+		log.info("Reconnecting stale MySQL connection to {}", database);
+		c.close();
+		return open();
+	}
+
+	/**
+	 * Opens a connection in a slot reserved by the caller, outside of the pool lock. The slot is freed if connecting
+	 * fails or the pool was closed meanwhile.
+	 */
+	private PooledConnection open() {
+		PooledConnection c;
+		try {
+			c = new PooledConnection(connect());
+		}
+		catch (RuntimeException e) {
+			synchronized (this) {
+				size--;
+			}
+			throw e;
+		}
+		synchronized (this) {
+			if (!closed)
+				return c;
+			size--;
+		}
+		c.close();
+		throw new IllegalStateException("Connection pool of " + database + " is closed");
+	}
+
+	private Connection connect() {
+		Connection connection;
+		try {
+			connection = DriverManager.getConnection("jdbc:mysql://" + host + ":" + port + "/" + database, user, passwd);
+		}
+		catch (SQLException e) {
+			log.warn("Connection to MySQL server {} failed with {} {}", host, e.getMessage(), e.getSQLState());
+			throw new RuntimeException("Connection to MySQL server failed " + e.getMessage());
+		}
+		log.info("MySQL connection establish: host {}, database {}", host, database);
+		return connection;
+	}
+
+	/**
+	 * One connection with its cached prepared statements. Not thread-safe, used by the borrowing thread only.
+	 */
+	public static class PooledConnection {
+
+		final Connection	                          connection;
+		final HashMap<String, PreparedStatement>	statements	= new HashMap<String, PreparedStatement>();
+		long	                                    lastUsed	 = System.currentTimeMillis();
+		boolean	                                 broken	  = false;
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * @return The prepared statement of sql, created on first use and reused afterwards. Parameters of the previous
+		 *         use are cleared.
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement stmt = statements.get(sql);
+			if (stmt == null) {
+				stmt = connection.prepareStatement(sql);
+				statements.put(sql, stmt);
+			}
+			else {
+				stmt.clearParameters();
+			}
+			return stmt;
+		}
+
+		/**
+		 * Marks the connection to be closed on release, e.g. after a connection error
+		 */
+		public void setBroken() {
+			broken = true;
+		}
+
+		public Connection getConnection() {
+			return connection;
+		}
+
+		boolean isValid() {
+			try {
+				return connection.isValid(5);
+			}
+			catch (SQLException e) {
+				return false;
+			}
+		}
+
+		void close() {
+			try {
+				for (PreparedStatement stmt : statements.values())
+					stmt.close();
+				connection.close();
+			}
+			catch (SQLException e) {
+				log.warn("Closing connection from MySQL server {} failed with {} {}", host, e.getMessage(),
+				         e.getSQLState());
+			}
+			statements.clear();
+		}
+	}
+
+}
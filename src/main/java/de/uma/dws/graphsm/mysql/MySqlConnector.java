@@ -1,69 +1,102 @@
 package de.uma.dws.graphsm.mysql;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.mysql.MySqlConnectionPool.PooledConnection;
 import de.uni_mannheim.informatik.dws.dwslib.virtuoso.LodURI;
 
+/**
+ * Base class of the MySQL connectors. Each connector queries one database through the shared, thread-safe
+ * {@link MySqlConnectionPool} of that database, so connectors can be used by several worker threads at once.
+ */
 public abstract class MySqlConnector {
-	
+
 	final static Logger log = LoggerFactory.getLogger(MySqlConnector.class);
 	final static Configuration conf = ConfFactory.getConf();
-	
-	private static final String host 	= conf.getString("mysql.host");
-	private static final int    port 	= conf.getInt("mysql.port");
-	private static final String user 	= conf.getString("mysql.user");
-	private static final String passwd	= conf.getString("mysql.passwd");
-	private static String database		= null;
-
-	protected static Connection connection = null;
+
+	protected final MySqlConnectionPool pool;
 	protected static LodURI shortener = null;
-	
-	protected static Double totalPropObjCnt = null;
-	
-	protected static MySqlConnector instance = null;
-	
+
 	protected MySqlConnector(String database) {
-		try {
-			Class.forName("com.mysql.jdbc.Driver");
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		}
-		MySqlConnector.database = database;
-		connect();
-		
-		shortener = LodURI.getInstance();	
+		pool = MySqlConnectionPool.getPool(database);
+		shortener = LodURI.getInstance();
 	}
-	
-	
-	protected static void connect() {
+
+	/**
+	 * Runs the prepared query sql with the given parameters
+	 *
+	 * @return First column of all result rows
+	 * @throws SQLException
+	 *            if the query fails, the connection is not reused after connection errors
+	 */
+	protected ArrayList<Double> queryDoubles(String sql, Object... params) throws SQLException {
+
+		ArrayList<Double> rsValues = new ArrayList<>();
+		PooledConnection c = pool.borrow();
+
 		try {
-			connection = DriverManager.getConnection("jdbc:mysql://" + host + ":" + port + "/" + database, user, passwd);
+			PreparedStatement stmt = c.prepare(sql);
+			setParams(stmt, params);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next())
+					rsValues.add(rs.getDouble(1));
+			}
 		} catch (SQLException e) {
-			log.warn("Connection to MySQL server {} failed with {} {}", host, e.getMessage(), e.getSQLState());
-			throw new RuntimeException("Connection to MySQL server failed " + e.getMessage());
+			if (MySqlConnectionPool.isConnectionError(e))
+				c.setBroken();
+			throw e;
+		} finally {
+			pool.release(c);
 		}
-		log.info("MySQL connection establish: host {}, database {}", host, database);
+		return rsValues;
 	}
-	
-	protected void closeConnection() {
+
+	/**
+	 * Runs the prepared insert or update statement sql with the given parameters
+	 *
+	 * @return Number of affected rows
+	 */
+	protected int update(String sql, Object... params) throws SQLException {
+
+		PooledConnection c = pool.borrow();
+
 		try {
-			connection.close();
+			PreparedStatement stmt = c.prepare(sql);
+			setParams(stmt, params);
+			return stmt.executeUpdate();
 		} catch (SQLException e) {
-			log.warn("Closing connection from  MySQL server {} failed with {} {}", host, e.getMessage(), e.getSQLState());
+			if (MySqlConnectionPool.isConnectionError(e))
+				c.setBroken();
+			throw e;
+		} finally {
+			pool.release(c);
 		}
+	}
+
+	protected static void setParams(PreparedStatement stmt, Object... params) throws SQLException {
+		for (int i = 0; i < params.length; i++)
+			stmt.setObject(i + 1, params[i]);
+	}
+
+	/**
+	 * Closes the connection pool of the database, shared by all connectors of the same database
+	 */
+	protected void closeConnection() {
+		pool.close();
 		log.debug("MySQL Connection closed.");
 	}
-	
-	
+
+
 	public static void main(String[] args) {
-		
+
 		MySqlConnector dbc = DBPediaWeightsMySqlConnector.getInstance();
 		dbc.closeConnection();
 	}
@@ -1,9 +1,17 @@
 package de.uma.dws.graphsm.mysql;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
@@ -11,7 +19,15 @@ import org.slf4j.LoggerFactory;
 
 import de.uma.dws.graphsm.ConfFactory;
 import de.uma.dws.graphsm.datamodel.Tuple;
+import de.uma.dws.graphsm.mysql.MySqlConnectionPool.PooledConnection;
 
+/**
+ * MySQL cache of cheapest paths between Neo4j nodes. Paths are written behind: {@link #setPath(Long, Long, Integer, Double)}
+ * only buffers the row, the buffer is written with multi-row INSERT ... ON DUPLICATE KEY UPDATE statements once it
+ * holds mysql.write.batch.size rows, every mysql.write.flush.msec and on JVM shutdown. Buffered paths are returned by
+ * {@link #getPath(Long, Long)} as well. A batch size of 1 writes each path immediately. Rows of a batch failing with a
+ * connection error are buffered again and retried with the next flush.
+ */
 public class Neo4jPathCacheMySqlConnector extends MySqlConnector {
 	
 	final static Logger log = LoggerFactory.getLogger(Neo4jPathCacheMySqlConnector.class);
@@ -20,23 +36,55 @@ public class Neo4jPathCacheMySqlConnector extends MySqlConnector {
 	private static final String db = conf.getString("mysql.db.neo4jcache");
 	private String table; //conf.getString("mysql.db.neo4jcache.table");
 	
+	private final int writeBatchSize = Math.max(1, conf.getInt("mysql.write.batch.size", 500));
+	private final long flushMsec = conf.getLong("mysql.write.flush.msec", 5000);
+	
+	// Rows not yet written: table, node1, node2, path as buffered in pendingPaths
+	private ArrayList<Object[]> pendingRows = new ArrayList<Object[]>();
+	private final ConcurrentHashMap<String, Tuple<Integer, Double>> pendingPaths = 
+			new ConcurrentHashMap<String, Tuple<Integer, Double>>();
+	private final Object flushLock = new Object();
+	private ScheduledExecutorService flusher = null;
+	
 	private Neo4jPathCacheMySqlConnector(String database, String table) {
 		super(database);
 		this.table = table;
+		
+		if (writeBatchSize > 1) {
+			flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "path-cache-flusher");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			flusher.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, flushMsec, flushMsec, TimeUnit.MILLISECONDS);
+			
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					flush();
+				}
+			});
+		}
 	}
 	
 	public Neo4jPathCacheMySqlConnector(String table) {
 		this(db, table);
 	}	
 	
-	public static Neo4jPathCacheMySqlConnector getInstance() {
+	private static Neo4jPathCacheMySqlConnector instance = null;
+	
+	public static synchronized Neo4jPathCacheMySqlConnector getInstance() {
 		if (instance == null)
 			instance = new Neo4jPathCacheMySqlConnector(db);
-		try {
-			if (connection.isClosed())
-				connect();
-		} catch (SQLException e) {e.printStackTrace();}	
-		return (Neo4jPathCacheMySqlConnector) instance;	
+		return instance;	
 	}
 	
 	
@@ -54,8 +102,6 @@ public class Neo4jPathCacheMySqlConnector extends MySqlConnector {
 	
 	public Tuple<Integer, Double> getPath(Long node1Id, Long node2Id) {
 		
-		Statement stmt 	= null;
-		ResultSet rs 	= null;
 		ArrayList<Tuple<Integer, Double>> rsValues = new ArrayList<>();
 		
 		if (node1Id.compareTo(node2Id) < 0) {
@@ -64,27 +110,19 @@ public class Neo4jPathCacheMySqlConnector extends MySqlConnector {
 			node1Id = tmp;
 		}
 		
-		String query = "" +
-				"SELECT plen, pcost FROM " +
-				"`" + table + "` " +
-				"WHERE " +
-				"node1 = \'"+ node1Id +"\' AND " +
-				"node2 = \'"+ node2Id +"\' ;";
+		Tuple<Integer, Double> pending = pendingPaths.get(pendingKey(table, node1Id, node2Id));
+		if (pending != null)
+			return pending;
+		
+		String query = "SELECT plen, pcost FROM `" + table + "` WHERE node1 = ? AND node2 = ?";
 
+		PooledConnection c = pool.borrow();
 		try {
-			stmt = connection.createStatement();
-			rs = stmt.executeQuery(query);
-		
-		} catch (SQLException e) {
-			log.warn("SQL Connection error: {} {}", e.getMessage(), query);
+			PreparedStatement stmt = c.prepare(query);
+			stmt.setLong(1, node1Id);
+			stmt.setLong(2, node2Id);
 			
-		} finally {
-			if (rs == null) {
-				try {stmt.close();} 
-				catch (SQLException e) {e.printStackTrace();}
-				return null;
-			}
-			try {
+			try (ResultSet rs = stmt.executeQuery()) {
 				while (rs.next()) {
 					
 					Integer i = rs.getInt(1);
@@ -96,83 +134,212 @@ public class Neo4jPathCacheMySqlConnector extends MySqlConnector {
 						rsValues.add(new Tuple<Integer, Double>(i, d));
 					}
 				}
-				
-				rs.close();
-				stmt.close();
-				
-			} catch (SQLException e) {
-				log.warn("Reading MySQL results failed with {} {}", e.getMessage(), e.getSQLState());
-			} 
-			if (rsValues.size() > 1) {
-				log.warn("Duplicate values found! Check database for inconsistancies");
-				return null;
-			}
-			if (rsValues.size() < 1) {
-				return null;
 			}
+		} catch (SQLException e) {
+			if (MySqlConnectionPool.isConnectionError(e))
+				c.setBroken();
+			log.warn("SQL Connection error: {} {}", e.getMessage(), query);
+			return null;
+		} finally {
+			pool.release(c);
+		}
+		
+		if (rsValues.size() > 1) {
+			log.warn("Duplicate values found! Check database for inconsistancies");
+			return null;
+		}
+		if (rsValues.size() < 1) {
+			return null;
 		}
 		
 		return rsValues.get(0);
 	}
 	
+	/**
+	 * Buffers the path, see class comment
+	 * 
+	 * @return Number of rows written or buffered
+	 */
 	public int setPath(Long node1Id, Long node2Id, Integer pathLen, Double pastCost) {
 
-		Statement stmt 	= null;
-
 		if (node1Id.compareTo(node2Id) < 0) {
 			Long tmp = node2Id;
 			node2Id = node1Id;
 			node1Id = tmp;
 		}
 
-		String query = "" +
-				"INSERT INTO " +
-				"`" + table + "` " +
-				"VALUES ( "  +
-				node1Id  +", " +
-				node2Id  +", " + 
-				pathLen  +", " +
-				pastCost +");";
+		if (writeBatchSize == 1) {
+			String query = "INSERT INTO `" + table + "` VALUES (?, ?, ?, ?)";
+			try {
+				return update(query, node1Id, node2Id, pathLen, pastCost);
+			} catch (SQLException e) {
+				log.warn("Storing path in mysql cache failed: {}", e.getMessage());
+				return 0;
+			}
+		}
 
+		boolean full;
+		
+		Tuple<Integer, Double> path = new Tuple<Integer, Double>(pathLen, pastCost);
+		
+		synchronized (this) {
+			pendingPaths.put(pendingKey(table, node1Id, node2Id), path);
+			pendingRows.add(new Object[] {table, node1Id, node2Id, path});
+			// Once per batch size of new rows, rows buffered again after a failed write do not trigger a flush each
+			full = pendingRows.size() % writeBatchSize == 0;
+		}
+		
+		if (full)
+			flush();
+		
+		return 1;
+	}
+	
+	/**
+	 * Writes all buffered paths
+	 */
+	public void flush() {
+		// Buffers are taken and written in order, a later path of a pair is never overwritten by an earlier one
+		synchronized (flushLock) {
+			ArrayList<Object[]> rows;
+			synchronized (this) {
+				rows = pendingRows;
+				pendingRows = new ArrayList<Object[]>(writeBatchSize);
+			}
+			write(rows);
+		}
+	}
+	
+	private void write(ArrayList<Object[]> rows) {
+		
+		if (rows.isEmpty())
+			return;
+		
+		LinkedHashMap<String, ArrayList<Object[]>> rowsByTable = new LinkedHashMap<String, ArrayList<Object[]>>();
+		for (Object[] row : rows) {
+			ArrayList<Object[]> tableRows = rowsByTable.get(row[0]);
+			if (tableRows == null) {
+				tableRows = new ArrayList<Object[]>();
+				rowsByTable.put((String) row[0], tableRows);
+			}
+			tableRows.add(row);
+		}
+		
+		PooledConnection c;
 		try {
-			stmt = connection.createStatement();
-			return stmt.executeUpdate(query);
+			c = pool.borrow();
+		} catch (RuntimeException e) {
+			log.warn("Storing {} paths in mysql cache failed, retrying with next flush: {}", rows.size(), e.getMessage());
+			requeue(rows);
+			return;
+		}
 		
-		} catch (SQLException e) {
-			log.warn("Storing path in mysql cache failed: {}", e.getMessage());
-			return 0;
+		// Rows of the batch failing with a connection error and of all later batches
+		ArrayList<Object[]> unwritten = new ArrayList<Object[]>();
+		try {
+			for (Map.Entry<String, ArrayList<Object[]>> e : rowsByTable.entrySet()) {
+				List<Object[]> tableRows = e.getValue();
+				for (int from = 0; from < tableRows.size(); from += writeBatchSize) {
+					List<Object[]> batch = tableRows.subList(from, Math.min(from + writeBatchSize, tableRows.size()));
+					if (!unwritten.isEmpty()) {
+						unwritten.addAll(batch);
+						continue;
+					}
+					try {
+						String sql = insertSql(e.getKey(), batch.size());
+						if (batch.size() == writeBatchSize) {
+							insert(c.prepare(sql), batch);
+						}
+						else {
+							try (PreparedStatement stmt = c.getConnection().prepareStatement(sql)) {
+								insert(stmt, batch);
+							}
+						}
+					} catch (SQLException ex) {
+						if (MySqlConnectionPool.isConnectionError(ex)) {
+							c.setBroken();
+							unwritten.addAll(batch);
+							continue;
+						}
+						log.warn("Storing {} paths in mysql cache failed, dropping them: {}", batch.size(), ex.getMessage());
+					}
+					removePending(batch);
+				}
+			}
+		} finally {
+			pool.release(c);
 		}
+		
+		if (unwritten.isEmpty()) {
+			log.debug("{} paths written to mysql cache", rows.size());
+		}
+		else {
+			log.warn("Storing {} paths in mysql cache failed with a connection error, retrying with next flush",
+			         unwritten.size());
+			requeue(unwritten);
+		}
+	}
+	
+	/**
+	 * Puts rows back in front of the buffer, before the rows buffered meanwhile
+	 */
+	private void requeue(ArrayList<Object[]> rows) {
+		synchronized (this) {
+			rows.addAll(pendingRows);
+			pendingRows = rows;
+		}
+	}
+	
+	/**
+	 * Removes the written rows from the buffered paths, unless the path of a pair was buffered again meanwhile
+	 */
+	private void removePending(List<Object[]> rows) {
+		for (Object[] row : rows)
+			pendingPaths.remove(pendingKey((String) row[0], (Long) row[1], (Long) row[2]), row[3]);
+	}
+	
+	private static String insertSql(String table, int rowCnt) {
+		StringBuilder sql = new StringBuilder("INSERT INTO `" + table + "` (node1, node2, plen, pcost) VALUES ");
+		for (int i = 0; i < rowCnt; i++)
+			sql.append((i == 0) ? "" : ",").append("(?,?,?,?)");
+		sql.append(" ON DUPLICATE KEY UPDATE plen = VALUES(plen), pcost = VALUES(pcost)");
+		return sql.toString();
+	}
+	
+	private static void insert(PreparedStatement stmt, List<Object[]> batch) throws SQLException {
+		int p = 1;
+		for (Object[] row : batch) {
+			@SuppressWarnings("unchecked")
+			Tuple<Integer, Double> path = (Tuple<Integer, Double>) row[3];
+			stmt.setObject(p++, row[1]);
+			stmt.setObject(p++, row[2]);
+			stmt.setObject(p++, path.k);
+			stmt.setObject(p++, path.v);
+		}
+		stmt.executeUpdate();
+	}
+	
+	private static String pendingKey(String table, Long node1Id, Long node2Id) {
+		return table + "\t" + node1Id + "\t" + node2Id;
 	}
 	
 	public int setPath(Long node1Id, Long node2Id, Integer pathLen, Double pastCost, StringBuffer pathSteps) {
 		
 		if (pathSteps != null) {
-			pathSteps = new StringBuffer(pathSteps.toString().replace("'", "\\'"));
 			if (!table.contains("-debug"))
 					table = table + "-debug";
 		}
 		
-		Statement stmt 	= null;
-
 		if (node1Id.compareTo(node2Id) < 0) {
 			Long tmp = node2Id;
 			node2Id = node1Id;
 			node1Id = tmp;
 		}
 
-		String query = "" +
-				"INSERT INTO " +
-				"`" + table + "` " +
-				"VALUES ( " +
-				node1Id +", " +
-				node2Id +", " + 
-				pathLen +", " +
-				pastCost+", " + 
-				"'"+pathSteps+"');";
+		String query = "INSERT INTO `" + table + "` VALUES (?, ?, ?, ?, ?)";
 
 		try {
-			stmt = connection.createStatement();
-			return stmt.executeUpdate(query);
+			return update(query, node1Id, node2Id, pathLen, pastCost, String.valueOf(pathSteps));
 		
 		} catch (SQLException e) {
 			log.warn("Storing path in mysql cache failed: {}", e.getMessage());
@@ -193,5 +360,16 @@ public class Neo4jPathCacheMySqlConnector extends MySqlConnector {
 		
 		dbc.closeConnection();
 	}
+	
+	/**
+	 * Writes the buffered paths and closes the connection pool
+	 */
+	@Override
+	protected void closeConnection() {
+		if (flusher != null)
+			flusher.shutdown();
+		flush();
+		super.closeConnection();
+	}
 
 }
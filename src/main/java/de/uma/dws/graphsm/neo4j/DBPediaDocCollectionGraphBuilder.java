@@ -1,14 +1,14 @@
 package de.uma.dws.graphsm.neo4j;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ImmutableSet;
-import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 
 import de.uma.dws.graphsm.ConfFactory;
@@ -16,7 +16,9 @@ import de.uma.dws.graphsm.datamodel.Snippet;
 import de.uma.dws.graphsm.datamodel.Triple;
 import de.uma.dws.graphsm.tripleweighter.TripleWeighter;
 import de.uma.dws.graphsm.webservice.Annotator;
+import de.uma.dws.graphsm.webservice.CachingAnnotator;
 import de.uma.dws.graphsm.webservice.DBPediaEdgeSelector;
+import de.uma.dws.graphsm.webservice.DBPediaExpander;
 import de.uma.dws.graphsm.webservice.DBPediaFilter;
 import de.uma.dws.graphsm.webservice.DBPediaSpotlight;
 
@@ -41,7 +43,7 @@ public class DBPediaDocCollectionGraphBuilder {
 	public DBPediaDocCollectionGraphBuilder(Neo4jRdfGraph graph) {
 		this.graph 			= graph;
 		this.filter 		= new DBPediaFilter();
-		this.annotator 	= new DBPediaSpotlight();
+		this.annotator 	= CachingAnnotator.wrap(new DBPediaSpotlight());
 	}
 	
 	
@@ -49,7 +51,7 @@ public class DBPediaDocCollectionGraphBuilder {
 		this.graph 				= graph;
 		this.filter 			= new DBPediaFilter();
 		this.tripleWeighter 	= tripleWeighter;
-		this.annotator 		= annotator;
+		this.annotator 		= CachingAnnotator.wrap(annotator);
 	}
 
 
@@ -69,66 +71,33 @@ public class DBPediaDocCollectionGraphBuilder {
 			queryNum = s.getQueryId();
 		}
 		
-		//Filter already fetched URIs for duplicates and filter lists
-		HashSet<String> currentUris = new HashSet<>();
-		currentUris.addAll(sourceNodeUris);
+		//Fetch hops concurrently, triples are written in bulk as they arrive
+		log.info("Exanding DBPedia source nodes from endpoint {}: {} hops, using {}",
+					conf.getString("dbpedia.sparql.url"), hopsLimit, selector);
+		String snippetId = "snippetId" + docNum;
+		String queryId = "queryId" + queryNum;
+		final HashMap<String, Object> subjectProperties = new HashMap<String, Object>();
+		subjectProperties.put(snippetId, 1);
+		final HashMap<String, Object> objectProperties = new HashMap<String, Object>();
+		objectProperties.put(queryId, 1);
+		final HashMap<String, Object> edgeProperties = new HashMap<String, Object>();
+		edgeProperties.put(snippetId, 1);
+		edgeProperties.put(queryId, 1);
+		
+		final Neo4jBulkWriter writer = new Neo4jBulkWriter(graph);
+		if (tripleWeighter != null)
+			writer.setEdgeWeight("weight", tripleWeighter);
+		
+		int tripleCnt = new DBPediaExpander(selector, filter).expand(sourceNodeUris, hopsLimit,
+					new DBPediaExpander.TripleHandler() {
+						@Override
+						public void add(Collection<Triple> triples) {
+							writer.add(triples, subjectProperties, objectProperties, edgeProperties);
+						}
+					});
+		writer.flush();
+		log.info("Expansion added {} triple: {}", tripleCnt, writer.getStats());
 		
-		currentUris = filter.defaultCategoriesFilter(currentUris);
-		currentUris = filter.defaultPredicateFilter(currentUris);
-		
-		HashSet<Triple> newTriple = new HashSet<Triple>();
-		
-		for (int i = 1; i <= hopsLimit; i++) {
-			log.info("Exanding DBPedia source nodes from endpoint {}: hop {} of {}, using {}",
-						conf.getString("dbpedia.sparql.url"), i, hopsLimit, selector);
-			ArrayList<Triple> fetchedTriple = new ArrayList<Triple>();
-			for (String uri: currentUris) {
-				fetchedTriple.addAll(selector.get(uri));
-			}
-			
-			//Filter fetched triple
-			fetchedTriple =  filter.defaultCategoriesFilter(fetchedTriple);
-			fetchedTriple =  filter.defaultPredicateFilter(fetchedTriple);
-			
-			//Add all sub and obj of fetched triples to to-fetch-list (currentUris)
-			currentUris.clear();
-			for (Triple t: fetchedTriple) {
-				currentUris.add(t.getSub());
-				currentUris.add(t.getObj());
-			}
-			log.info("Expansion hop {} extracted {} triple", i, fetchedTriple.size());
-			newTriple.addAll(fetchedTriple);
-		}
-		
-		//Filter newly fetch triples
-		//TODO Make Filter selection modular EdgeSelector
-		ArrayList<Triple> triple = null;
-		triple = filter.defaultCategoriesFilter(newTriple);
-		triple = filter.defaultPredicateFilter(triple);
-		
-		//Add all triple to graph database
-		for (Triple t : ImmutableSet.copyOf(triple)) {
-			
-			//Add vertices (sub, obj)
-			Vertex v = graph.addOrGetVertex("uri", t.getSub());
-			Vertex o = graph.addOrGetVertex("uri", t.getObj());
-			
-			//Add subgraph infos (query and snippet)
-			String snippetId = "snippetId" + docNum;
-			String queryId = "queryId" + queryNum; 
-			v.setProperty(snippetId, 1);
-			o.setProperty(queryId, 1);
-			v.setProperty(snippetId, 1);
-			o.setProperty(queryId, 1);
-			
-			//Add edge (pred)
-			Edge e = graph.addOrGetEdge(v, o, t.getPred());
-			if (tripleWeighter != null && e.getProperty("weight") == null)
-				e.setProperty("weight", tripleWeighter.compute(t));
-			e.setProperty(snippetId, 1);
-			e.setProperty(queryId, 1);
-
-		}
 		graph.commit();
 		return this;
 	}
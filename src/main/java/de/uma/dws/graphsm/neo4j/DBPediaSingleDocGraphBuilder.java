@@ -1,20 +1,20 @@
 package de.uma.dws.graphsm.neo4j;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ImmutableSet;
-import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 
 import de.uma.dws.graphsm.datamodel.Snippet;
 import de.uma.dws.graphsm.datamodel.Triple;
 import de.uma.dws.graphsm.tripleweighter.TripleWeighter;
 import de.uma.dws.graphsm.webservice.Annotator;
+import de.uma.dws.graphsm.webservice.CachingAnnotator;
 import de.uma.dws.graphsm.webservice.DBPediaEdgeSelector;
+import de.uma.dws.graphsm.webservice.DBPediaExpander;
 import de.uma.dws.graphsm.webservice.DBPediaFilter;
 import de.uma.dws.graphsm.webservice.DBPediaSpotlight;
 
@@ -34,14 +34,14 @@ public class DBPediaSingleDocGraphBuilder {
 	
 	public DBPediaSingleDocGraphBuilder(Neo4jRdfGraph graph) {
 		this.graph 				= graph;
-		this.annotator 		= new DBPediaSpotlight();
+		this.annotator 		= CachingAnnotator.wrap(new DBPediaSpotlight());
 		this.filter 			= new DBPediaFilter();
 	}
 	
 	public DBPediaSingleDocGraphBuilder(Neo4jRdfGraph graph, TripleWeighter tripleWeighter, Annotator annotator) {
 		this.graph 				= graph;
 		this.tripleWeighter 	= tripleWeighter;
-		this.annotator 		= annotator;
+		this.annotator 		= CachingAnnotator.wrap(annotator);
 		this.filter 			= new DBPediaFilter();
 	}
 	
@@ -62,67 +62,22 @@ public class DBPediaSingleDocGraphBuilder {
 			queryNum = s.getQueryId();
 		}
 		
-		//Filter already fetched URIs for duplicates and filter lists
-		HashSet<String> currentUris = new HashSet<>();
-		currentUris.addAll(sourceNodeUris);
+		//Fetch hops concurrently, triples are written in bulk as they arrive
+		log.info("Exanding DBPedia source nodes: {} hops, using {}", hopsLimit, selector);
+		final Neo4jBulkWriter writer = new Neo4jBulkWriter(graph).setNewNodeProperty("sourceNode", 0);
+		if (tripleWeighter != null)
+			writer.setEdgeWeight("weight", tripleWeighter);
 		
-		currentUris = filter.defaultCategoriesFilter(currentUris);
-		currentUris = filter.defaultPredicateFilter(currentUris);
+		int tripleCnt = new DBPediaExpander(selector, filter).expand(sourceNodeUris, hopsLimit,
+					new DBPediaExpander.TripleHandler() {
+						@Override
+						public void add(Collection<Triple> triples) {
+							writer.add(triples);
+						}
+					});
+		writer.flush();
+		log.info("Expansion added {} triple: {}", tripleCnt, writer.getStats());
 		
-		HashSet<Triple> newTriple = new HashSet<Triple>();
-		
-		for (int i = 1; i <= hopsLimit; i++) {
-			log.info("Exanding DBPedia source nodes: hop {} of {}, using {}", i, hopsLimit, selector);
-			ArrayList<Triple> fetchedTriple = new ArrayList<Triple>();
-			for (String uri: currentUris) {
-				fetchedTriple.addAll(selector.get(uri));
-			}
-			
-			//Filter fetched triple
-			fetchedTriple =  filter.defaultCategoriesFilter(fetchedTriple);
-			fetchedTriple =  filter.defaultPredicateFilter(fetchedTriple);
-			
-			//Add all sub and obj of fetched triples to to-fetch-list (currentUris)
-			currentUris.clear();
-			for (Triple t: fetchedTriple) {
-				currentUris.add(t.getSub());
-				currentUris.add(t.getObj());
-			}
-			log.info("Expansion hop {} extracted {} triple", i, fetchedTriple.size());
-			newTriple.addAll(fetchedTriple);
-		}
-		
-		//Filter newly fetch triples
-		//TODO Make Filter selection modular EdgeSelector
-		ArrayList<Triple> triple = null;
-		
-		triple = filter.defaultCategoriesFilter(newTriple);
-		triple = filter.defaultPredicateFilter(triple);
-		
-		//Add all triple to graph database
-		for (Triple t : ImmutableSet.copyOf(triple)) {
-			
-			//Add vertices (sub, obj)
-			Vertex v = graph.addOrGetVertex("uri", t.getSub());
-			if (v.getProperty("sourceNode") == null)
-				v.setProperty("sourceNode", 0);
-			Vertex o = graph.addOrGetVertex("uri", t.getObj());
-			if (o.getProperty("sourceNode") == null)
-				o.setProperty("sourceNode", 0);
-			
-			//Add subgraph infos (query and snippet)
-//			v.setProperty("snippetId", docNum);
-//			v.setProperty("snippetId",docNum);
-			
-			//Add edge (pred)
-			Edge e = graph.addOrGetEdge(v, o, t.getPred());
-			
-			//Add edge weight
-			if (tripleWeighter != null && e.getProperty("weight") == null)
-				e.setProperty("weight", tripleWeighter.compute(t));
-//			e.setProperty("snippetId", docNum);
-
-		}
 		graph.commit();
 		return this;
 	}
@@ -195,7 +150,7 @@ public class DBPediaSingleDocGraphBuilder {
 	
 	public <T extends Annotator> DBPediaSingleDocGraphBuilder setAnnotator(T annotator) {
 		log.info("Annotator activated: {}", annotator);
-		this.annotator = annotator;
+		this.annotator = CachingAnnotator.wrap(annotator);
 		return this;	
 	}
 
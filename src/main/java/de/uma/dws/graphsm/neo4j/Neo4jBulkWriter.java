@@ -0,0 +1,336 @@
+package de.uma.dws.graphsm.neo4j;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.datamodel.Triple;
+import de.uma.dws.graphsm.tools.Alphabet;
+import de.uma.dws.graphsm.tripleweighter.BatchTripleWeighter;
+import de.uma.dws.graphsm.tripleweighter.TripleWeighter;
+
+/**
+ * Bulk ingestion of triples into a {@link Neo4jRdfGraph}, used by the graph builders instead of one
+ * addOrGetVertex/addOrGetEdge per triple. Node URIs and edge labels are interned in memory, so each node is looked up
+ * in the uri index at most once and a duplicate edge is found by a hash lookup instead of a scan of the node's edges.
+ * The triples of one {@link #add} call are deduplicated first and the weights of their new edges are computed in one
+ * batch. Nodes and relationships are then created with all their properties, in transactions of at most
+ * neo4j.tx.chunk.size operations so memory stays bounded on large graphs. While edges are weighted, the weighting
+ * of the property (see {@link Neo4jGraphUtils#getEdgeWeighting(Neo4jRdfGraph, String)}) is marked invalid, it is only
+ * set to the weighter once {@link #flush()} committed all edges. A writer is not thread-safe, use one per graph and
+ * thread.
+ */
+public class Neo4jBulkWriter {
+
+	final static Logger	                       log	             = LoggerFactory.getLogger(Neo4jBulkWriter.class);
+	final static Configuration	               conf	            = ConfFactory.getConf();
+
+	final static long	                         NO_ENTRY	        = -1;
+	final static long	                         PENDING	         = -2;
+
+	final Neo4jRdfGraph	                       graph;
+	final GraphDatabaseService	               db;
+	final int	                                 chunkSize;
+
+	private final LinkedHashMap<String, TripleWeighter>	weighters	    = new LinkedHashMap<String, TripleWeighter>();
+	private final HashMap<String, Object>	     newNodeProperties	= new HashMap<String, Object>();
+
+	private final TObjectLongHashMap<String>	   nodeIds	         = new TObjectLongHashMap<String>(1024, 0.5f,
+	                                                                 NO_ENTRY);
+	private final HashMap<String, Integer>	      predIds	         = new HashMap<String, Integer>();
+	private final Alphabet<String>	              edgeLabels	      = new Alphabet<String>();
+	private final ArrayList<RelationshipType>	   relTypes	        = new ArrayList<RelationshipType>();
+	// Per edge label id: (start node id << 32 | end node id) -> relationship id
+	private final ArrayList<TLongLongHashMap>	   edgeIds	         = new ArrayList<TLongLongHashMap>();
+
+	private Transaction	                        tx	              = null;
+	private int	                                txOps	           = 0;
+	private boolean	                            weightingsComplete	= true;
+
+	long	                                       nodesCreated	    = 0;
+	long	                                       edgesCreated	    = 0;
+	long	                                       duplicates	      = 0;
+	long	                                       commits	         = 0;
+
+	/**
+	 * Writer with neo4j.tx.chunk.size operations per transaction
+	 */
+	public Neo4jBulkWriter(Neo4jRdfGraph graph) {
+		this(graph, conf.getInt("neo4j.tx.chunk.size", 10000));
+	}
+
+	public Neo4jBulkWriter(Neo4jRdfGraph graph, int chunkSize) {
+		this.graph = graph;
+		this.db = graph.getRawGraph();
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/**
+	 * Sets the property propertyLabel of each new edge, and of each existing edge without it, to the weight of its
+	 * triple. Its weighting is marked invalid until the next {@link #flush()}.
+	 */
+	public Neo4jBulkWriter setEdgeWeight(String propertyLabel, TripleWeighter tripleWeighter) {
+		weighters.put(propertyLabel, tripleWeighter);
+		markWeightings(false);
+		return this;
+	}
+
+	/**
+	 * Sets the property on each node created by this writer, e.g. sourceNode = 0
+	 */
+	public Neo4jBulkWriter setNewNodeProperty(String key, Object value) {
+		newNodeProperties.put(key, value);
+		return this;
+	}
+
+	public int add(Collection<Triple> triples) {
+		Map<String, Object> none = Collections.emptyMap();
+		return add(triples, none, none, none);
+	}
+
+	/**
+	 * Adds the triples not in the graph yet. The properties are set on the subject nodes, object nodes and edges of all
+	 * triples, including existing ones.
+	 *
+	 * @return Number of created edges
+	 */
+	public int add(Collection<Triple> triples, Map<String, Object> subjectProperties,
+	         Map<String, Object> objectProperties, Map<String, Object> edgeProperties) {
+
+		if (weightingsComplete && !weighters.isEmpty())
+			markWeightings(false);
+
+		TLongHashSet subjects = new TLongHashSet();
+		TLongHashSet objects = new TLongHashSet();
+		TLongHashSet existingEdges = new TLongHashSet();
+
+		ArrayList<Triple> newTriples = new ArrayList<Triple>();
+		ArrayList<long[]> newEdges = new ArrayList<long[]>();
+		ArrayList<Triple> unweightedTriples = new ArrayList<Triple>();
+		ArrayList<Long> unweightedEdges = new ArrayList<Long>();
+
+		// Intern and deduplicate, creates the missing nodes
+		for (Triple t : triples) {
+			long sub = nodeId(t.getSub());
+			long obj = nodeId(t.getObj());
+			int pred = predId(t.getPred());
+
+			if (subjects.add(sub))
+				setProperties(db.getNodeById(sub), subjectProperties);
+			if (objects.add(obj))
+				setProperties(db.getNodeById(obj), objectProperties);
+
+			long key = edgeKey(sub, obj);
+			long rel = edgeIds.get(pred).get(key);
+			if (rel == NO_ENTRY) {
+				edgeIds.get(pred).put(key, PENDING);
+				newTriples.add(t);
+				newEdges.add(new long[] { sub, obj, pred, key });
+			}
+			else if (rel == PENDING || !existingEdges.add(rel)) {
+				duplicates++;
+			}
+			else {
+				Relationship r = db.getRelationshipById(rel);
+				setProperties(r, edgeProperties);
+				for (String propertyLabel : weighters.keySet()) {
+					if (!r.hasProperty(propertyLabel)) {
+						unweightedTriples.add(t);
+						unweightedEdges.add(rel);
+						break;
+					}
+				}
+			}
+		}
+
+		// Create the new edges with all properties set
+		HashMap<String, double[]> weights = computeWeights(newTriples);
+		for (int i = 0; i < newEdges.size(); i++) {
+			long[] e = newEdges.get(i);
+			ensureTx();
+			Relationship r = db.getNodeById(e[0]).createRelationshipTo(db.getNodeById(e[1]), relTypes.get((int) e[2]));
+			for (Map.Entry<String, double[]> w : weights.entrySet())
+				r.setProperty(w.getKey(), w.getValue()[i]);
+			setProperties(r, edgeProperties);
+			edgeIds.get((int) e[2]).put(e[3], r.getId());
+			edgesCreated++;
+			op();
+		}
+
+		weights = computeWeights(unweightedTriples);
+		for (int i = 0; i < unweightedEdges.size(); i++) {
+			ensureTx();
+			Relationship r = db.getRelationshipById(unweightedEdges.get(i));
+			for (Map.Entry<String, double[]> w : weights.entrySet())
+				if (!r.hasProperty(w.getKey()))
+					r.setProperty(w.getKey(), w.getValue()[i]);
+			op();
+		}
+
+		return newEdges.size();
+	}
+
+	/**
+	 * Adds the nodes of the URIs not in the graph yet and sets the properties on all of them
+	 */
+	public void addNodes(Collection<String> uris, Map<String, Object> properties) {
+		for (String uri : uris)
+			setProperties(db.getNodeById(nodeId(uri)), properties);
+	}
+
+	/**
+	 * Commits the open transaction, then records the weightings of the edge properties as complete
+	 */
+	public void flush() {
+		commit();
+		if (!weightingsComplete && !weighters.isEmpty())
+			markWeightings(true);
+	}
+
+	/**
+	 * Records the weighting of each weighted edge property, or marks it invalid, in a transaction of its own
+	 */
+	private void markWeightings(boolean complete) {
+		commit();
+		ensureTx();
+		for (Map.Entry<String, TripleWeighter> w : weighters.entrySet())
+			Neo4jGraphUtils.setEdgeWeighting(db, w.getKey(), complete ? w.getValue().toString()
+			         : "invalid (partially updated with " + w.getValue() + ")");
+		commit();
+		weightingsComplete = complete;
+	}
+
+	private void commit() {
+		if (tx != null) {
+			tx.success();
+			tx.finish();
+			tx = null;
+			txOps = 0;
+			commits++;
+		}
+	}
+
+	public String getStats() {
+		return String.format("nodes=%d edges=%d duplicates=%d commits=%d", nodesCreated, edgesCreated, duplicates,
+		         commits);
+	}
+
+	/**
+	 * @return Id of the node of uri, found in the uri index or created
+	 */
+	private long nodeId(String uri) {
+
+		long id = nodeIds.get(uri);
+		if (id != NO_ENTRY)
+			return id;
+
+		ensureTx();
+		Node n = db.index().getNodeAutoIndexer().getAutoIndex().get("uri", uri).getSingle();
+		if (n == null) {
+			n = db.createNode();
+			n.setProperty("uri", uri);
+			n.setProperty("label", Neo4jRdfGraph.toLabel(uri));
+			for (Map.Entry<String, Object> p : newNodeProperties.entrySet())
+				n.setProperty(p.getKey(), p.getValue());
+			nodeIds.put(uri, n.getId());
+			nodesCreated++;
+			op();
+		}
+		else {
+			// Node of an earlier run, its edges have to be known for deduplication
+			nodeIds.put(uri, n.getId());
+			for (Relationship r : n.getRelationships(Direction.OUTGOING)) {
+				int label = edgeLabelId(r.getType().name());
+				edgeIds.get(label).put(edgeKey(n.getId(), r.getEndNode().getId()), r.getId());
+			}
+		}
+		return n.getId();
+	}
+
+	private int predId(String pred) {
+		Integer id = predIds.get(pred);
+		if (id == null) {
+			id = edgeLabelId(Neo4jRdfGraph.toLabel(pred));
+			predIds.put(pred, id);
+		}
+		return id;
+	}
+
+	private int edgeLabelId(String label) {
+		int id = edgeLabels.lookupIndex(label);
+		if (id == edgeIds.size()) {
+			edgeIds.add(new TLongLongHashMap(64, 0.5f, NO_ENTRY, NO_ENTRY));
+			relTypes.add(DynamicRelationshipType.withName(label));
+		}
+		return id;
+	}
+
+	private static long edgeKey(long startNode, long endNode) {
+		if (startNode >>> 32 != 0 || endNode >>> 32 != 0)
+			throw new IllegalStateException("Node ids above 2^32 are not supported: " + startNode + ", " + endNode);
+		return (startNode << 32) | endNode;
+	}
+
+	private HashMap<String, double[]> computeWeights(List<Triple> triples) {
+		HashMap<String, double[]> weights = new HashMap<String, double[]>();
+		if (triples.isEmpty())
+			return weights;
+		for (Map.Entry<String, TripleWeighter> w : weighters.entrySet()) {
+			if (w.getValue() instanceof BatchTripleWeighter) {
+				weights.put(w.getKey(), ((BatchTripleWeighter) w.getValue()).computeAll(triples));
+			}
+			else {
+				double[] values = new double[triples.size()];
+				for (int i = 0; i < values.length; i++)
+					values[i] = w.getValue().compute(triples.get(i));
+				weights.put(w.getKey(), values);
+			}
+		}
+		return weights;
+	}
+
+	private void setProperties(PropertyContainer element, Map<String, Object> properties) {
+		if (properties.isEmpty())
+			return;
+		ensureTx();
+		for (Map.Entry<String, Object> p : properties.entrySet())
+			element.setProperty(p.getKey(), p.getValue());
+		op();
+	}
+
+	private void ensureTx() {
+		if (tx == null)
+			tx = db.beginTx();
+	}
+
+	/**
+	 * Counts one write operation and commits the transaction once it holds chunkSize operations
+	 */
+	private void op() {
+		ensureTx();
+		if (++txOps >= chunkSize)
+			commit();
+	}
+
+}
@@ -1,13 +1,25 @@
 package de.uma.dws.graphsm.neo4j;
 
+import gnu.trove.set.hash.TLongHashSet;
+
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.configuration.Configuration;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.tooling.GlobalGraphOperations;
@@ -21,14 +33,20 @@ import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.io.graphml.GraphMLTokens;
 import com.tinkerpop.blueprints.util.io.graphml.GraphMLWriter;
 
+import de.uma.dws.graphsm.ConfFactory;
 import de.uma.dws.graphsm.datamodel.Snippet;
 import de.uma.dws.graphsm.datamodel.Triple;
+import de.uma.dws.graphsm.neo4j.compare.PathCache;
+import de.uma.dws.graphsm.tripleweighter.BatchTripleWeighter;
 import de.uma.dws.graphsm.tripleweighter.TripleWeighter;
 import de.uni_mannheim.informatik.dws.dwslib.Counter;
 
 public class Neo4jGraphUtils {
 
 	final static Logger	log	= LoggerFactory.getLogger(Neo4jGraphUtils.class);
+	final static Configuration	conf	= ConfFactory.getConf();
+
+	final static int	WEIGHT_BATCH_SIZE	= 5000;
 
 	@SuppressWarnings("unchecked")
 	public static <E> HashSet<E> addOrUpdateHashSetProperty(Element e, String key, E value) {
@@ -78,7 +96,16 @@ public class Neo4jGraphUtils {
 		return set;
 	}
 
-	public static void removeDeadEndNodes(Neo4jRdfGraph graph, boolean keepAllSourceNodes) {
+	/**
+	 * Deletes all nodes connected to less than two other nodes, repeatedly until none is left (the 2-core around the
+	 * source nodes). Candidates are peeled from a queue: a deleted node's neighbour is checked again right away, so whole
+	 * dead-end chains go in O(V+E). Deletions are committed every neo4j.tx.chunk.size nodes.
+	 * 
+	 * @param keepAllSourceNodes
+	 *           Never delete nodes with sourceNode = 1
+	 * @return Number of deleted nodes
+	 */
+	public static int removeDeadEndNodes(Neo4jRdfGraph graph, boolean keepAllSourceNodes) {
 
 		StringBuffer unconnectedNodes = new StringBuffer();
 		StringBuffer deadEndNodes = new StringBuffer();
@@ -86,76 +113,194 @@ public class Neo4jGraphUtils {
 		int nodeCnt = 0;
 		int unconnectedNodesCnt = 0;
 		int deadEndNodesCnt = 0;
+		int cascadedNodesCnt = 0;
 		int sourceNodeCnt = 0;
 
-		Transaction tx = graph.getRawGraph().beginTx();
-		try {
-			Iterator<Node> allNodes = GlobalGraphOperations.at(graph.getRawGraph()).getAllNodes().iterator();
-			while (allNodes.hasNext()) {
-				Node n = allNodes.next();
+		int chunkSize = Math.max(1, conf.getInt("neo4j.tx.chunk.size", 10000));
+		int chunkOps = 0;
+		int committed = 0;
 
-				if (n.getId() == 0l)
-					continue;
+		GraphDatabaseService db = graph.getRawGraph();
+		ArrayDeque<Long> queue = new ArrayDeque<Long>();
+		TLongHashSet queued = new TLongHashSet();
 
-				if (keepAllSourceNodes && n.hasProperty("sourceNode")) {
-					sourceNodeCnt++;
-					continue;
-				}
-				nodeCnt++;
+		// First round: all nodes with less than two neighbours
+		Iterator<Node> allNodes = GlobalGraphOperations.at(db).getAllNodes().iterator();
+		while (allNodes.hasNext()) {
+			Node n = allNodes.next();
+
+			if (n.getId() == 0l)
+				continue;
+
+			if (keepAllSourceNodes && isSourceNode(n)) {
+				sourceNodeCnt++;
+				continue;
+			}
+			nodeCnt++;
 
-				if (!n.hasRelationship()) {
+			if (neighboursOf(n).size() < 2) {
+				queue.add(n.getId());
+				queued.add(n.getId());
+			}
+		}
+		int firstRoundCnt = queue.size();
+
+		Transaction tx = db.beginTx();
+		try {
+			while (!queue.isEmpty()) {
+				Node n = db.getNodeById(queue.poll());
+				ArrayList<Node> neighbours = neighboursOf(n);
+				Node neighbour = neighbours.isEmpty() ? null : neighbours.get(0);
+				boolean firstRound = (firstRoundCnt-- > 0);
+
+				if (neighbour == null) {
 					if (log.isDebugEnabled())
 						unconnectedNodes.append(n.getProperty("label") + "(" + n.getId() + "), ");
 					unconnectedNodesCnt++;
-					n.delete();
 				}
-
 				else {
-					int relCnt = 0;
-					Relationship onlyRel = null;
-					for (Relationship r : n.getRelationships()) {
-						if (relCnt > 1)
-							break;
-						relCnt++;
-						onlyRel = r;
-					}
-
-					if (relCnt == 1) {
-						if (log.isDebugEnabled())
-							deadEndNodes.append(n.getProperty("label") + "(" + n.getId() + "), ");
+					if (log.isDebugEnabled())
+						deadEndNodes.append(n.getProperty("label") + "(" + n.getId() + "), ");
+					if (firstRound)
 						deadEndNodesCnt++;
-						onlyRel.delete();
-						n.delete();
-					}
+					else
+						cascadedNodesCnt++;
+				}
+
+				for (Relationship r : n.getRelationships())
+					r.delete();
+				n.delete();
+
+				// The neighbour may have become a dead end itself
+				if (neighbour != null && !queued.contains(neighbour.getId()) && neighbour.getId() != 0l
+				         && !(keepAllSourceNodes && isSourceNode(neighbour)) && neighboursOf(neighbour).size() < 2) {
+					queue.add(neighbour.getId());
+					queued.add(neighbour.getId());
+				}
+
+				if (++chunkOps >= chunkSize) {
+					tx.success();
+					tx.finish();
+					tx = db.beginTx();
+					committed += chunkOps;
+					chunkOps = 0;
 				}
 			}
 			tx.success();
 		}
-		catch (Exception e) {
-			System.out.println(e);
+		catch (RuntimeException e) {
+			// Earlier chunks are committed, running it again removes the rest
+			log.error("removeDeadEndNodes failed after {} committed deletions, the graph is pruned partially: {}",
+			         committed, e.toString());
+			throw e;
 		}
 		finally {
 			tx.finish();
 		}
-		log.info("removeDeadEndNodes checked {} nodes ({} source nodes skipped): {} unconnected and {} deadend nodes were deleted.",
-		         nodeCnt, sourceNodeCnt, unconnectedNodesCnt, deadEndNodesCnt);
+		log.info("removeDeadEndNodes checked {} nodes ({} source nodes skipped): {} unconnected, {} deadend and {} further deadend nodes uncovered by their removal were deleted.",
+		         nodeCnt, sourceNodeCnt, unconnectedNodesCnt, deadEndNodesCnt, cascadedNodesCnt);
 		log.debug("List of removed unconnected nodes: {}", unconnectedNodes);
 		log.debug("List of removed deadend nodes: {}", deadEndNodes);
+		return unconnectedNodesCnt + deadEndNodesCnt + cascadedNodesCnt;
+	}
+
+	/**
+	 * @return The different nodes n is connected to, at most two. Looping relationships are ignored.
+	 */
+	private static ArrayList<Node> neighboursOf(Node n) {
+		ArrayList<Node> neighbours = new ArrayList<Node>(2);
+		for (Relationship r : n.getRelationships()) {
+			Node other = r.getOtherNode(n);
+			if (other.getId() == n.getId() || (!neighbours.isEmpty() && other.getId() == neighbours.get(0).getId()))
+				continue;
+			neighbours.add(other);
+			if (neighbours.size() == 2)
+				break;
+		}
+		return neighbours;
+	}
+
+	private static boolean isSourceNode(Node n) {
+		Object sourceNode = n.getProperty("sourceNode", null);
+		return sourceNode != null && Double.valueOf(sourceNode.toString()).equals(1d);
 	}
 	
+	/**
+	 * Records the weighting scheme of the edge property propertyLabel on the reference node, so cached path costs can be
+	 * keyed by it
+	 */
+	public static void setEdgeWeighting(Neo4jRdfGraph graph, String propertyLabel, String weighting) {
+		Transaction tx = graph.getRawGraph().beginTx();
+		try {
+			setEdgeWeighting(graph.getRawGraph(), propertyLabel, weighting);
+			tx.success();
+		}
+		finally {
+			tx.finish();
+		}
+	}
+
+	/**
+	 * Same as {@link #setEdgeWeighting(Neo4jRdfGraph, String, String)} within the caller's transaction
+	 */
+	static void setEdgeWeighting(GraphDatabaseService db, String propertyLabel, String weighting) {
+		Node ref = getReferenceNode(db);
+		if (ref != null)
+			ref.setProperty("weighting." + propertyLabel, weighting);
+		else
+			log.warn("Graph without reference node, weighting of {} not recorded", propertyLabel);
+	}
+
+	/**
+	 * @return Weighting scheme of the edge property propertyLabel, "unknown" for graphs weighted before it was recorded
+	 */
+	public static String getEdgeWeighting(Neo4jRdfGraph graph, String propertyLabel) {
+		Node ref = getReferenceNode(graph.getRawGraph());
+		return (ref == null) ? "unknown" : ref.getProperty("weighting." + propertyLabel, "unknown").toString();
+	}
+
+	private static Node getReferenceNode(GraphDatabaseService db) {
+		try {
+			return db.getNodeById(0l);
+		}
+		catch (NotFoundException e) {
+			return null;
+		}
+	}
+
 	public static void updateAllEdgeWeights(Neo4jRdfGraph graph, TripleWeighter tripleWeighter) {
 		updateAllEdgeWeights(graph, tripleWeighter, "weight");
 	}
 	
+	/**
+	 * Sets the weight of each edge, streaming over all edges with flat memory. The calling thread reads the edges in
+	 * chunks of {@link #WEIGHT_BATCH_SIZE}, so a {@link BatchTripleWeighter} needs one count lookup per chunk instead of
+	 * one per edge. The chunks are weighted by neo4j.weights.parallel worker threads (tripleWeighter has to be
+	 * thread-safe then), and the calling thread writes the weights of finished chunks in order, committing every
+	 * neo4j.tx.chunk.size edges. At most two chunks per worker are in flight. The weighting of propertyLabel (see
+	 * {@link #getEdgeWeighting(Neo4jRdfGraph, String)}) is marked invalid until all edges are updated, so if the update
+	 * fails (the exception is rethrown) the chunks committed so far are not mistaken for a complete weighting.
+	 */
 	public static void updateAllEdgeWeights(Neo4jRdfGraph graph, TripleWeighter tripleWeighter, String propertyLabel) {
 
+		int threads = Math.max(1, conf.getInt("neo4j.weights.parallel", conf.getInt("system.parallel.threads", 1)));
+		int chunkSize = Math.max(1, conf.getInt("neo4j.tx.chunk.size", 10000));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<WeightChunk>> inFlight = new ArrayDeque<Future<WeightChunk>>();
+
+		setEdgeWeighting(graph, propertyLabel, "invalid (partially updated with " + tripleWeighter + ")");
+
 		Transaction tx = graph.getRawGraph().beginTx();
 		int cnt = 0;
+		int chunkOps = 0;
+		boolean updated = false;
 
 		try {
 			Iterator<Relationship> allRels = GlobalGraphOperations.at(graph.getRawGraph()).getAllRelationships()
 			         .iterator();
 
+			WeightChunk chunk = new WeightChunk(tripleWeighter);
+
 			while (allRels.hasNext()) {
 				cnt++;
 				Relationship r = allRels.next();
@@ -164,25 +309,95 @@ public class Neo4jGraphUtils {
 				String pred = r.getType().toString();
 				String obj = r.getEndNode().getProperty("label").toString();
 				
-				r.setProperty(propertyLabel, tripleWeighter.compute(new Triple(subj, pred, obj)));				
+				chunk.relIds[chunk.size] = r.getId();
+				chunk.triples.add(new Triple(subj, pred, obj));
+				chunk.size++;
+				
+				if (chunk.size == WEIGHT_BATCH_SIZE) {
+					inFlight.add(pool.submit(chunk));
+					chunk = new WeightChunk(tripleWeighter);
+				}
 				
+				// Back-pressure: write the oldest chunk before reading on
+				while (inFlight.size() > 2 * threads || (!inFlight.isEmpty() && inFlight.peek().isDone())) {
+					chunkOps += setWeights(graph, inFlight.poll().get(), propertyLabel);
+					if (chunkOps >= chunkSize) {
+						tx.success();
+						tx.finish();
+						tx = graph.getRawGraph().beginTx();
+						chunkOps = 0;
+					}
+				}
 			}
+			if (chunk.size > 0)
+				inFlight.add(pool.submit(chunk));
+			while (!inFlight.isEmpty())
+				setWeights(graph, inFlight.poll().get(), propertyLabel);
 
+			setEdgeWeighting(graph.getRawGraph(), propertyLabel, tripleWeighter.toString());
 			tx.success();
-
+			updated = true;
 		}
-		catch (IllegalArgumentException e) {
-			e.printStackTrace();
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while updating edge weights");
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException("Computing edge weights failed", e.getCause());
 		}
 		finally {
+			pool.shutdownNow();
 			tx.finish();
 			graph.commit();
+			// Path costs cached in memory were computed with the old weights
+			PathCache.removeInstance(graph.actualGraphDBDirectory);
+			if (!updated)
+				log.error("Updating {} of graph {} with {} failed, some edges keep their old weights and the weighting is marked invalid",
+				         propertyLabel, graph.actualGraphDBDirectory.getName(), tripleWeighter);
 		}
 		log.info("Weights for graph {} in field {} updated with {} for {} edges", 
 					graph.actualGraphDBDirectory.getName() ,propertyLabel, tripleWeighter, cnt);
 
 	}
 
+	/**
+	 * @return Number of written edges
+	 */
+	private static int setWeights(Neo4jRdfGraph graph, WeightChunk chunk, String propertyLabel) {
+		for (int i = 0; i < chunk.size; i++)
+			graph.getRawGraph().getRelationshipById(chunk.relIds[i]).setProperty(propertyLabel, chunk.weights[i]);
+		return chunk.size;
+	}
+
+	/**
+	 * Edges of one chunk, weighted by a worker thread
+	 */
+	static class WeightChunk implements Callable<WeightChunk> {
+
+		final TripleWeighter	     tripleWeighter;
+		final long[]	             relIds	 = new long[WEIGHT_BATCH_SIZE];
+		final ArrayList<Triple>	 triples	= new ArrayList<Triple>(WEIGHT_BATCH_SIZE);
+		int	                    size	   = 0;
+		double[]	               weights;
+
+		WeightChunk(TripleWeighter tripleWeighter) {
+			this.tripleWeighter = tripleWeighter;
+		}
+
+		@Override
+		public WeightChunk call() {
+			if (tripleWeighter instanceof BatchTripleWeighter) {
+				weights = ((BatchTripleWeighter) tripleWeighter).computeAll(triples);
+			}
+			else {
+				weights = new double[size];
+				for (int i = 0; i < size; i++)
+					weights[i] = tripleWeighter.compute(triples.get(i));
+			}
+			return this;
+		}
+	}
+
 	public static Counter getRelationshipStats(Neo4jRdfGraph graph) {
 		// Iterable<RelationshipType> types = GlobalGraphOperations.at(graph.getRawGraph()).getAllRelationshipTypes();
 		Iterable<Relationship> rels = GlobalGraphOperations.at(graph.getRawGraph()).getAllRelationships();
@@ -22,6 +22,7 @@ import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
 
 import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.neo4j.compare.PathCache;
 import de.uni_mannheim.informatik.dws.dwslib.virtuoso.LodURI;
 
 
@@ -70,7 +71,7 @@ public class Neo4jRdfGraph extends Neo4jGraph {
     	return getInstance(BASE_GRAPH_PATH, readOnly);
     }
     
-    public static Neo4jRdfGraph getInstance(String fullDatabasePath, boolean readOnly) {
+    public static synchronized Neo4jRdfGraph getInstance(String fullDatabasePath, boolean readOnly) {
    	File graphPath = new File(fullDatabasePath);
    	Neo4jRdfGraph singeltonInstance = singeltonInstances.get(graphPath);
     	if (singeltonInstance == null) {
@@ -115,7 +116,10 @@ public class Neo4jRdfGraph extends Neo4jGraph {
 		super.commit();
 		log.info("Neo4j Graph database commited and connection closed: {}", actualGraphDBDirectory.getAbsolutePath());
 		super.shutdown();
-		singeltonInstances.remove(actualGraphDBDirectory);
+		synchronized (Neo4jRdfGraph.class) {
+			singeltonInstances.remove(actualGraphDBDirectory);
+		}
+		PathCache.removeInstance(actualGraphDBDirectory);
 	}
     
     
@@ -154,6 +158,13 @@ public class Neo4jRdfGraph extends Neo4jGraph {
     	return graphDatabaseService;
     }
     
+    /**
+     * @return Prefixed form of uri, as stored in the label property of nodes and as edge label
+     */
+    static String toLabel(String uri) {
+    	return lod.toPrefixedUri(uri);
+    }
+    
     public Vertex addOrGetVertex(String key, String value) {
     	Iterator<Vertex> iter = this.getVertices(key, value).iterator();
     	while(iter.hasNext()) {
@@ -27,6 +27,7 @@ import de.uma.dws.graphsm.mysql.Neo4jPathCacheMySqlConnector;
 import de.uma.dws.graphsm.neo4j.Neo4jGraphUtils;
 import de.uma.dws.graphsm.neo4j.Neo4jRdfGraph;
 import de.uma.dws.graphsm.neo4j.RobustWeightEvaluator;
+import de.uma.dws.graphsm.tools.FilePathCache;
 
 public class DocCompDijkstraHungarian {
 	
@@ -43,6 +44,8 @@ public class DocCompDijkstraHungarian {
 	boolean findAllPath = false;
 	static final Neo4jPathCacheMySqlConnector pathCache = 
 			new Neo4jPathCacheMySqlConnector(conf.getString("mysql.db.neo4jcache.dijkstra.table")); //.getInstance();
+	// Used instead of the mysql cache if pathcache.file is set, keyed by node labels
+	static final FilePathCache fileCache = FilePathCache.getInstance();
 	
 	AtomicLong globalMaxPathCost = null;
 
@@ -92,6 +95,10 @@ public class DocCompDijkstraHungarian {
 		Double pathWeightSum = 0d;
 
 		int cacheCounter = 0;
+		// Cached costs are only valid for the same edge weights and limits
+		String cacheScheme = graph.actualGraphDBDirectory.getName() + "/" + Neo4jGraphUtils.getEdgeWeighting(graph, "weight")
+				+ "/L" + ((maxPathLen >= Integer.MAX_VALUE) ? "inf" : String.valueOf(maxPathLen.intValue())) + "/dijkstra";
+		PathCache memCache = PathCache.getInstance(graph.actualGraphDBDirectory, "weight", cacheScheme);
 		
 		Double[][] distMatrix = new Double[s1nodes.size()][s2nodes.size()];
 		int s1i = -1; //matrix indices
@@ -128,7 +135,15 @@ public class DocCompDijkstraHungarian {
 				Integer pathLen = null; //p.length();
 				Double pathWeight = null; //p.weight()
 
-				Tuple<Integer, Double> path = pathCache.getPath(v1id, v2id, log.isDebugEnabled());
+				Tuple<Integer, Double> path = memCache.get(v1id, v2id);
+
+				if (path == null) {
+					path = (fileCache != null)
+							? fileCache.get(cacheScheme, v1.getProperty("label").toString(), v2.getProperty("label").toString())
+							: pathCache.getPath(v1id, v2id, log.isDebugEnabled());
+					if (path != null)
+						memCache.put(v1id, v2id, path.k, path.v);
+				}
 
 				if (path != null) {
 
@@ -184,8 +199,13 @@ public class DocCompDijkstraHungarian {
 //						log.debug("Path between Node{} and Node{} not found.", v1id, v2id);
 					}
 
+					memCache.put(v1id, v2id, pathLen, pathWeight);
+
 //					Update mysql db cache
-					if (log.isDebugEnabled()) {
+					if (fileCache != null) {
+						fileCache.put(cacheScheme, v1.getProperty("label").toString(), v2.getProperty("label").toString(),
+								pathLen, pathWeight);
+					} else if (log.isDebugEnabled()) {
 						pathCache.setPath(v1id, v2id, pathLen, pathWeight, shorestPathSteps);
 					} else {
 						pathCache.setPath(v1id, v2id, pathLen, pathWeight);
@@ -7,6 +7,8 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.PathExpander;
 import org.neo4j.kernel.Traversal;
 
+import de.uma.dws.graphsm.datamodel.Tuple;
+import de.uma.dws.graphsm.neo4j.Neo4jGraphUtils;
 import de.uma.dws.graphsm.neo4j.Neo4jRdfGraph;
 import de.uma.dws.graphsm.neo4j.SimpleCostEvaluator;
 
@@ -27,16 +29,28 @@ public class NodeCompDijkstra {
 		Node n2 = graph.getRawGraph().getNodeById( 
 					(Long) graph.getVertices("uri", uri2).iterator().next().getId());
 		
-		PathFinder<WeightedPath> dijkstra = GraphAlgoFactory.dijkstra(
-					(PathExpander<?>) Traversal.expanderForAllTypes(),
-					new SimpleCostEvaluator());
+		// Looked up per call, the cache is dropped when the edge weights change
+		PathCache pathCache = PathCache.getInstance(graph.actualGraphDBDirectory, "cost",
+					Neo4jGraphUtils.getEdgeWeighting(graph, "cost") + "/Linf/dijkstra");
+		Tuple<Integer, Double> path = pathCache.get(n1.getId(), n2.getId());
 		
-		WeightedPath cheapestPath = dijkstra.findSinglePath(n1, n2);
+		if (path == null) {
+			PathFinder<WeightedPath> dijkstra = GraphAlgoFactory.dijkstra(
+						(PathExpander<?>) Traversal.expanderForAllTypes(),
+						new SimpleCostEvaluator());
+			
+			WeightedPath cheapestPath = dijkstra.findSinglePath(n1, n2);
+			
+			path = (cheapestPath == null)
+						? new Tuple<Integer, Double>(null, null)
+						: new Tuple<Integer, Double>(cheapestPath.length(), cheapestPath.weight());
+			pathCache.put(n1.getId(), n2.getId(), path.k, path.v);
+		}
 		
-		if (cheapestPath == null)
+		if (path.k == null)
 			return Double.MAX_VALUE + "\t" + Integer.MAX_VALUE;
 		
-		return cheapestPath.weight() + "\t" + cheapestPath.length();
+		return path.v + "\t" + path.k;
 	}
 
 }
@@ -1,54 +1,269 @@
 package de.uma.dws.graphsm.neo4j.compare;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
 
-import org.neo4j.graphalgo.WeightedPath;
-import org.neo4j.graphdb.Node;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.datamodel.Tuple;
+
+/**
+ * Thread-safe, size bounded in-memory cache of cheapest paths between two nodes of one Neo4j graph, stored as length
+ * and cost only. Keys are symmetric: the (min id, max id) pair of the two node ids. The cache is split into lock-striped
+ * shards, each an open addressing hash table on primitive arrays that evicts by the CLOCK (second chance) policy once
+ * it is full. Unreachable pairs are cached as well, as they are the most expensive ones to compute. One instance is kept
+ * per graph, cost property and cache scheme, see {@link #getInstance(File, String, String)}.
+ */
 public class PathCache {
-	
-	private static PathCache instance = null;
-	
-	private static ConcurrentHashMap<Node,ConcurrentHashMap<Node,WeightedPath>> cache = null;
-	
-	private PathCache() {
-		cache = new ConcurrentHashMap<Node,ConcurrentHashMap<Node,WeightedPath>>();
-	}
-	
-	public static PathCache getInstance() {
-		if (instance == null)
-			instance = new PathCache();
-		return instance;
-	}
-	
-	public WeightedPath get(Node n1, Node n2) {
-		
-		if (cache.contains(n1)) {
-			return cache.get(n1).get(n2);
-		} else {
-			if (cache.contains(n2)) {
-				return cache.get(n2).get(n1);
+
+	final static Logger	                     log	        = LoggerFactory.getLogger(PathCache.class);
+	final static Configuration	             conf	       = ConfFactory.getConf();
+
+	final static int	                        SHARDS	     = 16;
+
+	// Per graph directory, the caches by cost property and scheme
+	private static final HashMap<File, HashMap<String, PathCache>>	instances	= new HashMap<File, HashMap<String, PathCache>>();
+
+	final Shard[]	                           shards;
+
+	/**
+	 * @param maxEntries
+	 *           Max. number of cached paths over all shards
+	 */
+	public PathCache(int maxEntries) {
+		if (maxEntries < SHARDS)
+			throw new IllegalArgumentException("Path cache size must be at least " + SHARDS + ": " + maxEntries);
+		shards = new Shard[SHARDS];
+		for (int i = 0; i < SHARDS; i++)
+			shards[i] = new Shard(maxEntries / SHARDS);
+	}
+
+	/**
+	 * @param costProperty
+	 *           Edge property the path costs are computed from
+	 * @param scheme
+	 *           Identifies everything else the costs depend on, e.g. the edge weighting and the max. path length, as the
+	 *           schemes of {@link de.uma.dws.graphsm.tools.FilePathCache}
+	 * @return The cache of the graph stored in graphDirectory with pathcache.memory.size entries, node ids are only
+	 *         unique within one graph
+	 */
+	public static synchronized PathCache getInstance(File graphDirectory, String costProperty, String scheme) {
+		File dir = graphDirectory.getAbsoluteFile();
+		HashMap<String, PathCache> caches = instances.get(dir);
+		if (caches == null) {
+			caches = new HashMap<String, PathCache>();
+			instances.put(dir, caches);
+		}
+		String key = costProperty + "\t" + scheme;
+		PathCache cache = caches.get(key);
+		if (cache == null) {
+			cache = new PathCache(conf.getInt("pathcache.memory.size", 1000000));
+			caches.put(key, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Drops the caches of all cost properties and schemes of the graph stored in graphDirectory, e.g. on shutdown of
+	 * the graph as its node ids may be reused by a rebuilt graph, or after its edge weights changed
+	 */
+	public static synchronized void removeInstance(File graphDirectory) {
+		instances.remove(graphDirectory.getAbsoluteFile());
+	}
+
+	/**
+	 * @return null if the path is not cached, (null, null) if there is no path between the nodes, (length, cost)
+	 *         otherwise
+	 */
+	public Tuple<Integer, Double> get(long nodeId1, long nodeId2) {
+		long lo = Math.min(nodeId1, nodeId2);
+		long hi = Math.max(nodeId1, nodeId2);
+		return shardFor(lo, hi).get(lo, hi);
+	}
+
+	/**
+	 * Caches the path between both nodes in both directions, pathLen and pathCost are null if there is no path
+	 */
+	public void put(long nodeId1, long nodeId2, Integer pathLen, Double pathCost) {
+		long lo = Math.min(nodeId1, nodeId2);
+		long hi = Math.max(nodeId1, nodeId2);
+		shardFor(lo, hi).put(lo, hi, (pathLen == null) ? Shard.NO_PATH : pathLen,
+		         (pathCost == null) ? Double.NaN : pathCost);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Shard shard : shards)
+			size += shard.size();
+		return size;
+	}
+
+	/**
+	 * @return Cache metrics, e.g. for logging after a run
+	 */
+	public String getStats() {
+		long hits = 0;
+		long misses = 0;
+		long evictions = 0;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				hits += shard.hits;
+				misses += shard.misses;
+				evictions += shard.evictions;
 			}
-			return null;
-		}
-	}
-	
-	public void put(Node n1, Node n2, WeightedPath path) {
-		
-		if (path == null)
-			return;
-		
-		ConcurrentHashMap<Node, WeightedPath> map1 = cache.get(n1);
-		ConcurrentHashMap<Node, WeightedPath> map2 = null;
-		
-		if (map1 == null) {
-			map2 = new ConcurrentHashMap<Node, WeightedPath>();
-			map2.put(n2, path);
-			cache.put(n1, map2);
-		} 
-		else {
-			map1.put(n2, path);
+		}
+		long requests = hits + misses;
+		return String.format("hits=%d misses=%d hitRate=%.4f evictions=%d size=%d", hits, misses,
+		         (requests == 0) ? 0d : hits / (double) requests, evictions, size());
+	}
+
+	static long mix(long lo, long hi) {
+		long h = (lo * 0x9e3779b97f4a7c15L) ^ (hi * 0xc2b2ae3d27d4eb4fL);
+		return h ^ (h >>> 31);
+	}
+
+	private Shard shardFor(long lo, long hi) {
+		return shards[(int) (mix(lo, hi) >>> 60) & (SHARDS - 1)];
+	}
+
+	/**
+	 * Linear probing hash table of at most maxEntries paths with a load factor of 0.5 at most. Slot i holds the key
+	 * (lo[i], hi[i]) and the value (len[i], cost[i]), len[i] is EMPTY for free slots.
+	 */
+	static class Shard {
+
+		final static int	EMPTY	 = -2;
+		final static int	NO_PATH	= -1;
+
+		final int	     maxEntries;
+		final int	     mask;
+		final long[]	  lo;
+		final long[]	  hi;
+		final int[]	   len;
+		final double[]	cost;
+		final boolean[]	referenced;
+
+		int	           size	     = 0;
+		int	           hand	     = 0;
+		long	          hits	     = 0;
+		long	          misses	   = 0;
+		long	          evictions	= 0;
+
+		Shard(int maxEntries) {
+			this.maxEntries = maxEntries;
+			int capacity = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) << 1;
+			mask = capacity - 1;
+			lo = new long[capacity];
+			hi = new long[capacity];
+			len = new int[capacity];
+			cost = new double[capacity];
+			referenced = new boolean[capacity];
+			Arrays.fill(len, EMPTY);
+		}
+
+		synchronized Tuple<Integer, Double> get(long l, long h) {
+			int i = find(l, h);
+			if (len[i] == EMPTY) {
+				misses++;
+				return null;
+			}
+			hits++;
+			referenced[i] = true;
+			if (len[i] == NO_PATH)
+				return new Tuple<Integer, Double>(null, null);
+			return new Tuple<Integer, Double>(len[i], cost[i]);
+		}
+
+		synchronized void put(long l, long h, int pathLen, double pathCost) {
+			int i = find(l, h);
+			if (len[i] == EMPTY) {
+				if (size >= maxEntries) {
+					evict();
+					i = find(l, h);
+				}
+				lo[i] = l;
+				hi[i] = h;
+				size++;
+			}
+			len[i] = pathLen;
+			cost[i] = pathCost;
+			referenced[i] = false;
+		}
+
+		synchronized int size() {
+			return size;
+		}
+
+		/**
+		 * @return Slot of the key or the free slot where it would be inserted
+		 */
+		private int find(long l, long h) {
+			int i = (int) mix(l, h) & mask;
+			while (len[i] != EMPTY && (lo[i] != l || hi[i] != h))
+				i = (i + 1) & mask;
+			return i;
+		}
+
+		/**
+		 * Advances the clock hand to the next unreferenced entry, clearing the reference bits on its way, and removes it
+		 */
+		private void evict() {
+			while (true) {
+				if (len[hand] != EMPTY) {
+					if (!referenced[hand])
+						break;
+					referenced[hand] = false;
+				}
+				hand = (hand + 1) & mask;
 			}
+			remove(hand);
+			evictions++;
 		}
 
+		/**
+		 * Removes slot i and shifts following entries of the same probe sequence back, so no tombstones are needed
+		 */
+		private void remove(int i) {
+			len[i] = EMPTY;
+			size--;
+			int j = i;
+			while (true) {
+				j = (j + 1) & mask;
+				if (len[j] == EMPTY)
+					return;
+				int home = (int) mix(lo[j], hi[j]) & mask;
+				// Move j to the gap at i if its home slot is not cyclically within (i, j]
+				if ((j > i) ? (home <= i || home > j) : (home <= i && home > j)) {
+					lo[i] = lo[j];
+					hi[i] = hi[j];
+					len[i] = len[j];
+					cost[i] = cost[j];
+					referenced[i] = referenced[j];
+					len[j] = EMPTY;
+					i = j;
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+
+		PathCache cache = new PathCache(1000);
+
+		cache.put(7, 3, 2, 1.5);
+		cache.put(4, 9, null, null);
+
+		System.out.println(cache.get(3, 7).k + " " + cache.get(3, 7).v);
+		System.out.println(cache.get(9, 4).k + " " + cache.get(9, 4).v);
+		System.out.println(cache.get(1, 2));
+
+		for (int i = 0; i < 100000; i++)
+			cache.put(i, i + 1, 1, 1.0);
+		System.out.println(cache.getStats());
+	}
+
 }
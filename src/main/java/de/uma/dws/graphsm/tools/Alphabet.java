@@ -45,20 +45,20 @@ public class Alphabet<T> implements Serializable
     public void startGrowth() { this.growing = true;}
 
     /** Return the index of a given object. Add the Object to this if not
-     *  present */
+     *  present. The map stores index + 1, as trove returns 0 for missing keys */
     public int lookupIndex (T entry)
     {
         if (entry == null)
         	throw new IllegalArgumentException ("Can't lookup \"null\" in an Alphabet.");
 
         int value = map.get(entry);
-        if (value != 0) return value;
+        if (value != 0) return value - 1;
         else if (growing)
         {
             entries.add(entry);
             value = entries.size();
             map.put(entry, value);
-            return value;
+            return value - 1;
         } else {
             return -1;
         }
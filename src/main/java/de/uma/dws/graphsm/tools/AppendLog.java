@@ -0,0 +1,271 @@
+package de.uma.dws.graphsm.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only file of typed binary records with random access reads, the file layer of {@link FilePathCache} and
+ * {@link de.uma.dws.graphsm.webservice.CachingDBPediaEdgeSelector}. The owner replays the records into its index with
+ * {@link #replay(Replayer)}, optionally rewrites the file with its live records with {@link #compact(Rewriter)}, then
+ * {@link #open()}s it and appends records to {@link #out()}. A record is addressed by its offset in the file, records
+ * still in the write buffer are flushed before they are read.
+ * <p>
+ * The owner has to lock: appending needs its exclusive lock, reading its shared lock at least. Flushing is synchronized
+ * here, so concurrent readers may trigger it.
+ */
+public class AppendLog implements Closeable {
+
+	final static Logger	      log	        = LoggerFactory.getLogger(AppendLog.class);
+
+	final File	              file;
+	final String	            name;
+
+	private RandomAccessFile	raf;
+	private FileChannel	     channel;
+	private Output	          out;
+	private long	            end	        = 0;	// file size, without buffered records once opened
+	private long	            flushedEnd	= 0;
+
+	public interface Replayer {
+
+		/**
+		 * Reads the record at offset, its type byte is read already
+		 *
+		 * @return false to drop the file from this record on, e.g. a header of another version
+		 * @throws IOException
+		 *            if the record is corrupt, EOFException if it is incomplete
+		 */
+		public boolean record(int type, DataInputStream in, long offset) throws IOException;
+	}
+
+	public interface Rewriter {
+
+		/**
+		 * Writes the live records to dst, reading them from the old file with {@link AppendLog#readFully(ByteBuffer, long)}
+		 */
+		public void rewrite(Output dst) throws IOException;
+	}
+
+	/**
+	 * @param name
+	 *           Name of the file in log messages, e.g. "Path cache"
+	 */
+	public AppendLog(File file, String name) {
+		this.file = file;
+		this.name = name;
+	}
+
+	/**
+	 * Reads all records of the file, if it exists, up to the first incomplete one. It is cut off there on
+	 * {@link #open()}.
+	 */
+	public void replay(Replayer replayer) throws IOException {
+
+		end = 0;
+		if (!file.exists())
+			return;
+
+		CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try (DataInputStream in = new DataInputStream(counter)) {
+			while (true) {
+				long offset = counter.count;
+				int type = in.read();
+				if (type < 0)
+					break;
+				try {
+					if (!replayer.record(type, in, offset)) {
+						end = offset;
+						return;
+					}
+				}
+				catch (EOFException e) {
+					log.warn("Incomplete record at the end of {} {} dropped", name, file);
+					break;
+				}
+				end = counter.count;
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the file by rewriter into a temporary file, which then replaces it atomically. Call before {@link #open()}.
+	 */
+	public void compact(Rewriter rewriter) throws IOException {
+
+		File tmp = new File(file.getPath() + ".tmp");
+
+		try (RandomAccessFile src = new RandomAccessFile(file, "r");
+		         Output dst = new Output(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16), 0)) {
+			channel = src.getChannel();
+			rewriter.rewrite(dst);
+			dst.flush();
+			end = dst.position();
+		}
+		finally {
+			channel = null;
+		}
+
+		// The old file stays complete if the move fails
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Opens the file for appending and reading, cut off after the last complete record
+	 */
+	public void open() throws IOException {
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(end);
+		channel = raf.getChannel();
+		out = new Output(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16), end);
+		flushedEnd = end;
+	}
+
+	/**
+	 * @return Stream to append records to, null if the file is not open
+	 */
+	public Output out() {
+		return out;
+	}
+
+	/**
+	 * @return Offset of the next appended record
+	 */
+	public long position() {
+		return (out == null) ? end : out.position();
+	}
+
+	/**
+	 * Reads buf.remaining() bytes at pos and flips buf, flushing first if they are still buffered
+	 */
+	public void readFully(ByteBuffer buf, long pos) throws IOException {
+		if (out != null)
+			flushTo(pos + buf.remaining());
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, pos + buf.position()) < 0)
+				throw new EOFException();
+		}
+		buf.flip();
+	}
+
+	private synchronized void flushTo(long pos) throws IOException {
+		if (pos > flushedEnd)
+			flush();
+	}
+
+	/**
+	 * Writes buffered records to the file
+	 */
+	public synchronized void flush() throws IOException {
+		if (out == null)
+			return; // closed
+		out.flush();
+		flushedEnd = out.position();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out == null)
+			return;
+		end = out.position();
+		out.close();
+		channel.close();
+		raf.close();
+		out = null;
+	}
+
+	/**
+	 * Record stream which knows the offset of the next record
+	 */
+	public static class Output extends DataOutputStream {
+
+		Output(OutputStream out, long start) {
+			super(new CountingOutputStream(out, start));
+		}
+
+		public long position() {
+			return ((CountingOutputStream) out).count;
+		}
+	}
+
+	static class CountingOutputStream extends FilterOutputStream {
+
+		long	count;
+
+		CountingOutputStream(OutputStream out, long start) {
+			super(out);
+			this.count = start;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	static class CountingInputStream extends FilterInputStream {
+
+		long	count	= 0;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package de.uma.dws.graphsm.tools;
+
+import java.util.Arrays;
+
+/**
+ * Minimum cost assignment of rows to columns with shortest augmenting paths and dual potentials (Jonker-Volgenant
+ * style), in O(n^2 m) for n = min(rows, cols) and m = max(rows, cols). Same contract as
+ * {@link de.unima.alcomox.algorithms.HungarianMethod}, but works on one flat cost array and takes rectangular
+ * matrices: each row (or each column, if there are fewer columns than rows) is assigned to exactly one column (row),
+ * so no padding is needed. Costs have to be finite.
+ */
+public class AssignmentSolver {
+
+	private double[]	costs;	    // row major, rows x cols
+	private int	     rows;
+	private int	     cols;
+
+	private int[]	  assignment;	// row -> col, -1 if row is not assigned
+	private double	  minimum;
+	private boolean	 solved	= false;
+
+	public void setInputMatrix(double[][] matrix) {
+		int rows = matrix.length;
+		int cols = (rows == 0) ? 0 : matrix[0].length;
+		double[] flat = new double[rows * cols];
+		for (int i = 0; i < rows; i++)
+			System.arraycopy(matrix[i], 0, flat, i * cols, cols);
+		setInputMatrix(flat, rows, cols);
+	}
+
+	/**
+	 * @param costs
+	 *           Cost matrix in row major order, costs[i * cols + j] is the cost of assigning row i to column j. The array
+	 *           is not modified.
+	 */
+	public void setInputMatrix(double[] costs, int rows, int cols) {
+		if (costs.length != rows * cols)
+			throw new IllegalArgumentException("Cost array of length " + costs.length + " is no " + rows + "x" + cols
+			         + " matrix");
+		this.costs = costs;
+		this.rows = rows;
+		this.cols = cols;
+		this.solved = false;
+	}
+
+	/**
+	 * Returns the aggregated minimum. If the assignment has not been solved yet, it will be solved first.
+	 *
+	 * @return The aggregated minimum (= sum of the costs of all assigned entries).
+	 */
+	public double getMinimum() {
+		if (!this.solved)
+			this.solve();
+		return minimum;
+	}
+
+	/**
+	 * @return Column assigned to each row, -1 for rows left unassigned if rows > cols
+	 */
+	public int[] getAssignment() {
+		if (!this.solved)
+			this.solve();
+		return assignment;
+	}
+
+	public void solve() {
+
+		// The smaller dimension is assigned completely, work on the transposed matrix if needed
+		boolean transposed = rows > cols;
+		int n = transposed ? cols : rows;
+		int m = transposed ? rows : cols;
+
+		assignment = new int[rows];
+		Arrays.fill(assignment, -1);
+		minimum = 0d;
+
+		if (n == 0) {
+			solved = true;
+			return;
+		}
+
+		// 1-based potentials, index 0 is the virtual start column of each augmenting path
+		double[] u = new double[n + 1];
+		double[] v = new double[m + 1];
+		int[] p = new int[m + 1]; // row assigned to column, 0 if free
+		int[] way = new int[m + 1];
+		double[] minv = new double[m + 1];
+		boolean[] used = new boolean[m + 1];
+
+		for (int i = 1; i <= n; i++) {
+
+			p[0] = i;
+			int j0 = 0;
+			Arrays.fill(minv, Double.POSITIVE_INFINITY);
+			Arrays.fill(used, false);
+
+			// Dijkstra like search for the shortest augmenting path from row i in reduced costs
+			do {
+				used[j0] = true;
+				int i0 = p[j0];
+				double delta = Double.POSITIVE_INFINITY;
+				int j1 = 0;
+				int rowOffset = (i0 - 1) * m;
+
+				for (int j = 1; j <= m; j++) {
+					if (used[j])
+						continue;
+					double c = transposed ? costs[(j - 1) * cols + (i0 - 1)] : costs[rowOffset + j - 1];
+					double cur = c - u[i0] - v[j];
+					if (cur < minv[j]) {
+						minv[j] = cur;
+						way[j] = j0;
+					}
+					if (minv[j] < delta) {
+						delta = minv[j];
+						j1 = j;
+					}
+				}
+
+				for (int j = 0; j <= m; j++) {
+					if (used[j]) {
+						u[p[j]] += delta;
+						v[j] -= delta;
+					}
+					else {
+						minv[j] -= delta;
+					}
+				}
+				j0 = j1;
+			}
+			while (p[j0] != 0);
+
+			// Flip the augmenting path
+			do {
+				int j1 = way[j0];
+				p[j0] = p[j1];
+				j0 = j1;
+			}
+			while (j0 != 0);
+		}
+
+		for (int j = 1; j <= m; j++) {
+			if (p[j] == 0)
+				continue;
+			int row = transposed ? j - 1 : p[j] - 1;
+			int col = transposed ? p[j] - 1 : j - 1;
+			assignment[row] = col;
+			minimum += costs[row * cols + col];
+		}
+		solved = true;
+	}
+
+	public static void main(String args[]) {
+
+		double[][] matrix = {
+		         { 2, 3, 1, 5 },
+		         { 2, 2, 1, 5 },
+		         { 4, 3, 1, 7 },
+		};
+
+		AssignmentSolver solver = new AssignmentSolver();
+
+		solver.setInputMatrix(matrix);
+
+		System.out.println(solver.getMinimum() + " " + Arrays.toString(solver.getAssignment()));
+	}
+
+}
@@ -0,0 +1,355 @@
+package de.uma.dws.graphsm.tools;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.datamodel.Tuple;
+
+/**
+ * Embedded, persistent cache of cheapest paths (length, cost) between two node labels, replacing the MySQL cache of
+ * {@link de.uma.dws.graphsm.mysql.Neo4jPathCacheMySqlConnector} whose Neo4j node ids change with each rebuilt
+ * database. Paths are keyed by (scheme, label1, label2), where the scheme names everything the path depends on besides
+ * the labels, e.g. the weighting, the graph and the max. path length. Keys are symmetric.
+ * <p>
+ * All writes are appended to one {@link AppendLog}: label and scheme records intern the strings to int ids, path records hold
+ * the packed key and the value. In memory there is only a primitive map from key to the file offset of the latest
+ * path record. With a size bound the oldest paths are evicted (FIFO) from the map; the log is compacted when it is
+ * opened and holds more dead than live path records. Up to {@link #MAX_SCHEMES} schemes and 2^{@link #LABEL_BITS}
+ * labels fit into the keys, paths of further schemes or labels are not cached. Instances are thread-safe.
+ */
+public class FilePathCache implements Closeable {
+
+	final static Logger	            log	             = LoggerFactory.getLogger(FilePathCache.class);
+	final static Configuration	    conf	            = ConfFactory.getConf();
+
+	final static byte	             LABEL	           = 1;
+	final static byte	             SCHEME	          = 2;
+	final static byte	             PATH	            = 3;
+
+	final static int	              LABEL_BITS	      = 28;
+	final static int	              MAX_SCHEMES	     = 1 << (63 - 2 * LABEL_BITS);	// keys stay positive
+	final static int	              COMPACT_MIN_DEAD	= 100000;
+
+	private static FilePathCache	  instance	        = null;
+
+	final File	                    file;
+	final int	                     maxEntries;
+
+	private final Alphabet<String>	labels	          = new Alphabet<String>();
+	private final Alphabet<String>	schemes	         = new Alphabet<String>();
+	private final TLongLongHashMap	index	           = new TLongLongHashMap(1024, 0.5f, 0, -1);
+
+	// Keys in insertion order for eviction, only used with maxEntries > 0
+	private long[]	                fifo;
+	private int	                   fifoHead	        = 0;
+
+	private final AppendLog	       records;
+	private long	                  pathRecords	     = 0;
+	private boolean	               full	            = false;
+
+	private final ReentrantReadWriteLock	lock	        = new ReentrantReadWriteLock();
+
+	/**
+	 * @param file
+	 *           Log file, created if it does not exist
+	 * @param maxEntries
+	 *           Max. number of cached paths, 0 for no bound
+	 * @throws IOException
+	 *            if the log can not be read or written
+	 */
+	public FilePathCache(File file, int maxEntries) throws IOException {
+
+		this.file = file;
+		this.maxEntries = maxEntries;
+		this.fifo = (maxEntries > 0) ? new long[maxEntries] : null;
+		this.records = new AppendLog(file, "path cache");
+
+		load();
+
+		long dead = pathRecords - index.size();
+		if (dead > index.size() && dead > COMPACT_MIN_DEAD)
+			compact();
+
+		records.open();
+
+		log.info("Path cache {} opened with {} paths, {} labels, {} schemes", file, index.size(), labels.size(),
+		         schemes.size());
+	}
+
+	/**
+	 * @return Shared cache of pathcache.file with at most pathcache.max.entries paths, or null if pathcache.file is
+	 *         not set. It is closed on JVM shutdown.
+	 */
+	public static synchronized FilePathCache getInstance() {
+		if (instance == null && conf.getString("pathcache.file") != null) {
+			try {
+				instance = new FilePathCache(new File(conf.getString("pathcache.file")), conf.getInt(
+				         "pathcache.max.entries", 0));
+			}
+			catch (IOException e) {
+				log.warn("Opening path cache {} failed with {}", conf.getString("pathcache.file"), e.getMessage());
+				throw new RuntimeException(e);
+			}
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						instance.close();
+					}
+					catch (IOException e) {
+						log.warn("Closing path cache failed with {}", e.getMessage());
+					}
+				}
+			});
+		}
+		return instance;
+	}
+
+	/**
+	 * @return (length, cost) of the path, (null, null) if it is known that no path exists or null if the pair is not
+	 *         cached
+	 */
+	public Tuple<Integer, Double> get(String scheme, String label1, String label2) {
+
+		lock.readLock().lock();
+		try {
+			long key = key(scheme, label1, label2, false);
+			if (key < 0)
+				return null;
+			long offset = index.get(key);
+			if (offset < 0)
+				return null;
+			return read(offset);
+		}
+		catch (IOException e) {
+			log.warn("Reading path cache {} failed with {}", file, e.getMessage());
+			return null;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Stores the path, pathLen and pathCost being null if no path exists. pathLen may be null as well if only the cost
+	 * is known.
+	 */
+	public void put(String scheme, String label1, String label2, Integer pathLen, Double pathCost) {
+
+		lock.writeLock().lock();
+		try {
+			DataOutputStream out = records.out();
+			if (out == null)
+				return; // closed
+			long key = key(scheme, label1, label2, true);
+			if (key < 0) {
+				if (!full)
+					log.warn("Path cache {} holds {} schemes and {} labels, paths of further ones are not cached", file,
+					         schemes.size(), labels.size());
+				full = true;
+				return;
+			}
+
+			long offset = records.position();
+			writePath(out, key, pathLen, pathCost);
+			pathRecords++;
+
+			if (index.put(key, offset) < 0 && fifo != null)
+				evictAndAdd(key);
+		}
+		catch (IOException e) {
+			log.warn("Writing path cache {} failed with {}", file, e.getMessage());
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes buffered records to the log file
+	 */
+	public void flush() throws IOException {
+		lock.writeLock().lock();
+		try {
+			records.flush();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (records.out() == null)
+				return;
+			records.close();
+			log.info("Path cache {} closed with {} paths", file, index.size());
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Packs scheme id and the ordered label ids into one long
+	 *
+	 * @return Key or -1 if a string is unknown and add is false, or if adding it exceeds the number of schemes or
+	 *         labels the keys can hold. Strings are only interned if the key fits.
+	 */
+	private long key(String scheme, String label1, String label2, boolean add) throws IOException {
+		if (add) {
+			int newLabels = (labels.contains(label1) ? 0 : 1)
+			         + (labels.contains(label2) || label2.equals(label1) ? 0 : 1);
+			if ((!schemes.contains(scheme) && schemes.size() >= MAX_SCHEMES)
+			         || labels.size() + newLabels > (1 << LABEL_BITS))
+				return -1;
+		}
+		long s = id(schemes, SCHEME, scheme, add);
+		long id1 = id(labels, LABEL, label1, add);
+		long id2 = id(labels, LABEL, label2, add);
+		// Ids out of range were interned by older versions which failed on them
+		if (s < 0 || id1 < 0 || id2 < 0 || s >= MAX_SCHEMES || id1 >= (1 << LABEL_BITS) || id2 >= (1 << LABEL_BITS))
+			return -1;
+		return (s << (2 * LABEL_BITS)) | (Math.min(id1, id2) << LABEL_BITS) | Math.max(id1, id2);
+	}
+
+	private int id(Alphabet<String> alphabet, byte type, String s, boolean add) throws IOException {
+		if (alphabet.contains(s))
+			return alphabet.lookupIndex(s);
+		if (!add)
+			return -1;
+		int id = alphabet.lookupIndex(s);
+		writeString(records.out(), type, id, s);
+		return id;
+	}
+
+	private static void writeString(DataOutputStream out, byte type, int id, String s) throws IOException {
+		out.writeByte(type);
+		out.writeInt(id);
+		out.writeUTF(s);
+	}
+
+	private static void writePath(DataOutputStream out, long key, Integer pathLen, Double pathCost) throws IOException {
+		out.writeByte(PATH);
+		out.writeLong(key);
+		out.writeInt((pathLen == null) ? -1 : pathLen);
+		out.writeDouble((pathCost == null) ? Double.NaN : pathCost);
+	}
+
+	private void evictAndAdd(long key) {
+		if (index.size() > maxEntries) {
+			index.remove(fifo[fifoHead]);
+		}
+		fifo[fifoHead] = key;
+		fifoHead = (fifoHead + 1) % maxEntries;
+	}
+
+	private Tuple<Integer, Double> read(long offset) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(12);
+		records.readFully(buf, offset + 1 + 8);
+		int pathLen = buf.getInt();
+		double pathCost = buf.getDouble();
+		return new Tuple<Integer, Double>((pathLen < 0) ? null : pathLen, Double.isNaN(pathCost) ? null : pathCost);
+	}
+
+	/**
+	 * Replays the log into the label, scheme and path index
+	 */
+	private void load() throws IOException {
+
+		records.replay(new AppendLog.Replayer() {
+			@Override
+			public boolean record(int type, DataInputStream in, long offset) throws IOException {
+				if (type == PATH) {
+					long key = in.readLong();
+					in.readInt();
+					in.readDouble();
+					pathRecords++;
+					if (index.put(key, offset) < 0 && fifo != null)
+						evictAndAdd(key);
+				}
+				else if (type == LABEL || type == SCHEME) {
+					int id = in.readInt();
+					String s = in.readUTF();
+					Alphabet<String> alphabet = (type == LABEL) ? labels : schemes;
+					if (alphabet.lookupIndex(s) != id)
+						throw new IOException("Corrupt path cache " + file + ": id " + id + " of " + s);
+				}
+				else {
+					throw new IOException("Corrupt path cache " + file + ": record type " + type + " at " + offset);
+				}
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Rewrites the log with the interned strings and the live paths only
+	 */
+	private void compact() throws IOException {
+
+		final long[] keys = index.keys();
+		final long[] offsets = new long[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			offsets[i] = index.get(keys[i]);
+
+		records.compact(new AppendLog.Rewriter() {
+			@Override
+			public void rewrite(AppendLog.Output dst) throws IOException {
+				for (int id = 0; id < schemes.size(); id++)
+					writeString(dst, SCHEME, id, schemes.lookupObject(id));
+				for (int id = 0; id < labels.size(); id++)
+					writeString(dst, LABEL, id, labels.lookupObject(id));
+
+				index.clear();
+				for (int i = 0; i < keys.length; i++) {
+					Tuple<Integer, Double> path = read(offsets[i]);
+					index.put(keys[i], dst.position());
+					writePath(dst, keys[i], path.k, path.v);
+				}
+			}
+		});
+
+		log.info("Path cache {} compacted from {} to {} path records", file, pathRecords, keys.length);
+		pathRecords = keys.length;
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		FilePathCache cache = new FilePathCache(new File("output/pathcache.log"), 0);
+
+		cache.put("EqualWeights/L2", "dbpedia:Jimmy_Carter", "dbpedia:Rosalynn_Carter", 1, 1.0);
+		cache.put("EqualWeights/L2", "dbpedia:Jimmy_Carter", "dbpedia:Barack_Obama", null, null);
+
+		System.out.println(cache.get("EqualWeights/L2", "dbpedia:Rosalynn_Carter", "dbpedia:Jimmy_Carter"));
+		System.out.println(cache.get("EqualWeights/L2", "dbpedia:Jimmy_Carter", "dbpedia:Barack_Obama"));
+		System.out.println(cache.get("AddedIC/L2", "dbpedia:Jimmy_Carter", "dbpedia:Rosalynn_Carter"));
+
+		cache.close();
+	}
+
+}
@@ -0,0 +1,106 @@
+package de.uma.dws.graphsm.tools;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min heap over int ids 0..capacity-1 with double keys. Supports decrease key in O(log n) without
+ * boxing, as needed by Dijkstra on int indexed graphs (see {@link de.uma.dws.graphsm.jgrapht.CompactRdfGraph}).
+ */
+public class IntMinHeap {
+
+	private final int[]	   heap;
+	private final int[]	   pos;	// position of id in heap, -1 if not contained
+	private final double[]	keys;
+	private int	         size	= 0;
+
+	public IntMinHeap(int capacity) {
+		this.heap = new int[capacity];
+		this.pos = new int[capacity];
+		this.keys = new double[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int id) {
+		return pos[id] >= 0;
+	}
+
+	public double getKey(int id) {
+		return keys[id];
+	}
+
+	/**
+	 * Inserts id with key or lowers the key of an already contained id. Higher keys for contained ids are ignored.
+	 */
+	public void insertOrDecrease(int id, double key) {
+		if (pos[id] < 0) {
+			keys[id] = key;
+			heap[size] = id;
+			pos[id] = size;
+			size++;
+			siftUp(pos[id]);
+		}
+		else if (key < keys[id]) {
+			keys[id] = key;
+			siftUp(pos[id]);
+		}
+	}
+
+	public double peekKey() {
+		return keys[heap[0]];
+	}
+
+	public int poll() {
+		int min = heap[0];
+		size--;
+		if (size > 0) {
+			heap[0] = heap[size];
+			pos[heap[0]] = 0;
+			siftDown(0);
+		}
+		pos[min] = -1;
+		return min;
+	}
+
+	private void siftUp(int i) {
+		int id = heap[i];
+		double key = keys[id];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[heap[parent]] <= key)
+				break;
+			heap[i] = heap[parent];
+			pos[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = id;
+		pos[id] = i;
+	}
+
+	private void siftDown(int i) {
+		int id = heap[i];
+		double key = keys[id];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size && keys[heap[right]] < keys[heap[child]])
+				child = right;
+			if (key <= keys[heap[child]])
+				break;
+			heap[i] = heap[child];
+			pos[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = id;
+		pos[id] = i;
+	}
+
+}
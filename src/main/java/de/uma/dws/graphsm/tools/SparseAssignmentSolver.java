@@ -0,0 +1,217 @@
+package de.uma.dws.graphsm.tools;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Minimum cost assignment on a sparse cost matrix. Only the finite (row, col, cost) entries are given; every row or
+ * column which is not assigned costs unmatchedPenalty. The result equals {@link AssignmentSolver} on the dense
+ * max(rows, cols) square matrix with all missing entries set to unmatchedPenalty, while time and memory scale with the
+ * number of entries: min cost flow with successive shortest paths (Dijkstra with potentials), which stops as soon as
+ * the cheapest augmenting path does not lower the cost anymore.
+ */
+public class SparseAssignmentSolver {
+
+	private final int	           rows;
+	private final int	           cols;
+	private final double	        unmatchedPenalty;
+
+	private final TIntArrayList	  entryRows	 = new TIntArrayList();
+	private final TIntArrayList	  entryCols	 = new TIntArrayList();
+	private final TDoubleArrayList	entryCosts	= new TDoubleArrayList();
+
+	private int[]	              assignment;	                      // row -> col, -1 if not assigned
+	private double	              minimum;
+	private boolean	             solved	    = false;
+
+	public SparseAssignmentSolver(int rows, int cols, double unmatchedPenalty) {
+		this.rows = rows;
+		this.cols = cols;
+		this.unmatchedPenalty = unmatchedPenalty;
+	}
+
+	/**
+	 * Adds a finite cost entry. Entries with cost >= unmatchedPenalty can never lower the total cost and are ignored.
+	 */
+	public void addEntry(int row, int col, double cost) {
+		if (row < 0 || row >= rows || col < 0 || col >= cols)
+			throw new IllegalArgumentException("Entry (" + row + "," + col + ") outside of " + rows + "x" + cols);
+		if (cost >= unmatchedPenalty)
+			return;
+		entryRows.add(row);
+		entryCols.add(col);
+		entryCosts.add(cost);
+		solved = false;
+	}
+
+	public int getEntryCnt() {
+		return entryRows.size();
+	}
+
+	/**
+	 * Returns the aggregated minimum. If the assignment has not been solved yet, it will be solved first.
+	 *
+	 * @return Sum of the costs of all assigned entries plus unmatchedPenalty for each of the max(rows, cols) rows or
+	 *         columns left unassigned
+	 */
+	public double getMinimum() {
+		if (!this.solved)
+			this.solve();
+		return minimum;
+	}
+
+	/**
+	 * @return Column assigned to each row, -1 for unassigned rows
+	 */
+	public int[] getAssignment() {
+		if (!this.solved)
+			this.solve();
+		return assignment;
+	}
+
+	public void solve() {
+
+		int e = entryRows.size();
+
+		// Entries per row in CSR layout, costs are stored relative to the penalty (< 0)
+		int[] rowStart = new int[rows + 1];
+		for (int k = 0; k < e; k++)
+			rowStart[entryRows.get(k) + 1]++;
+		for (int i = 0; i < rows; i++)
+			rowStart[i + 1] += rowStart[i];
+
+		int[] fill = Arrays.copyOf(rowStart, rows);
+		int[] adjCol = new int[e];
+		double[] adjCost = new double[e];
+		for (int k = 0; k < e; k++) {
+			int pos = fill[entryRows.get(k)]++;
+			adjCol[pos] = entryCols.get(k);
+			adjCost[pos] = entryCosts.get(k) - unmatchedPenalty;
+		}
+
+		// Nodes: rows 0..rows-1, columns rows..rows+cols-1, sink. The source is implicit and connects all free rows.
+		int sink = rows + cols;
+		int n = sink + 1;
+
+		int[] matchRow = new int[rows];
+		int[] matchCol = new int[cols];
+		double[] matchCost = new double[cols];
+		Arrays.fill(matchRow, -1);
+		Arrays.fill(matchCol, -1);
+
+		// Initial potentials keep all reduced costs >= 0 (rows 0, columns and sink at their cheapest incoming cost)
+		double[] pi = new double[n];
+		for (int k = 0; k < e; k++) {
+			int col = rows + adjCol[k];
+			if (adjCost[k] < pi[col])
+				pi[col] = adjCost[k];
+			if (adjCost[k] < pi[sink])
+				pi[sink] = adjCost[k];
+		}
+
+		double[] dist = new double[n];
+		boolean[] settled = new boolean[n];
+		int[] prev = new int[n];
+		double[] prevCost = new double[n];
+		double total = 0d;
+
+		while (true) {
+
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(settled, false);
+			IntMinHeap heap = new IntMinHeap(n);
+
+			for (int i = 0; i < rows; i++) {
+				if (matchRow[i] < 0 && rowStart[i] < rowStart[i + 1]) {
+					dist[i] = -pi[i];
+					prev[i] = -1;
+					heap.insertOrDecrease(i, dist[i]);
+				}
+			}
+
+			while (!heap.isEmpty()) {
+
+				int u = heap.poll();
+				settled[u] = true;
+				if (u == sink)
+					break;
+
+				if (u < rows) {
+					// Unmatched entries of the row
+					for (int k = rowStart[u]; k < rowStart[u + 1]; k++) {
+						int col = adjCol[k];
+						if (matchRow[u] == col)
+							continue;
+						int v = rows + col;
+						if (settled[v])
+							continue;
+						double d = dist[u] + adjCost[k] + pi[u] - pi[v];
+						if (d < dist[v]) {
+							dist[v] = d;
+							prev[v] = u;
+							prevCost[v] = adjCost[k];
+							heap.insertOrDecrease(v, d);
+						}
+					}
+				}
+				else {
+					int col = u - rows;
+					int v = (matchCol[col] < 0) ? sink : matchCol[col];
+					if (settled[v])
+						continue;
+					// Free columns end at the sink, matched columns lead back to their row
+					double d = dist[u] + ((v == sink) ? 0d : -matchCost[col]) + pi[u] - pi[v];
+					if (d < dist[v]) {
+						dist[v] = d;
+						prev[v] = u;
+						heap.insertOrDecrease(v, d);
+					}
+				}
+			}
+
+			// Stop if no augmenting path is left or the cheapest one does not lower the total cost
+			if (Double.isInfinite(dist[sink]) || dist[sink] + pi[sink] >= 0d)
+				break;
+
+			total += dist[sink] + pi[sink];
+
+			double cap = dist[sink];
+			for (int v = 0; v < n; v++)
+				pi[v] += Math.min(dist[v], cap);
+
+			// Flip the matching along the path
+			for (int col = prev[sink]; col >= 0;) {
+				int row = prev[col];
+				int oldCol = matchRow[row];
+				matchRow[row] = col - rows;
+				matchCol[col - rows] = row;
+				matchCost[col - rows] = prevCost[col];
+				col = (oldCol < 0) ? -1 : prev[row];
+			}
+		}
+
+		assignment = matchRow;
+		minimum = unmatchedPenalty * Math.max(rows, cols) + total;
+		solved = true;
+	}
+
+	public static void main(String args[]) {
+
+		// Same as the dense example of AssignmentSolver, cells with cost >= 5 left out
+		SparseAssignmentSolver solver = new SparseAssignmentSolver(3, 4, 5d);
+		solver.addEntry(0, 0, 2);
+		solver.addEntry(0, 1, 3);
+		solver.addEntry(0, 2, 1);
+		solver.addEntry(1, 0, 2);
+		solver.addEntry(1, 1, 2);
+		solver.addEntry(1, 2, 1);
+		solver.addEntry(2, 0, 4);
+		solver.addEntry(2, 1, 3);
+		solver.addEntry(2, 2, 1);
+
+		System.out.println(solver.getMinimum() + " " + Arrays.toString(solver.getAssignment()));
+	}
+
+}
@@ -0,0 +1,18 @@
+package de.uma.dws.graphsm.tripleweighter;
+
+import java.util.Collection;
+
+import de.uma.dws.graphsm.datamodel.Triple;
+
+/**
+ * {@link TripleWeighter} which weights many triples at once, e.g. with one database query per chunk of triples instead
+ * of one per triple.
+ */
+public interface BatchTripleWeighter extends TripleWeighter {
+
+	/**
+	 * @return Weight of each triple in iteration order of triples, equal to {@link #compute(Triple)}
+	 */
+	public double[] computeAll(Collection<Triple> triples);
+
+}
@@ -0,0 +1,28 @@
+package de.uma.dws.graphsm.tripleweighter;
+
+/**
+ * {@link CachingTripleWeighter} in front of a {@link TripleCostWeighter}, {@link #getMaxCostValue()} is delegated to
+ * the wrapped weighter.
+ */
+public class CachingTripleCostWeighter extends CachingTripleWeighter implements TripleCostWeighter {
+
+	final TripleCostWeighter	costWeighter;
+
+	/**
+	 * Cache with weights.cache.size entries
+	 */
+	public <W extends TripleWeighter & TripleCostWeighter> CachingTripleCostWeighter(W weighter) {
+		this(weighter, conf.getInt("weights.cache.size", 1000000));
+	}
+
+	public <W extends TripleWeighter & TripleCostWeighter> CachingTripleCostWeighter(W weighter, int maxSize) {
+		super(weighter, maxSize);
+		this.costWeighter = weighter;
+	}
+
+	@Override
+	public Double getMaxCostValue() {
+		return costWeighter.getMaxCostValue();
+	}
+
+}
@@ -0,0 +1,272 @@
+package de.uma.dws.graphsm.tripleweighter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.datamodel.Triple;
+
+/**
+ * Thread-safe, size bounded cache in front of any {@link TripleWeighter}, see {@link CachingTripleCostWeighter} for
+ * {@link TripleCostWeighter}s. The weight of a triple is assumed to depend on its predicate and object only, which
+ * holds for all weighters of this package, so each (pred, obj) weight is computed once across all document graphs. The
+ * (pred, obj) pair is the cache key and is held by its cache entry only. The cache is split into lock-striped
+ * segments, each evicting by segmented LRU: new entries go to a probation segment and are promoted to the protected
+ * segment on their second hit, so one-off objects do not push out the frequent (rdf:type, dcterms:subject, ...)
+ * weights.
+ */
+public class CachingTripleWeighter implements BatchTripleWeighter {
+
+	final static Logger	                          log	           = LoggerFactory.getLogger(CachingTripleWeighter.class);
+	final static Configuration	                  conf	           = ConfFactory.getConf();
+
+	final static int	                          STRIPES	       = 64;
+	final static double	                       PROTECTED_RATIO	= 0.8;
+
+	final TripleWeighter	                       weighter;
+
+	final Segment[]	                          segments;
+
+	final AtomicLong	                          hits	           = new AtomicLong();
+	final AtomicLong	                          misses	        = new AtomicLong();
+	final AtomicLong	                          evictions	     = new AtomicLong();
+
+	/**
+	 * Cache with weights.cache.size entries
+	 */
+	public CachingTripleWeighter(TripleWeighter weighter) {
+		this(weighter, conf.getInt("weights.cache.size", 1000000));
+	}
+
+	public CachingTripleWeighter(TripleWeighter weighter, int maxSize) {
+		if (maxSize < STRIPES)
+			throw new IllegalArgumentException("Cache size must be at least " + STRIPES + ": " + maxSize);
+		this.weighter = weighter;
+		this.segments = new Segment[STRIPES];
+		for (int i = 0; i < STRIPES; i++)
+			segments[i] = new Segment(maxSize / STRIPES);
+	}
+
+	@Override
+	public Double compute(Triple t) {
+
+		PredObj key = new PredObj(t);
+		Segment segment = segmentFor(key);
+
+		Double w = segment.get(key);
+		if (w != null) {
+			hits.incrementAndGet();
+			return w;
+		}
+		misses.incrementAndGet();
+
+		// Computed outside of the lock, concurrent misses of one key may both compute the (equal) weight
+		w = weighter.compute(t);
+		if (w != null)
+			evictions.addAndGet(segment.put(key, w));
+		return w;
+	}
+
+	/**
+	 * Looks up all triples and computes the missing weights with one {@link BatchTripleWeighter#computeAll} call if the
+	 * wrapped weighter supports it.
+	 */
+	@Override
+	public double[] computeAll(Collection<Triple> triples) {
+
+		double[] w = new double[triples.size()];
+		PredObj[] keys = new PredObj[triples.size()];
+
+		ArrayList<Triple> missing = new ArrayList<Triple>();
+		ArrayList<Integer> missingPos = new ArrayList<Integer>();
+
+		int i = 0;
+		for (Triple t : triples) {
+			keys[i] = new PredObj(t);
+			Double cached = segmentFor(keys[i]).get(keys[i]);
+			if (cached != null) {
+				w[i] = cached;
+			}
+			else {
+				missing.add(t);
+				missingPos.add(i);
+			}
+			i++;
+		}
+		hits.addAndGet(triples.size() - missing.size());
+		misses.addAndGet(missing.size());
+
+		if (missing.isEmpty())
+			return w;
+
+		double[] computed;
+		if (weighter instanceof BatchTripleWeighter) {
+			computed = ((BatchTripleWeighter) weighter).computeAll(missing);
+		}
+		else {
+			computed = new double[missing.size()];
+			for (int m = 0; m < missing.size(); m++)
+				computed[m] = weighter.compute(missing.get(m));
+		}
+
+		for (int m = 0; m < computed.length; m++) {
+			int pos = missingPos.get(m);
+			w[pos] = computed[m];
+			evictions.addAndGet(segmentFor(keys[pos]).put(keys[pos], computed[m]));
+		}
+		return w;
+	}
+
+	private Segment segmentFor(PredObj key) {
+		int h = key.hash * 0x9e3779b9;
+		return segments[(h >>> 26) & (STRIPES - 1)];
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public double getHitRate() {
+		long requests = hits.get() + misses.get();
+		return (requests == 0) ? 0d : hits.get() / (double) requests;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments)
+			size += segment.size();
+		return size;
+	}
+
+	/**
+	 * @return Cache metrics, e.g. for logging after a run
+	 */
+	public String getStats() {
+		return String.format("hits=%d misses=%d hitRate=%.4f evictions=%d size=%d", getHitCount(), getMissCount(),
+		         getHitRate(), getEvictionCount(), size());
+	}
+
+	@Override
+	public String toString() {
+		return weighter.toString();
+	}
+
+	/**
+	 * Cache key, the (pred, obj) pair of a triple
+	 */
+	static final class PredObj {
+
+		final String	pred;
+		final String	obj;
+		final int	   hash;
+
+		PredObj(Triple t) {
+			this.pred = t.getPred();
+			this.obj = t.getObj();
+			this.hash = 31 * pred.hashCode() + obj.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof PredObj))
+				return false;
+			PredObj other = (PredObj) o;
+			return hash == other.hash && pred.equals(other.pred) && obj.equals(other.obj);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Segmented LRU of one lock stripe. Both segments are access ordered LinkedHashMaps, their first entry is the least
+	 * recently used one.
+	 */
+	static class Segment {
+
+		final int	                    maxProtected;
+		final int	                    maxSize;
+		final LinkedHashMap<PredObj, Double>	probation	= new LinkedHashMap<PredObj, Double>(16, 0.75f, true);
+		final LinkedHashMap<PredObj, Double>	protect	   = new LinkedHashMap<PredObj, Double>(16, 0.75f, true);
+
+		Segment(int maxSize) {
+			this.maxSize = maxSize;
+			this.maxProtected = (int) (maxSize * PROTECTED_RATIO);
+		}
+
+		synchronized Double get(PredObj key) {
+			Double w = protect.get(key);
+			if (w != null)
+				return w;
+			w = probation.remove(key);
+			if (w != null) {
+				// Second hit, promote and demote the protected LRU entry if needed
+				protect.put(key, w);
+				if (protect.size() > maxProtected) {
+					Iterator<Map.Entry<PredObj, Double>> lru = protect.entrySet().iterator();
+					Map.Entry<PredObj, Double> e = lru.next();
+					lru.remove();
+					probation.put(e.getKey(), e.getValue());
+				}
+			}
+			return w;
+		}
+
+		/**
+		 * @return Number of evicted entries
+		 */
+		synchronized int put(PredObj key, double w) {
+			if (protect.containsKey(key) || probation.containsKey(key))
+				return 0;
+			probation.put(key, w);
+			int evicted = 0;
+			Iterator<PredObj> lru = probation.keySet().iterator();
+			while (probation.size() + protect.size() > maxSize && lru.hasNext()) {
+				lru.next();
+				lru.remove();
+				evicted++;
+			}
+			return evicted;
+		}
+
+		synchronized int size() {
+			return probation.size() + protect.size();
+		}
+	}
+
+	public static void main(String[] args) {
+
+		Triple t1 = new Triple("dbpedia:Jimmy_Carter", "dbpediaowl:spouse", "dbpedia:Rosalynn_Carter");
+		Triple t2 = new Triple("dbpedia:Jimmy_Carter", "rdf:type", "foaf:Person");
+		Triple t3 = new Triple("dbpedia:Barack_Obama", "rdf:type", "foaf:Person");
+
+		CachingTripleCostWeighter weighter = new CachingTripleCostWeighter(new TripleWeighterJointIC(true));
+
+		System.out.println(weighter.compute(t1));
+		System.out.println(weighter.compute(t2));
+		System.out.println(weighter.compute(t3));
+		System.out.println(weighter.getStats());
+		System.out.println(weighter.getMaxCostValue());
+	}
+
+}
@@ -0,0 +1,53 @@
+package de.uma.dws.graphsm.tripleweighter;
+
+import java.util.List;
+
+/**
+ * Global DBpedia triple counts as needed by the information content based weighters. Predicates and objects are given as
+ * prefixed URIs, as in the count tables created with
+ * {@link de.uma.dws.graphsm.webservice.DBPediaCreateTripleCountsTables}.
+ */
+public interface TripleCounts {
+
+	/**
+	 * @return Total number of triples, i.e. the sum of all predicate counts
+	 */
+	public Double getTripleCnt();
+
+	/**
+	 * @return Number of triples with predicate pred, null if unknown
+	 */
+	public Double getPredCnt(String pred);
+
+	/**
+	 * @return Number of triples with object obj, null if unknown
+	 */
+	public Double getObjCnt(String obj);
+
+	/**
+	 * @return Number of triples with predicate pred and object obj, 1 if unknown (only counts > 1 are stored)
+	 */
+	public Double getPredObjCnt(String pred, String obj);
+
+	/**
+	 * Batch variant of {@link #getPredCnt(String)}
+	 *
+	 * @return Count of each predicate (same order as preds), null if unknown
+	 */
+	public Double[] getPredCnts(List<String> preds);
+
+	/**
+	 * Batch variant of {@link #getObjCnt(String)}
+	 *
+	 * @return Count of each object (same order as objs), null if unknown
+	 */
+	public Double[] getObjCnts(List<String> objs);
+
+	/**
+	 * Batch variant of {@link #getPredObjCnt(String, String)} for the pairs (preds[i], objs[i])
+	 *
+	 * @return Count of each pair (same order), 1 if unknown
+	 */
+	public Double[] getPredObjCnts(List<String> preds, List<String> objs);
+
+}
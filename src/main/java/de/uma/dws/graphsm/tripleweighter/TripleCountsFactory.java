@@ -0,0 +1,45 @@
+package de.uma.dws.graphsm.tripleweighter;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.mysql.DBPediaCountsMySqlConnector;
+
+/**
+ * Provides the triple counts of the weighters: the embedded {@link TripleCountsFileStore} if counts.store.dir is
+ * configured, the MySQL tables otherwise.
+ */
+public class TripleCountsFactory {
+
+	final static Logger	       log	 = LoggerFactory.getLogger(TripleCountsFactory.class);
+	final static Configuration	conf	= ConfFactory.getConf();
+
+	static private TripleCounts	counts	= null;
+
+	private TripleCountsFactory() {}
+
+	public static synchronized TripleCounts getCounts() {
+		if (counts == null) {
+			String dir = conf.getString("counts.store.dir", null);
+			if (dir == null) {
+				counts = DBPediaCountsMySqlConnector.getInstance();
+			}
+			else {
+				try {
+					counts = new TripleCountsFileStore(new File(dir));
+				}
+				catch (IOException e) {
+					log.warn("Loading triple counts from {} failed: {}", dir, e.getMessage());
+					throw new RuntimeException("Loading triple counts failed " + e.getMessage());
+				}
+			}
+		}
+		return counts;
+	}
+
+}
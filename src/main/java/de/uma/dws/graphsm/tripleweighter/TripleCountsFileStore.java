@@ -0,0 +1,312 @@
+package de.uma.dws.graphsm.tripleweighter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded, read-only replacement of {@link de.uma.dws.graphsm.mysql.DBPediaCountsMySqlConnector}. Reads the PredCnt,
+ * ObjCnt and PredObjCnt .tab dumps of {@link de.uma.dws.graphsm.webservice.DBPediaCreateTripleCountsTables} from one
+ * directory and turns each of them once into an index file (.idx): the sorted 64 bit hashes of the keys followed by the
+ * counts. Index files are memory mapped, so a lookup is a binary search without any network round trip and the
+ * counts stay out of the Java heap. Instances are thread-safe.
+ */
+public class TripleCountsFileStore implements TripleCounts {
+
+	final static Logger	      log	      = LoggerFactory.getLogger(TripleCountsFileStore.class);
+
+	final static String[]	 TABLES	   = { "PredCnt", "ObjCnt", "PredObjCnt" };
+
+	final MappedIndex	      predCnt;
+	final MappedIndex	      objCnt;
+	final MappedIndex	      predObjCnt;
+
+	private final Double	   tripleCnt;
+
+	/**
+	 * @param dir
+	 *           Directory containing PredCnt.tab, ObjCnt.tab and PredObjCnt.tab. Missing or outdated index files are
+	 *           built next to them.
+	 * @throws IOException
+	 *            if a dump can not be read or an index can not be written
+	 */
+	public TripleCountsFileStore(File dir) throws IOException {
+
+		MappedIndex[] indexes = new MappedIndex[TABLES.length];
+
+		for (int i = 0; i < TABLES.length; i++) {
+			File tab = new File(dir, TABLES[i] + ".tab");
+			File idx = new File(dir, TABLES[i] + ".idx");
+			if (!idx.exists() || (tab.exists() && tab.lastModified() > idx.lastModified()))
+				buildIndex(tab, idx, (i == 2) ? 2 : 1);
+			indexes[i] = new MappedIndex(idx);
+		}
+
+		predCnt = indexes[0];
+		objCnt = indexes[1];
+		predObjCnt = indexes[2];
+
+		long sum = 0;
+		for (int i = 0; i < predCnt.size; i++)
+			sum += predCnt.getCount(i);
+		tripleCnt = (double) sum;
+
+		log.info("Triple counts loaded from {}: {} predicates, {} objects, {} <pred,obj> pairs, {} triples", dir,
+		         predCnt.size, objCnt.size, predObjCnt.size, sum);
+	}
+
+	@Override
+	public Double getTripleCnt() {
+		return tripleCnt;
+	}
+
+	@Override
+	public Double getPredCnt(String pred) {
+		Double cnt = predCnt.get(pred);
+		if (cnt == null)
+			log.warn("Predicate count not found for {}", pred);
+		return cnt;
+	}
+
+	@Override
+	public Double getObjCnt(String obj) {
+		Double cnt = objCnt.get(obj);
+		if (cnt == null)
+			log.warn("Object count not found for {}", obj);
+		return cnt;
+	}
+
+	@Override
+	public Double getPredObjCnt(String pred, String obj) {
+		Double cnt = predObjCnt.get(pred + "\t" + obj);
+		// Dump contains only <pred,obj> counts > 1
+		return (cnt == null) ? 1.0 : cnt;
+	}
+
+	@Override
+	public Double[] getPredCnts(List<String> preds) {
+		Double[] cnts = new Double[preds.size()];
+		for (int i = 0; i < cnts.length; i++)
+			cnts[i] = getPredCnt(preds.get(i));
+		return cnts;
+	}
+
+	@Override
+	public Double[] getObjCnts(List<String> objs) {
+		Double[] cnts = new Double[objs.size()];
+		for (int i = 0; i < cnts.length; i++)
+			cnts[i] = getObjCnt(objs.get(i));
+		return cnts;
+	}
+
+	@Override
+	public Double[] getPredObjCnts(List<String> preds, List<String> objs) {
+		Double[] cnts = new Double[preds.size()];
+		for (int i = 0; i < cnts.length; i++)
+			cnts[i] = getPredObjCnt(preds.get(i), objs.get(i));
+		return cnts;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the UTF-16 chars of key with a final avalanche step
+	 */
+	static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Reads a dump with keyFields key columns followed by the count column, fields separated by tabs and optionally
+	 * enclosed by '"', and writes the index: entry count, sorted key hashes, counts (unsigned int).
+	 */
+	static void buildIndex(File tab, File idx, int keyFields) throws IOException {
+
+		log.info("Building triple count index {} from {}", idx, tab);
+
+		long[] hashes = new long[1 << 16];
+		int[] counts = new int[1 << 16];
+		int n = 0;
+		int skipped = 0;
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tab),
+		         StandardCharsets.UTF_8))) {
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+
+				String[] fields = line.split("\t");
+				if (fields.length != keyFields + 1) {
+					skipped++;
+					continue;
+				}
+
+				StringBuilder key = new StringBuilder(unquote(fields[0]));
+				for (int f = 1; f < keyFields; f++)
+					key.append('\t').append(unquote(fields[f]));
+
+				long cnt;
+				try {
+					cnt = Long.parseLong(unquote(fields[keyFields]).trim());
+				}
+				catch (NumberFormatException e) {
+					skipped++; // e.g. header line
+					continue;
+				}
+
+				if (n == hashes.length) {
+					hashes = Arrays.copyOf(hashes, 2 * n);
+					counts = Arrays.copyOf(counts, 2 * n);
+				}
+				hashes[n] = hash(key.toString());
+				counts[n++] = (int) cnt;
+			}
+		}
+
+		if (skipped > 0)
+			log.warn("{} lines of {} skipped", skipped, tab);
+
+		sort(hashes, counts, 0, n - 1);
+
+		int duplicates = 0;
+		for (int i = 1; i < n; i++)
+			if (hashes[i] == hashes[i - 1])
+				duplicates++;
+		if (duplicates > 0)
+			log.warn("{} duplicate keys (or hash collisions) in {}, one of their counts is used", duplicates, tab);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idx)))) {
+			out.writeLong(n);
+			for (int i = 0; i < n; i++)
+				out.writeLong(hashes[i]);
+			for (int i = 0; i < n; i++)
+				out.writeInt(counts[i]);
+		}
+	}
+
+	private static String unquote(String field) {
+		if (field.length() >= 2 && field.charAt(0) == '"' && field.charAt(field.length() - 1) == '"')
+			return field.substring(1, field.length() - 1);
+		return field;
+	}
+
+	/**
+	 * Quicksort of hashes with counts as satellite data
+	 */
+	private static void sort(long[] hashes, int[] counts, int lo, int hi) {
+		while (lo < hi) {
+			long pivot = hashes[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (hashes[i] < pivot)
+					i++;
+				while (hashes[j] > pivot)
+					j--;
+				if (i <= j) {
+					long h = hashes[i];
+					hashes[i] = hashes[j];
+					hashes[j] = h;
+					int c = counts[i];
+					counts[i] = counts[j];
+					counts[j] = c;
+					i++;
+					j--;
+				}
+			}
+			// Recurse into the smaller part only
+			if (j - lo < hi - i) {
+				sort(hashes, counts, lo, j);
+				lo = i;
+			}
+			else {
+				sort(hashes, counts, i, hi);
+				hi = j;
+			}
+		}
+	}
+
+	/**
+	 * Read-only, memory mapped index file written by {@link TripleCountsFileStore#buildIndex(File, File, int)}
+	 */
+	static class MappedIndex {
+
+		final MappedByteBuffer	buffer;
+		final int	          size;
+
+		MappedIndex(File idx) throws IOException {
+			try (RandomAccessFile file = new RandomAccessFile(idx, "r"); FileChannel channel = file.getChannel()) {
+				if (channel.size() > Integer.MAX_VALUE)
+					throw new IOException("Index file too large to be mapped: " + idx);
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			size = (int) buffer.getLong(0);
+		}
+
+		long getHash(int i) {
+			return buffer.getLong(8 + 8 * i);
+		}
+
+		long getCount(int i) {
+			return buffer.getInt(8 + 8 * size + 4 * i) & 0xffffffffL;
+		}
+
+		/**
+		 * @return Count of key or null if not contained
+		 */
+		Double get(String key) {
+			long h = hash(key);
+			int lo = 0;
+			int hi = size - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				long midHash = getHash(mid);
+				if (midHash < h)
+					lo = mid + 1;
+				else if (midHash > h)
+					hi = mid - 1;
+				else {
+					while (mid > 0 && getHash(mid - 1) == h)
+						mid--;
+					return (double) getCount(mid);
+				}
+			}
+			return null;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		TripleCountsFileStore counts = new TripleCountsFileStore(new File(args.length > 0 ? args[0] : "data/dbpcounts"));
+
+		System.out.println("getPredCnt(rdf:type) = " + counts.getPredCnt("rdf:type"));
+
+		System.out.println("getObjCnt(dbpedia:Rosalynn_Carter) = " + counts.getObjCnt("dbpedia:Rosalynn_Carter"));
+
+		System.out.println("getPredObjCnt(rdf:type, yago:FilmsBasedOnWorksByWilliamFaulkner) = "
+		         + counts.getPredObjCnt("rdf:type", "yago:FilmsBasedOnWorksByWilliamFaulkner"));
+	}
+
+}
@@ -1,10 +1,12 @@
 package de.uma.dws.graphsm.tripleweighter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.uma.dws.graphsm.datamodel.Triple;
-import de.uma.dws.graphsm.mysql.DBPediaCountsMySqlConnector;
 
 /**
  * @author michaelschuhmacher
@@ -25,10 +27,10 @@ import de.uma.dws.graphsm.mysql.DBPediaCountsMySqlConnector;
  * </pre>
  * which is actually computed here.
  */
-public class TripleWeighterAddedIC implements TripleWeighter, TripleCostWeighter {
+public class TripleWeighterAddedIC implements BatchTripleWeighter, TripleCostWeighter {
 	
 	final static Logger log = LoggerFactory.getLogger(TripleWeighterAddedIC.class);
-	final static DBPediaCountsMySqlConnector db  = DBPediaCountsMySqlConnector.getInstance();;
+	final static TripleCounts db  = TripleCountsFactory.getCounts();
 	
 	final static Double 	logBase = Math.E;
 	private boolean 		transformToCost;
@@ -48,11 +50,37 @@ public class TripleWeighterAddedIC implements TripleWeighter, TripleCostWeighter
 	
 	@Override
    public Double compute(Triple t) {
+		return weight(t, db.getPredCnt(t.getPred()), db.getObjCnt(t.getObj()));
+   }
+	
+	@Override
+	public double[] computeAll(Collection<Triple> triples) {
+		
+		ArrayList<String> preds = new ArrayList<String>(triples.size());
+		ArrayList<String> objs = new ArrayList<String>(triples.size());
+		for (Triple t : triples) {
+			preds.add(t.getPred());
+			objs.add(t.getObj());
+		}
+		
+		Double[] predCnts = db.getPredCnts(preds);
+		Double[] objCnts = db.getObjCnts(objs);
+		
+		double[] w = new double[triples.size()];
+		int i = 0;
+		for (Triple t : triples) {
+			w[i] = weight(t, predCnts[i], objCnts[i]);
+			i++;
+		}
+		return w;
+	}
+	
+	private Double weight(Triple t, Double predCnt, Double objCnt) {
 		Double w = null;
 		try {
 	      w = 2*(Math.log(db.getTripleCnt())          / Math.log(logBase))
-	      	 - (Math.log(db.getPredCnt(t.getPred())) / Math.log(logBase))
-	      	 - (Math.log(db.getObjCnt(t.getObj()))   / Math.log(logBase));
+	      	 - (Math.log(predCnt) / Math.log(logBase))
+	      	 - (Math.log(objCnt)   / Math.log(logBase));
       }
       catch (Exception e) {
       	log.warn("TripleWeighterAddedIC failed for triple {} with {}", t, e.getMessage());
@@ -61,7 +89,7 @@ public class TripleWeighterAddedIC implements TripleWeighter, TripleCostWeighter
       	throw new RuntimeException(t + e.getMessage());
       }
 		return transformToCost ? maxCostValue - w : w;
-   }
+	}
 	
    public Double computeICPred(Triple t) {
 		Double w = (Math.log(1d * db.getTripleCnt() / db.getPredCnt(t.getPred())) / Math.log(logBase));
@@ -1,5 +1,8 @@
 package de.uma.dws.graphsm.tripleweighter;
 
+import java.util.Arrays;
+import java.util.Collection;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,7 +13,7 @@ import de.uma.dws.graphsm.datamodel.Triple;
  *
  * Sets all edge weights to 1.0
  */
-public class TripleWeighterEqualWeights implements TripleWeighter, TripleCostWeighter {
+public class TripleWeighterEqualWeights implements BatchTripleWeighter, TripleCostWeighter {
 	
 	final static Logger log = LoggerFactory.getLogger(TripleWeighterEqualWeights.class);
 	
@@ -29,6 +32,13 @@ public class TripleWeighterEqualWeights implements TripleWeighter, TripleCostWei
    public Double compute(Triple t) {
 		return 1d;
    }
+	
+	@Override
+	public double[] computeAll(Collection<Triple> triples) {
+		double[] w = new double[triples.size()];
+		Arrays.fill(w, 1d);
+		return w;
+	}
    	
 	@Override
    public String toString() {
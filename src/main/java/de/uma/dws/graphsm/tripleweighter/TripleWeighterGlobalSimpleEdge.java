@@ -1,7 +1,5 @@
 package de.uma.dws.graphsm.tripleweighter;
 
-import java.util.HashMap;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,25 +14,19 @@ public class TripleWeighterGlobalSimpleEdge implements TripleWeighter{
 	
 	final static Logger log = LoggerFactory.getLogger(TripleWeighterGlobalSimpleEdge.class);
 	
-	static HashMap<Integer, Double> weightsCache = new HashMap<Integer, Double>();
-	static HashMap<Integer, Double> predCountCache = new HashMap<Integer, Double>();
-	
+	/**
+	 * Uncached, wrap it into a {@link CachingTripleWeighter} to reuse the weights of (pred, obj) pairs
+	 */
 	@Override
 	public Double compute(Triple triple) {
-		Double weight = weightsCache.get(triple.hashCodePO());
-		if (weight == null) {
-	
-			Double globalEdgeCnt = predCountCache.get(triple.getPred());
-			if (globalEdgeCnt == null)
-				globalEdgeCnt = Double.valueOf(DBPedia.getPredWeight(triple.getPred()));
-			Double specificEdgeCnt = Double.valueOf(DBPedia.getPredWeight(triple.getPred(), triple.getObj()));
-	
-			weight = 1d + Math.log(1d + globalEdgeCnt/(1d + specificEdgeCnt));
-			
-			weightsCache.put(triple.hashCodePO(), weight);
-			log.debug("{} Weight {} globalEdgeCnt {} specificEdgeCnt {}",
-					triple, weight, globalEdgeCnt, specificEdgeCnt);
-		}
+		
+		Double globalEdgeCnt = Double.valueOf(DBPedia.getPredWeight(triple.getPred()));
+		Double specificEdgeCnt = Double.valueOf(DBPedia.getPredWeight(triple.getPred(), triple.getObj()));
+
+		Double weight = 1d + Math.log(1d + globalEdgeCnt/(1d + specificEdgeCnt));
+		
+		log.debug("{} Weight {} globalEdgeCnt {} specificEdgeCnt {}",
+				triple, weight, globalEdgeCnt, specificEdgeCnt);
 
 		return weight;
 	}
@@ -47,7 +39,7 @@ public class TripleWeighterGlobalSimpleEdge implements TripleWeighter{
 	
 	public static void main(String[] args) {
 		Triple t = new Triple("http://dbpedia.org/resource/Aida", "rdf:type", "http://dbpedia.org/class/yago/Operas");
-		TripleWeighter weighter = new TripleWeighterGlobalSimpleEdge();
+		TripleWeighter weighter = new CachingTripleWeighter(new TripleWeighterGlobalSimpleEdge());
 		System.out.println(weighter.compute(t));
 	}
 
@@ -1,10 +1,12 @@
 package de.uma.dws.graphsm.tripleweighter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.uma.dws.graphsm.datamodel.Triple;
-import de.uma.dws.graphsm.mysql.DBPediaCountsMySqlConnector;
 
 /**
  * @author michaelschuhmacher
@@ -25,10 +27,10 @@ import de.uma.dws.graphsm.mysql.DBPediaCountsMySqlConnector;
  * </pre>
  * which is actually computed here.
  */
-public class TripleWeighterJointIC implements TripleWeighter, TripleCostWeighter{
+public class TripleWeighterJointIC implements BatchTripleWeighter, TripleCostWeighter{
 
 	final static Logger log = LoggerFactory.getLogger(TripleWeighterJointIC.class);
-	final static DBPediaCountsMySqlConnector db = DBPediaCountsMySqlConnector.getInstance();
+	final static TripleCounts db = TripleCountsFactory.getCounts();
 	
 	final static Double 	logBase = Math.E;
 	private boolean 		transformToCost;
@@ -55,18 +57,43 @@ public class TripleWeighterJointIC implements TripleWeighter, TripleCostWeighter
 
 	@Override
    public Double compute(Triple t) {
+		return weight(t, db.getPredObjCnt(t.getPred(), t.getObj()));
+   }
+	
+	@Override
+	public double[] computeAll(Collection<Triple> triples) {
+		
+		ArrayList<String> preds = new ArrayList<String>(triples.size());
+		ArrayList<String> objs = new ArrayList<String>(triples.size());
+		for (Triple t : triples) {
+			preds.add(t.getPred());
+			objs.add(t.getObj());
+		}
+		
+		Double[] predObjCnts = db.getPredObjCnts(preds, objs);
+		
+		double[] w = new double[triples.size()];
+		int i = 0;
+		for (Triple t : triples) {
+			w[i] = weight(t, predObjCnts[i]);
+			i++;
+		}
+		return w;
+	}
+	
+	private Double weight(Triple t, Double predObjCnt) {
 		
 		Double w = null;
 		
 		try {
-	      w = Math.log(1d * db.getTripleCnt() / db.getPredObjCnt(t.getPred(), t.getObj())) / Math.log(logBase); //base for log
+	      w = Math.log(1d * db.getTripleCnt() / predObjCnt) / Math.log(logBase); //base for log
       }
       catch (Exception e) {
       	log.warn("TripleWeighterJointIC failed for triple {} with {}", t, e.getMessage());
       	throw new RuntimeException(t + e.getMessage());
       }
 		return transformToCost ? maxCostValue - w : w;
-   }
+	}
 	
 	public static void main(String[] args) {
 		
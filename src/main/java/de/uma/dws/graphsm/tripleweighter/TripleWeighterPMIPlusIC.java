@@ -1,10 +1,12 @@
 package de.uma.dws.graphsm.tripleweighter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.uma.dws.graphsm.datamodel.Triple;
-import de.uma.dws.graphsm.mysql.DBPediaCountsMySqlConnector;
 
 /**
  * @author michaelschuhmacher
@@ -23,10 +25,10 @@ import de.uma.dws.graphsm.mysql.DBPediaCountsMySqlConnector;
  * }
  * </pre>
  */
-public class TripleWeighterPMIPlusIC implements TripleWeighter, TripleCostWeighter {
+public class TripleWeighterPMIPlusIC implements BatchTripleWeighter, TripleCostWeighter {
 	
 	final static Logger log = LoggerFactory.getLogger(TripleWeighterPMIPlusIC.class);
-	final static DBPediaCountsMySqlConnector db = DBPediaCountsMySqlConnector.getInstance();
+	final static TripleCounts db = TripleCountsFactory.getCounts();
 	
 	final static Double 	logBase = Math.E;
 	private boolean 		transformToCost;
@@ -70,12 +72,39 @@ public class TripleWeighterPMIPlusIC implements TripleWeighter, TripleCostWeight
 //		System.out.println("4: " + (Math.log(db.getObjCnt(t.getObj())) / Math.log(logBase)));
 //		System.out.println("=====");
 		
+		return weight(t, db.getPredObjCnt(t.getPred(), t.getObj()), db.getPredCnt(t.getPred()), db.getObjCnt(t.getObj()));
+   }
+	
+	@Override
+	public double[] computeAll(Collection<Triple> triples) {
+		
+		ArrayList<String> preds = new ArrayList<String>(triples.size());
+		ArrayList<String> objs = new ArrayList<String>(triples.size());
+		for (Triple t : triples) {
+			preds.add(t.getPred());
+			objs.add(t.getObj());
+		}
+		
+		Double[] predObjCnts = db.getPredObjCnts(preds, objs);
+		Double[] predCnts = db.getPredCnts(preds);
+		Double[] objCnts = db.getObjCnts(objs);
+		
+		double[] w = new double[triples.size()];
+		int i = 0;
+		for (Triple t : triples) {
+			w[i] = weight(t, predObjCnts[i], predCnts[i], objCnts[i]);
+			i++;
+		}
+		return w;
+	}
+	
+	private Double weight(Triple t, Double predObjCnt, Double predCnt, Double objCnt) {
 		Double w = null;
 		try {
 	      w = 2 * (Math.log(db.getTripleCnt()) / 								Math.log(logBase))
-	            + (Math.log(db.getPredObjCnt(t.getPred(), t.getObj())) / Math.log(logBase)) 
-	        - 2 * (Math.log(db.getPredCnt(t.getPred())) / 					Math.log(logBase))
-	            - (Math.log(db.getObjCnt(t.getObj())) / 						Math.log(logBase));
+	            + (Math.log(predObjCnt) / Math.log(logBase)) 
+	        - 2 * (Math.log(predCnt) / 					Math.log(logBase))
+	            - (Math.log(objCnt) / 						Math.log(logBase));
       }
       catch (Exception e) {
 	      log.warn("TripleWeighterPMIPlusIC failed for triple {} with {}", t, e.getMessage());
@@ -84,7 +113,7 @@ public class TripleWeighterPMIPlusIC implements TripleWeighter, TripleCostWeight
 	      throw new RuntimeException(t + e.getMessage());
       }
 		return transformToCost ? maxCostValue - w : w;
-   }
+	}
 	
 	@Override
    public String toString() {
@@ -5,6 +5,11 @@ import java.util.ArrayList;
 public interface Annotator {
 	
 	public ArrayList<String> annotate(String text);
+	
+	/**
+	 * @return Endpoint and parameters the annotations depend on, cached annotations are only reused for the same setup
+	 */
+	public String getSetup();
 
 
 }
@@ -0,0 +1,21 @@
+package de.uma.dws.graphsm.webservice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import de.uma.dws.graphsm.datamodel.Triple;
+
+/**
+ * {@link DBPediaEdgeSelector} which fetches the triples of many URIs at once, with one SPARQL query per chunk of URIs
+ * instead of one (or more) per URI.
+ */
+public interface BatchDBPediaEdgeSelector extends DBPediaEdgeSelector {
+
+	/**
+	 * @return Triples of each URI, equal to {@link #get(String)}, an empty list for URIs without triples. URIs which
+	 *         could not be fetched (e.g. the endpoint failed after all retries) are left out.
+	 */
+	public HashMap<String, ArrayList<Triple>> getAll(Collection<String> uris);
+
+}
@@ -0,0 +1,260 @@
+package de.uma.dws.graphsm.webservice;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+
+/**
+ * Caches the results of an {@link Annotator} by the SHA-1 hash of the annotated text, so documents of a corpus are sent
+ * to the annotation service only once over all experiment runs. There is one cache per annotator and setup (endpoint
+ * and parameters, see {@link Annotator#getSetup()}). If annotation.cache.dir is set, results are appended to one tab
+ * separated file per cache (hash, number of URIs, URIs) and loaded on the next start; otherwise they are kept in memory
+ * only. The header line of the file holds the setup and annotation.cache.version, a file of another setup or version
+ * is discarded. Empty results are not cached, since the annotators also return them on connection errors. Instances
+ * are thread-safe.
+ */
+public class CachingAnnotator implements Annotator, Closeable {
+
+	final static Logger	                                  log	      = LoggerFactory.getLogger(CachingAnnotator.class);
+	final static Configuration	                          conf	     = ConfFactory.getConf();
+
+	private static final HashMap<String, CachingAnnotator>	instances	= new HashMap<String, CachingAnnotator>();
+
+	final Annotator	                                      annotator;
+	final File	                                           file;
+	final String	                                         header;
+
+	private final ConcurrentHashMap<String, ArrayList<String>>	results	  = new ConcurrentHashMap<String, ArrayList<String>>();
+	private BufferedWriter	                               out	      = null;
+
+	final AtomicLong	                                     hits	     = new AtomicLong();
+	final AtomicLong	                                     misses	   = new AtomicLong();
+
+	/**
+	 * @param file
+	 *           Cache file, created if it does not exist. null to cache in memory only
+	 * @throws IOException
+	 *            if the cache file can not be read or written
+	 */
+	public CachingAnnotator(Annotator annotator, File file) throws IOException {
+		this.annotator = annotator;
+		this.file = file;
+		this.header = "#\t" + annotator.getSetup() + "\t" + conf.getString("annotation.cache.version", "");
+
+		if (file == null)
+			return;
+
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+		boolean append = file.exists() && load();
+		boolean cutOff = append && endsWithoutNewline();
+		out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8"));
+		if (cutOff)
+			out.newLine();
+		if (!append) {
+			out.write(header);
+			out.newLine();
+			out.flush();
+		}
+
+		log.info("Annotation cache {} opened with {} documents", file, results.size());
+	}
+
+	/**
+	 * @return annotator behind the shared cache of its kind (by toString()) and setup, persisted in
+	 *         annotation.cache.dir if set. Caches are closed on JVM shutdown.
+	 */
+	public static synchronized CachingAnnotator wrap(Annotator annotator) {
+
+		if (annotator == null || annotator instanceof CachingAnnotator)
+			return (CachingAnnotator) annotator;
+
+		String key = annotator.toString() + "\t" + annotator.getSetup();
+		CachingAnnotator cache = instances.get(key);
+		if (cache == null) {
+			String dir = conf.getString("annotation.cache.dir");
+			File file = (dir == null) ? null : new File(dir, annotator.toString() + "-"
+			         + Integer.toHexString(annotator.getSetup().hashCode()) + ".tab");
+			try {
+				cache = new CachingAnnotator(annotator, file);
+			}
+			catch (IOException e) {
+				log.warn("Opening annotation cache {} failed with {}", file, e.getMessage());
+				throw new RuntimeException(e);
+			}
+			instances.put(key, cache);
+			final CachingAnnotator closeOnExit = cache;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						closeOnExit.close();
+					}
+					catch (IOException e) {
+						log.warn("Closing annotation cache failed with {}", e.getMessage());
+					}
+				}
+			});
+		}
+		return cache;
+	}
+
+	@Override
+	public ArrayList<String> annotate(String text) {
+		String key = hash(text);
+		ArrayList<String> uris = results.get(key);
+		if (uris != null) {
+			hits.incrementAndGet();
+			return new ArrayList<String>(uris);
+		}
+		misses.incrementAndGet();
+		uris = annotator.annotate(text);
+		store(key, uris);
+		return new ArrayList<String>(uris);
+	}
+
+	private void store(String key, ArrayList<String> uris) {
+		if (uris.isEmpty() || results.putIfAbsent(key, new ArrayList<String>(uris)) != null || file == null)
+			return;
+		StringBuilder line = new StringBuilder(key).append('\t').append(uris.size());
+		for (String uri : uris)
+			line.append('\t').append(uri);
+		synchronized (this) {
+			if (out == null)
+				return;
+			try {
+				out.write(line.toString());
+				out.newLine();
+				out.flush();
+			}
+			catch (IOException e) {
+				log.warn("Writing annotation cache {} failed with {}", file, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Reads the cache file, lines with a wrong URI count (e.g. cut off by a crash) are skipped
+	 * 
+	 * @return false if the file was written for another setup or version and is to be overwritten
+	 */
+	private boolean load() throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line = in.readLine();
+			if (!header.equals(line)) {
+				log.info("Annotation cache {} of another setup or version dropped: {}", file, line);
+				return false;
+			}
+			int skipped = 0;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t");
+				try {
+					if (fields.length > 2 && Integer.parseInt(fields[1]) == fields.length - 2) {
+						results.put(fields[0], new ArrayList<String>(Arrays.asList(fields).subList(2, fields.length)));
+						continue;
+					}
+				}
+				catch (NumberFormatException e) {
+				}
+				skipped++;
+			}
+			if (skipped > 0)
+				log.warn("Skipped {} broken lines of annotation cache {}", skipped, file);
+			return true;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private boolean endsWithoutNewline() throws IOException {
+		if (file.length() == 0)
+			return false;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(file.length() - 1);
+			return raf.read() != '\n';
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	static String hash(String text) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest)
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return Cache metrics, e.g. for logging after a run
+	 */
+	public String getStats() {
+		long h = hits.get();
+		long m = misses.get();
+		return String.format("hits=%d misses=%d hitRate=%.4f size=%d", h, m, (h + m == 0) ? 0d : h / (double) (h + m),
+		         results.size());
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+			log.info("Annotation cache {} closed: {}", file, getStats());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return annotator.toString();
+	}
+
+	@Override
+	public String getSetup() {
+		return annotator.getSetup();
+	}
+
+	public static void main(String[] args) {
+
+		CachingAnnotator annotator = wrap(new DBPediaSpotlight());
+
+		List<String> docs = Arrays.asList("Barack Obama gave a speech in Berlin.",
+		         "The Brandenburg Gate is a monument in Berlin.", "Barack Obama gave a speech in Berlin.");
+
+		for (String doc : docs)
+			System.out.println(annotator.annotate(doc));
+		System.out.println(annotator.getStats());
+	}
+
+}
@@ -0,0 +1,504 @@
+package de.uma.dws.graphsm.webservice;
+
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.datamodel.Triple;
+import de.uma.dws.graphsm.tools.Alphabet;
+import de.uma.dws.graphsm.tools.AppendLog;
+
+/**
+ * Persistent cache in front of a {@link DBPediaEdgeSelector}, so repeated graph builds only query the endpoint for
+ * URIs not seen before. There is one log file per selector class and endpoint in dbpedia.cache.dir. Its header holds
+ * the endpoint and dbpedia.cache.version; a file with another version is discarded, e.g. after loading a new DBpedia
+ * release. URIs and predicates are interned to int ids by string records, the triples of a URI are stored as one
+ * record of id triples with the time they were fetched. Triple lists older than dbpedia.cache.ttl.days are fetched
+ * again. Recently used triple lists are kept in memory (LRU, dbpedia.cache.memory.size URIs). Only successful fetches are
+ * cached: URIs a {@link BatchDBPediaEdgeSelector} leaves out of its result are fetched again next time, and so are
+ * empty results of a plain selector, which can not tell a failed fetch from a URI without triples. Instances are
+ * thread-safe.
+ */
+public class CachingDBPediaEdgeSelector implements BatchDBPediaEdgeSelector, Closeable {
+
+	final static Logger	                                      log	               = LoggerFactory
+	                                                                                 .getLogger(CachingDBPediaEdgeSelector.class);
+	final static Configuration	                              conf	              = ConfFactory.getConf();
+
+	final static byte	                                       HEADER	            = 0;
+	final static byte	                                       STRING	            = 1;
+	final static byte	                                       ENTRY	             = 2;
+
+	final static int	                                        ENTRY_HEADER_SIZE	= 1 + 4 + 8 + 4;
+	final static int	                                        COMPACT_MIN_DEAD	 = 10000;
+
+	private static final HashMap<File, CachingDBPediaEdgeSelector>	instances	       = new HashMap<File, CachingDBPediaEdgeSelector>();
+
+	final DBPediaEdgeSelector	                               selector;
+	final File	                                              file;
+	final String	                                            endpoint;
+	final String	                                            version;
+	final long	                                              ttlMsec;
+
+	private final Alphabet<String>	                          strings	           = new Alphabet<String>();
+	private final TIntLongHashMap	                           index	             = new TIntLongHashMap(1024, 0.5f, -1, -1);
+	private final LinkedHashMap<String, Fetched>	              memory;
+
+	private final AppendLog	                                 records;
+	private long	                                            entryRecords	      = 0;
+
+	private final ReentrantReadWriteLock	                    lock	              = new ReentrantReadWriteLock();
+
+	final AtomicLong	                                        memoryHits	        = new AtomicLong();
+	final AtomicLong	                                        diskHits	          = new AtomicLong();
+	final AtomicLong	                                        misses	            = new AtomicLong();
+	final AtomicLong	                                        failures	          = new AtomicLong();
+
+	/**
+	 * @param file
+	 *           Log file, created if it does not exist
+	 * @param endpoint
+	 *           SPARQL endpoint the selector queries
+	 * @param version
+	 *           Version stamp of the endpoint data, the file is discarded if it was written with another version
+	 * @param memorySize
+	 *           Max. number of triple lists in memory
+	 * @param ttlMsec
+	 *           Max. age of cached triple lists, 0 for no limit
+	 * @throws IOException
+	 *            if the log can not be read or written
+	 */
+	public CachingDBPediaEdgeSelector(DBPediaEdgeSelector selector, File file, String endpoint, String version,
+	         final int memorySize, long ttlMsec) throws IOException {
+
+		this.selector = selector;
+		this.file = file;
+		this.endpoint = endpoint;
+		this.version = version;
+		this.ttlMsec = ttlMsec;
+		this.memory = new LinkedHashMap<String, Fetched>(16, 0.75f, true) {
+			private static final long	serialVersionUID	= 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Fetched> eldest) {
+				return size() > memorySize;
+			}
+		};
+		this.records = new AppendLog(file, "SPARQL cache");
+
+		load();
+
+		long dead = entryRecords - index.size();
+		if (dead > index.size() && dead > COMPACT_MIN_DEAD)
+			compact();
+
+		records.open(); // drops an incomplete record at the end or a file of another version
+		if (records.position() == 0)
+			writeHeader(records.out());
+
+		log.info("SPARQL cache {} opened with {} URIs, {} strings", file, index.size(), strings.size());
+	}
+
+	/**
+	 * @return selector behind the shared cache of its class and dbpedia.sparql.url, or selector itself if
+	 *         dbpedia.cache.dir is not set. Caches are closed on JVM shutdown.
+	 */
+	public static synchronized DBPediaEdgeSelector wrap(DBPediaEdgeSelector selector) {
+
+		if (selector instanceof CachingDBPediaEdgeSelector || conf.getString("dbpedia.cache.dir") == null)
+			return selector;
+
+		String endpoint = DBPedia.SPARQLENDPOINT;
+		File file = new File(conf.getString("dbpedia.cache.dir"), selector.getClass().getSimpleName() + "-"
+		         + Integer.toHexString(endpoint.hashCode()) + ".log");
+
+		CachingDBPediaEdgeSelector cache = instances.get(file);
+		if (cache == null) {
+			try {
+				cache = new CachingDBPediaEdgeSelector(selector, file, endpoint, conf.getString("dbpedia.cache.version",
+				         ""), conf.getInt("dbpedia.cache.memory.size", 10000),
+				         conf.getInt("dbpedia.cache.ttl.days", 0) * 24L * 3600 * 1000);
+			}
+			catch (IOException e) {
+				log.warn("Opening SPARQL cache {} failed with {}", file, e.getMessage());
+				throw new RuntimeException(e);
+			}
+			instances.put(file, cache);
+			final CachingDBPediaEdgeSelector closeOnExit = cache;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						closeOnExit.close();
+					}
+					catch (IOException e) {
+						log.warn("Closing SPARQL cache failed with {}", e.getMessage());
+					}
+				}
+			});
+		}
+		return cache;
+	}
+
+	/**
+	 * @return Triples of uri, an empty list if it could not be fetched
+	 */
+	@Override
+	public ArrayList<Triple> get(String uri) {
+		ArrayList<Triple> triples = lookup(uri);
+		if (triples != null)
+			return new ArrayList<Triple>(triples);
+
+		ArrayList<String> uris = new ArrayList<String>(1);
+		uris.add(uri);
+		triples = getAll(uris).get(uri);
+		return (triples == null) ? new ArrayList<Triple>() : triples;
+	}
+
+	/**
+	 * Fetches the URIs which are not cached with one {@link BatchDBPediaEdgeSelector#getAll(Collection)} call if the
+	 * wrapped selector supports it. URIs left out by the wrapped selector are left out of the result as well and not
+	 * cached.
+	 */
+	@Override
+	public HashMap<String, ArrayList<Triple>> getAll(Collection<String> uris) {
+
+		HashMap<String, ArrayList<Triple>> triples = new HashMap<String, ArrayList<Triple>>();
+		ArrayList<String> missing = new ArrayList<String>();
+
+		for (String uri : uris) {
+			ArrayList<Triple> cached = lookup(uri);
+			if (cached != null)
+				triples.put(uri, new ArrayList<Triple>(cached));
+			else
+				missing.add(uri);
+		}
+		misses.addAndGet(missing.size());
+
+		if (missing.isEmpty())
+			return triples;
+
+		if (selector instanceof BatchDBPediaEdgeSelector) {
+			HashMap<String, ArrayList<Triple>> fetched = ((BatchDBPediaEdgeSelector) selector).getAll(missing);
+			for (String uri : missing) {
+				ArrayList<Triple> uriTriples = fetched.get(uri);
+				if (uriTriples == null) {
+					failures.incrementAndGet();
+					continue;
+				}
+				store(uri, uriTriples);
+				triples.put(uri, new ArrayList<Triple>(uriTriples));
+			}
+		}
+		else {
+			for (String uri : missing) {
+				ArrayList<Triple> uriTriples = selector.get(uri);
+				if (uriTriples.isEmpty())
+					failures.incrementAndGet(); // possibly failed, not cached
+				else
+					store(uri, uriTriples);
+				triples.put(uri, new ArrayList<Triple>(uriTriples));
+			}
+		}
+		return triples;
+	}
+
+	/**
+	 * @return Cached triples of uri (not to be modified) or null
+	 */
+	private ArrayList<Triple> lookup(String uri) {
+
+		synchronized (memory) {
+			Fetched entry = memory.get(uri);
+			if (entry != null) {
+				if (!expired(entry.fetched)) {
+					memoryHits.incrementAndGet();
+					return entry.triples;
+				}
+				memory.remove(uri);
+			}
+		}
+
+		Fetched entry;
+
+		lock.readLock().lock();
+		try {
+			if (!strings.contains(uri))
+				return null;
+			long offset = index.get(strings.lookupIndex(uri));
+			if (offset < 0)
+				return null;
+			entry = read(offset);
+		}
+		catch (IOException e) {
+			log.warn("Reading SPARQL cache {} failed with {}", file, e.getMessage());
+			return null;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+		if (entry == null)
+			return null; // expired
+
+		diskHits.incrementAndGet();
+		synchronized (memory) {
+			memory.put(uri, entry);
+		}
+		return entry.triples;
+	}
+
+	private void store(String uri, ArrayList<Triple> triples) {
+
+		long fetched = System.currentTimeMillis();
+
+		lock.writeLock().lock();
+		try {
+			DataOutputStream out = records.out();
+			if (out == null)
+				return; // closed
+
+			int[] ids = new int[3 * triples.size()];
+			for (int i = 0; i < triples.size(); i++) {
+				Triple t = triples.get(i);
+				ids[3 * i] = id(t.getSub());
+				ids[3 * i + 1] = id(t.getPred());
+				ids[3 * i + 2] = id(t.getObj());
+			}
+			int uriId = id(uri);
+
+			long offset = records.position();
+			out.writeByte(ENTRY);
+			out.writeInt(uriId);
+			out.writeLong(fetched);
+			out.writeInt(triples.size());
+			for (int id : ids)
+				out.writeInt(id);
+			entryRecords++;
+
+			index.put(uriId, offset);
+		}
+		catch (IOException e) {
+			log.warn("Writing SPARQL cache {} failed with {}", file, e.getMessage());
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+
+		synchronized (memory) {
+			memory.put(uri, new Fetched(fetched, triples));
+		}
+	}
+
+	private int id(String s) throws IOException {
+		if (strings.contains(s))
+			return strings.lookupIndex(s);
+		int id = strings.lookupIndex(s);
+		writeString(records.out(), id, s);
+		return id;
+	}
+
+	private static void writeString(DataOutputStream out, int id, String s) throws IOException {
+		out.writeByte(STRING);
+		out.writeInt(id);
+		out.writeUTF(s);
+	}
+
+	private boolean expired(long fetched) {
+		return ttlMsec > 0 && System.currentTimeMillis() - fetched > ttlMsec;
+	}
+
+	/**
+	 * @return Entry record at offset or null if it is older than ttlMsec
+	 */
+	private Fetched read(long offset) throws IOException {
+
+		ByteBuffer head = ByteBuffer.allocate(ENTRY_HEADER_SIZE - 1 - 4);
+		records.readFully(head, offset + 1 + 4);
+		long fetched = head.getLong();
+		int n = head.getInt();
+
+		if (expired(fetched))
+			return null;
+
+		ByteBuffer body = ByteBuffer.allocate(12 * n);
+		records.readFully(body, offset + ENTRY_HEADER_SIZE);
+		ArrayList<Triple> triples = new ArrayList<Triple>(n);
+		for (int i = 0; i < n; i++)
+			triples.add(new Triple(strings.lookupObject(body.getInt()), strings.lookupObject(body.getInt()), strings
+			         .lookupObject(body.getInt())));
+		return new Fetched(fetched, triples);
+	}
+
+	/**
+	 * Writes buffered records to the log file
+	 */
+	public void flush() throws IOException {
+		lock.writeLock().lock();
+		try {
+			records.flush();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (records.out() == null)
+				return;
+			records.close();
+			log.info("SPARQL cache {} closed: {}", file, getStats());
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return Cache metrics, e.g. for logging after a run
+	 */
+	public String getStats() {
+		return String.format("memoryHits=%d diskHits=%d misses=%d failures=%d uris=%d strings=%d", memoryHits.get(),
+		         diskHits.get(), misses.get(), failures.get(), index.size(), strings.size());
+	}
+
+	private void writeHeader(DataOutputStream dst) throws IOException {
+		dst.writeByte(HEADER);
+		dst.writeUTF(endpoint);
+		dst.writeUTF(version);
+	}
+
+	/**
+	 * Replays the log into the string and URI index. A log of another endpoint or version is dropped.
+	 */
+	private void load() throws IOException {
+
+		records.replay(new AppendLog.Replayer() {
+			@Override
+			public boolean record(int type, DataInputStream in, long offset) throws IOException {
+				if (offset == 0) {
+					if (type != HEADER)
+						throw new IOException("Missing header in SPARQL cache " + file);
+					String fileEndpoint = in.readUTF();
+					String fileVersion = in.readUTF();
+					if (!fileEndpoint.equals(endpoint) || !fileVersion.equals(version)) {
+						log.info("SPARQL cache {} of {} version '{}' dropped", file, fileEndpoint, fileVersion);
+						return false;
+					}
+				}
+				else if (type == ENTRY) {
+					int uriId = in.readInt();
+					in.readLong();
+					int n = in.readInt();
+					for (int i = 0; i < 3 * n; i++)
+						in.readInt();
+					entryRecords++;
+					index.put(uriId, offset);
+				}
+				else if (type == STRING) {
+					int id = in.readInt();
+					String s = in.readUTF();
+					if (strings.lookupIndex(s) != id)
+						throw new IOException("Corrupt SPARQL cache " + file + ": id " + id + " of " + s);
+				}
+				else {
+					throw new IOException("Corrupt SPARQL cache " + file + ": record type " + type + " at " + offset);
+				}
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Rewrites the log with the header, the interned strings and the latest entry of each URI only
+	 */
+	private void compact() throws IOException {
+
+		final int[] uriIds = index.keys();
+
+		records.compact(new AppendLog.Rewriter() {
+			@Override
+			public void rewrite(AppendLog.Output dst) throws IOException {
+				writeHeader(dst);
+				for (int id = 0; id < strings.size(); id++)
+					writeString(dst, id, strings.lookupObject(id));
+
+				for (int uriId : uriIds) {
+					long offset = index.get(uriId);
+					ByteBuffer head = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+					records.readFully(head, offset);
+					ByteBuffer body = ByteBuffer.allocate(12 * head.getInt(ENTRY_HEADER_SIZE - 4));
+					records.readFully(body, offset + ENTRY_HEADER_SIZE);
+					index.put(uriId, dst.position());
+					dst.write(head.array());
+					dst.write(body.array());
+				}
+			}
+		});
+
+		log.info("SPARQL cache {} compacted from {} to {} entries", file, entryRecords, uriIds.length);
+		entryRecords = uriIds.length;
+	}
+
+	/**
+	 * Triple list with the time it was fetched
+	 */
+	private static class Fetched {
+
+		final long	             fetched;
+		final ArrayList<Triple>	triples;
+
+		Fetched(long fetched, ArrayList<Triple> triples) {
+			this.fetched = fetched;
+			this.triples = triples;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return selector.toString();
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		CachingDBPediaEdgeSelector selector = new CachingDBPediaEdgeSelector(new DBPediaAllOutgoing(), new File(
+		         "output/sparqlcache-test.log"), DBPedia.SPARQLENDPOINT, "", 1000, 0);
+
+		System.out.println(selector.get("http://dbpedia.org/resource/Jimmy_Carter").size());
+		System.out.println(selector.get("http://dbpedia.org/resource/Jimmy_Carter").size());
+		System.out.println(selector.getStats());
+
+		selector.close();
+	}
+
+}
@@ -1,11 +1,22 @@
 package de.uma.dws.graphsm.webservice;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryExecutionFactory;
 import com.hp.hpl.jena.query.QueryFactory;
@@ -29,6 +40,10 @@ public class DBPedia {
 	
 	final static String SPARQLENDPOINT = conf.getString("dbpedia.sparql.url");
 	
+	// Shared by all threads, replaces the pause before each request
+	final static EndpointRateLimiter limiter = EndpointRateLimiter.forEndpoint(SPARQLENDPOINT,
+				conf.getInt("dbpedia.conn.pauses.each.conn.msec"));
+	
 	final static String NAMESPACES = 
 										"PREFIX rdf: 		<http://www.w3.org/1999/02/22-rdf-syntax-ns#>" 		+ "\n" +
 		       						 "PREFIX rdfs: 	<http://www.w3.org/2000/01/rdf-schema#> " 			+ "\n" +
@@ -36,6 +51,18 @@ public class DBPedia {
 								       "PREFIX owl: 	<http://www.w3.org/2002/07/owl#>" 					+ "\n" +
 								       "PREFIX skos:	<http://www.w3.org/2004/02/skos/core#>" 			+ "\n";
 	
+	// Expanded URIs of the prefixes in NAMESPACES
+	final static HashMap<String, String> PREFIXES = new HashMap<String, String>();
+	static {
+		Matcher m = Pattern.compile("PREFIX\\s+(\\w+):\\s*<([^>]+)>").matcher(NAMESPACES);
+		while (m.find())
+			PREFIXES.put(m.group(1), m.group(2));
+	}
+	
+	// Predicates of getDcTerm, getRdfType, getRdfsSubClassOf and getSkosBroaderTerm
+	final static String[] HIERARCHY_PREDICATES = 
+		{"dcterms:subject", "rdf:type", "rdfs:subClassOf", "skos:broader", "skos:broaderOf"};
+	
 	public DBPedia() {};
 	
 	public static ArrayList<Triple> getAllOutgoingLinks(String dbPediaUri) {
@@ -81,7 +108,7 @@ public class DBPedia {
 		while (i < conf.getInt("dbpedia.conn.retries")) {
 			i++;
 			try {
-				Thread.sleep(conf.getInt("dbpedia.conn.pauses.each.conn.msec"));
+				limiter.acquire();
 			    ResultSet rs = qe.execSelect();
 			    while ( rs.hasNext() ) {
 			    	QuerySolution qs = rs.next();
@@ -114,6 +141,218 @@ public class DBPedia {
 		return allTriple; //useless code
 	}
 	
+	/**
+	 * Batched {@link #getAllOutgoingLinks(String)} with one query per dbpedia.sparql.batch.size URIs
+	 * 
+	 * @return Triples of each URI, an empty list for URIs without triples. URIs whose query failed after all retries
+	 *         (or could not be created) are left out, so callers can tell them from URIs without triples.
+	 */
+	public static HashMap<String, ArrayList<Triple>> getAllOutgoingLinks(Collection<String> dbPediaUris) {
+		return batchSpoQuery(dbPediaUris, true, null);
+	}
+	
+	/**
+	 * Batched {@link #getAllIngoingLinks(String)}, see {@link #getAllOutgoingLinks(Collection)}
+	 */
+	public static HashMap<String, ArrayList<Triple>> getAllIngoingLinks(Collection<String> dbPediaUris) {
+		return batchSpoQuery(dbPediaUris, false, null);
+	}
+	
+	/**
+	 * Batched union of {@link #getDcTerm(String)}, {@link #getRdfType(String)}, {@link #getRdfsSubClassOf(String)} and
+	 * {@link #getSkosBroaderTerm(String)} in one query, see {@link #getAllOutgoingLinks(Collection)}
+	 */
+	public static HashMap<String, ArrayList<Triple>> getConceptHierarchy(Collection<String> dbPediaUris) {
+		return batchSpoQuery(dbPediaUris, true, HIERARCHY_PREDICATES);
+	}
+	
+	/**
+	 * Batched form of {@link #generalSpoQuery(String, String, String)}: binds chunks of URIs to ?subj (outgoing) or ?obj
+	 * (ingoing) in a VALUES block and demultiplexes the result rows per URI. Triples equal those of the single URI
+	 * queries, i.e. the URIs and the predicates given in preds keep the form they were requested in and triples with
+	 * literals are skipped. Prefixed names are expanded before binding, result URIs are matched to the requested ones
+	 * after normalizing both (see {@link #normalize(String)}).
+	 * 
+	 * @param preds
+	 *           Predicates to query, bound to ?pred in a second VALUES block, or null for all predicates
+	 * @return Triples of each URI queried successfully (an empty list if it has none), failed URIs are left out
+	 */
+	public static HashMap<String, ArrayList<Triple>> batchSpoQuery(Collection<String> uris, boolean outgoing, String[] preds) {
+		
+		HashMap<String, ArrayList<Triple>> triples = new HashMap<String, ArrayList<Triple>>();
+		
+		int batchSize = conf.getInt("dbpedia.sparql.batch.size", 50);
+		ArrayList<String> batch = new ArrayList<String>(batchSize);
+		Iterator<String> iter = new LinkedHashSet<String>(uris).iterator();
+		while (iter.hasNext()) {
+			batch.add(iter.next());
+			if (batch.size() == batchSize || !iter.hasNext()) {
+				batchSpoQuery(batch, outgoing, preds, triples);
+				batch.clear();
+			}
+		}
+		return triples;
+	}
+	
+	private static void batchSpoQuery(
+				ArrayList<String> uris, boolean outgoing, String[] preds, HashMap<String, ArrayList<Triple>> triples) {
+		
+		String var = outgoing ? "subj" : "obj";
+		
+		// URIs and predicates are reported in the form they were requested in
+		HashMap<String, ArrayList<String>> requested = new HashMap<String, ArrayList<String>>();
+		HashMap<String, String> predNames = null;
+		StringBuilder q = new StringBuilder(NAMESPACES);
+		q.append("SELECT ?subj ?pred ?obj WHERE { VALUES ?").append(var).append(" {");
+		for (String uri : uris) {
+			String expanded = expand(uri);
+			// As in generalSpoQuery, names of unknown prefixes are bound as they are and fail query creation
+			q.append(" ").append(expanded.contains("://") ? "<" + expanded + ">" : expanded);
+			String key = normalize(expanded);
+			ArrayList<String> names = requested.get(key);
+			if (names == null) {
+				names = new ArrayList<String>(1);
+				requested.put(key, names);
+			}
+			names.add(uri);
+		}
+		q.append(" } ");
+		if (preds != null) {
+			predNames = new HashMap<String, String>();
+			q.append("VALUES ?pred {");
+			for (String pred : preds) {
+				q.append(" ").append(pred.contains("://") ? "<" + pred + ">" : pred);
+				predNames.put(expand(pred), pred);
+			}
+			q.append(" } ");
+		}
+		q.append("?subj ?pred ?obj .}");
+		
+		Query query;
+		try {
+			query = QueryFactory.create(q.toString(), Syntax.syntaxSPARQL_11);
+		} catch (ARQException e) {
+			// One malformed URI spoils the batch, query the others separately
+			splitBatch(uris, outgoing, preds, triples, "query creation failed: " + e);
+			return;
+		}
+		
+		int maxRows = conf.getInt("dbpedia.sparql.max.rows", 10000);
+		int i = 0;
+		while (i < conf.getInt("dbpedia.conn.retries")) {
+			i++;
+			HashMap<String, ArrayList<Triple>> batchTriples = new HashMap<String, ArrayList<Triple>>();
+			TreeSet<String> unmatched = new TreeSet<String>();
+			int rows = 0;
+			QueryExecution qe = QueryExecutionFactory.sparqlService(SPARQLENDPOINT, query);
+			qe.setTimeout(1000*conf.getInt("dbpedia.conn.timeout.sec"));
+			try {
+				limiter.acquire();
+				ResultSet rs = qe.execSelect();
+				while ( rs.hasNext() ) {
+					QuerySolution qs = rs.next();
+					rows++;
+					//Now skipping <URI,URI,Literal> triples
+					if (!qs.get("obj").isURIResource())
+						continue;
+					String subj = qs.getResource("subj").getURI();
+					String pred = qs.getResource("pred").getURI();
+					String obj = qs.getResource("obj").getURI();
+					if (predNames != null && predNames.containsKey(pred))
+						pred = predNames.get(pred);
+					String uri = outgoing ? subj : obj;
+					ArrayList<String> names = requested.get(normalize(uri));
+					if (names == null) {
+						unmatched.add(uri);
+						continue;
+					}
+					for (String name : names) {
+						ArrayList<Triple> uriTriples = batchTriples.get(name);
+						if (uriTriples == null) {
+							uriTriples = new ArrayList<Triple>();
+							batchTriples.put(name, uriTriples);
+						}
+						uriTriples.add(outgoing ? new Triple(name, pred, obj) : new Triple(subj, pred, name));
+					}
+				}
+			}
+			catch(Exception e) {
+				int wait = conf.getInt("dbpedia.conn.wait.after.error.sec");
+				log.info("Connection error for batch of {} URIs: {}", uris.size(), e.toString());
+				log.info("Waiting for {} sec for retry {}", wait, i);
+				log.warn("SPARQL Endpoint at {}", SPARQLENDPOINT);
+				try {Thread.sleep(1000*wait);} 
+				catch (InterruptedException e1) {log.warn(e1.toString());}
+				continue;
+			}
+			finally {
+				qe.close();
+			}
+			
+			// The endpoint truncates results silently at its max. number of rows
+			if (rows >= maxRows && uris.size() > 1) {
+				splitBatch(uris, outgoing, preds, triples, rows + " rows may be truncated");
+				return;
+			}
+			
+			if (!unmatched.isEmpty())
+				log.warn("Batch query returned rows for {} URIs matching no requested URI, rows skipped: {}",
+							unmatched.size(), unmatched);
+			
+			// Only now the URIs of the batch count as fetched
+			for (String uri : uris) {
+				ArrayList<Triple> uriTriples = batchTriples.get(uri);
+				triples.put(uri, (uriTriples == null) ? new ArrayList<Triple>() : uriTriples);
+			}
+			return;
+		}
+		log.error("DBPedia connection failed ultimately after {} attempts: batch of {} URIs left out.", i, uris.size());
+		log.warn("SPARQL Endpoint at {}", SPARQLENDPOINT);
+	}
+	
+	private static void splitBatch(
+				ArrayList<String> uris, boolean outgoing, String[] preds, HashMap<String, ArrayList<Triple>> triples, String reason) {
+		
+		if (uris.size() == 1) {
+			log.warn("Skipping batch query for {}, left out of the result: {}", uris.get(0), reason);
+			return;
+		}
+		log.debug("Splitting batch of {} URIs: {}", uris.size(), reason);
+		int half = uris.size() / 2;
+		batchSpoQuery(new ArrayList<String>(uris.subList(0, half)), outgoing, preds, triples);
+		batchSpoQuery(new ArrayList<String>(uris.subList(half, uris.size())), outgoing, preds, triples);
+	}
+	
+	/**
+	 * @return Full URI of a prefixed name with a prefix of NAMESPACES, other strings unchanged
+	 */
+	static String expand(String uri) {
+		int colon = uri.indexOf(':');
+		if (colon > 0 && !uri.contains("://")) {
+			String ns = PREFIXES.get(uri.substring(0, colon));
+			if (ns != null)
+				return ns + uri.substring(colon + 1);
+		}
+		return uri;
+	}
+	
+	/**
+	 * @return uri with prefix expanded, percent escapes decoded (UTF-8) and in Unicode NFC, so the forms of one URI in
+	 *         a request and in a SPARQL result compare equal
+	 */
+	static String normalize(String uri) {
+		String u = expand(uri.trim());
+		if (u.indexOf('%') >= 0) {
+			try {
+				u = URLDecoder.decode(u.replace("+", "%2B"), "UTF-8");
+			}
+			catch (IllegalArgumentException | UnsupportedEncodingException e) {
+				// Not a valid escape sequence, compared as it is
+			}
+		}
+		return Normalizer.normalize(u, Normalizer.Form.NFC);
+	}
+	
 	public static ArrayList<Triple> getRdfType(String dbPediaUri) {
 		return generalSpoQuery(dbPediaUri, "rdf:type", "?obj");
 		//TODO Custom filtering here
@@ -161,7 +400,7 @@ public class DBPedia {
 		while (i < conf.getInt("dbpedia.conn.retries")) {
 			i++;
 			try {
-				Thread.sleep(conf.getInt("dbpedia.conn.pauses.each.conn.msec"));
+				limiter.acquire();
 			    ResultSet rs = qe.execSelect();
 			    if ( rs.hasNext() ) {
 			    	QuerySolution qs = rs.next();
@@ -1,10 +1,12 @@
 package de.uma.dws.graphsm.webservice;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 
 import de.uma.dws.graphsm.datamodel.Triple;
 
-public class DBPediaAllIngoingOutgoing implements DBPediaEdgeSelector {
+public class DBPediaAllIngoingOutgoing implements BatchDBPediaEdgeSelector {
 
 	@Override
 	public ArrayList<Triple> get(String uri) {
@@ -13,6 +15,17 @@ public class DBPediaAllIngoingOutgoing implements DBPediaEdgeSelector {
 		return fetchedTriple;
 	}
 	
+	@Override
+	public HashMap<String, ArrayList<Triple>> getAll(Collection<String> uris) {
+		HashMap<String, ArrayList<Triple>> fetchedTriple = DBPedia.getAllOutgoingLinks(uris);
+		HashMap<String, ArrayList<Triple>> ingoing = DBPedia.getAllIngoingLinks(uris);
+		// A URI is fetched only if both of its queries succeeded
+		fetchedTriple.keySet().retainAll(ingoing.keySet());
+		for (String uri : fetchedTriple.keySet())
+			fetchedTriple.get(uri).addAll(ingoing.get(uri));
+		return fetchedTriple;
+	}
+	
 	//TODO nicer description
 	public String toString() {
 		return "DBPediaAllIngoingOutgoing Edgle Selector gets all ingoing (?s ?p uri) and outgoing (uri ?s ?o) links";
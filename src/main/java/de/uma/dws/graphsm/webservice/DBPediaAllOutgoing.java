@@ -1,10 +1,12 @@
 package de.uma.dws.graphsm.webservice;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 
 import de.uma.dws.graphsm.datamodel.Triple;
 
-public class DBPediaAllOutgoing implements DBPediaEdgeSelector {
+public class DBPediaAllOutgoing implements BatchDBPediaEdgeSelector {
 
 	@Override
 	public ArrayList<Triple> get(String uri) {
@@ -12,6 +14,11 @@ public class DBPediaAllOutgoing implements DBPediaEdgeSelector {
 		return fetchedTriple;
 	}
 	
+	@Override
+	public HashMap<String, ArrayList<Triple>> getAll(Collection<String> uris) {
+		return DBPedia.getAllOutgoingLinks(uris);
+	}
+	
 	//TODO nicer description
 	public String toString() {
 		return "DBPediaAllOutgoing Edgle Selector gets all outgoing (uri ?s ?o) links";
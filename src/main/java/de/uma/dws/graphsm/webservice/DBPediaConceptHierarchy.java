@@ -1,18 +1,25 @@
 package de.uma.dws.graphsm.webservice;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 
 import de.uma.dws.graphsm.datamodel.Triple;
 
-public class DBPediaConceptHierarchy implements DBPediaEdgeSelector {
+public class DBPediaConceptHierarchy implements BatchDBPediaEdgeSelector {
 
 	@Override
 	public ArrayList<Triple> get(String uri) {
-		ArrayList<Triple> fetchedTriple = DBPedia.getDcTerm(uri);
-		fetchedTriple.addAll(DBPedia.getRdfType(uri));
-		fetchedTriple.addAll(DBPedia.getRdfsSubClassOf(uri));
-		fetchedTriple.addAll(DBPedia.getSkosBroaderTerm(uri));
-		return fetchedTriple;
+		// One query for all five hierarchy predicates
+		ArrayList<String> uris = new ArrayList<String>(1);
+		uris.add(uri);
+		ArrayList<Triple> triples = DBPedia.getConceptHierarchy(uris).get(uri);
+		return (triples == null) ? new ArrayList<Triple>() : triples;
+	}
+	
+	@Override
+	public HashMap<String, ArrayList<Triple>> getAll(Collection<String> uris) {
+		return DBPedia.getConceptHierarchy(uris);
 	}
 	
 	//TODO nicer description
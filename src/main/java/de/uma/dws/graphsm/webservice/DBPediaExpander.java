@@ -0,0 +1,192 @@
+package de.uma.dws.graphsm.webservice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+import de.uma.dws.graphsm.datamodel.Triple;
+
+/**
+ * Concurrent, pipelined expansion of DBpedia source nodes. URIs are fetched by tasks on one pool of
+ * dbpedia.conn.parallel threads shared by all expansions, so at most that many requests are in flight over all
+ * documents built at the same time; {@link DBPedia} additionally spaces the requests to its endpoint. URIs of a result
+ * are submitted for the next hop right away instead of waiting for the whole hop to finish, and the filtered triples
+ * are handed to the caller's thread as they arrive, e.g. to be written to Neo4j while other requests are running.
+ * Each task fetches one URI, or up to dbpedia.sparql.batch.size URIs of the same hop with a
+ * {@link BatchDBPediaEdgeSelector}. Selectors are put behind the {@link CachingDBPediaEdgeSelector} of their class
+ * if dbpedia.cache.dir is set.
+ */
+public class DBPediaExpander {
+
+	final static Logger	           log	  = LoggerFactory.getLogger(DBPediaExpander.class);
+	final static Configuration	   conf	  = ConfFactory.getConf();
+
+	private static ExecutorService	pool	= null;
+
+	final DBPediaEdgeSelector	     selector;
+	final DBPediaFilter	           filter;
+	final int	                     batchSize;
+
+	/**
+	 * Receives the new (not yet handed over) filtered triples of each fetched URI
+	 */
+	public interface TripleHandler {
+		public void add(Collection<Triple> triples);
+	}
+
+	public DBPediaExpander(DBPediaEdgeSelector selector, DBPediaFilter filter) {
+		this.selector = CachingDBPediaEdgeSelector.wrap(selector);
+		this.filter = filter;
+		this.batchSize = (selector instanceof BatchDBPediaEdgeSelector) ? conf.getInt("dbpedia.sparql.batch.size", 50) : 1;
+	}
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			int threads = conf.getInt("dbpedia.conn.parallel", conf.getInt("system.parallel.threads", 1));
+			pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+				final AtomicInteger	count	= new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "dbpedia-fetch-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			log.info("DBPedia expansion with {} parallel requests", threads);
+		}
+		return pool;
+	}
+
+	/**
+	 * Fetches the neighbourhood of the source URIs up to hopsLimit hops. The result is the same as expanding hop by hop:
+	 * a URI is fetched once with the smallest hop it is found at, again only if a shorter path to it turns up later.
+	 *
+	 * @param handler
+	 *           Called in the caller's thread with the new filtered triples of each fetched URI
+	 * @return Number of distinct triples handed to handler
+	 */
+	public int expand(Collection<String> sourceUris, int hopsLimit, TripleHandler handler) {
+
+		HashSet<String> uris = filter.defaultPredicateFilter(filter.defaultCategoriesFilter(new HashSet<String>(
+		         sourceUris)));
+
+		ExecutorCompletionService<Fetch> completion = new ExecutorCompletionService<Fetch>(getPool());
+		HashMap<String, Integer> hopOf = new HashMap<String, Integer>();
+		HashSet<String> seenTriples = new HashSet<String>();
+		int[] fetchedUris = new int[hopsLimit + 1];
+		int[] newTriples = new int[hopsLimit + 1];
+		int pending = 0;
+
+		if (hopsLimit > 0) {
+			for (String uri : uris)
+				hopOf.put(uri, 1);
+			pending += submit(completion, new ArrayList<String>(uris), 1);
+		}
+
+		try {
+			while (pending > 0) {
+
+				Fetch fetch = completion.take().get();
+				pending--;
+				fetchedUris[fetch.hop] += fetch.uris.size();
+
+				ArrayList<Triple> added = new ArrayList<Triple>();
+				for (Triple t : fetch.triples) {
+					if (filter.accept(t) && seenTriples.add(t.getSub() + "\t" + t.getPred() + "\t" + t.getObj()))
+						added.add(t);
+				}
+				newTriples[fetch.hop] += added.size();
+
+				if (fetch.hop < hopsLimit) {
+					int nextHop = fetch.hop + 1;
+					ArrayList<String> next = new ArrayList<String>();
+					for (Triple t : fetch.triples) {
+						if (!filter.accept(t))
+							continue;
+						for (String uri : new String[] { t.getSub(), t.getObj() }) {
+							Integer hop = hopOf.get(uri);
+							if (hop == null || hop > nextHop) {
+								hopOf.put(uri, nextHop);
+								next.add(uri);
+							}
+						}
+					}
+					pending += submit(completion, next, nextHop);
+				}
+
+				if (!added.isEmpty())
+					handler.add(added);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while expanding DBPedia source nodes");
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException("DBPedia expansion failed", e.getCause());
+		}
+
+		for (int i = 1; i <= hopsLimit; i++)
+			log.info("Expansion hop {} fetched {} URIs and extracted {} new triple", i, fetchedUris[i], newTriples[i]);
+
+		return seenTriples.size();
+	}
+
+	/**
+	 * Submits the URIs in chunks of batchSize
+	 * 
+	 * @return Number of submitted fetches
+	 */
+	private int submit(ExecutorCompletionService<Fetch> completion, List<String> uris, int hop) {
+		int fetches = 0;
+		for (int from = 0; from < uris.size(); from += batchSize) {
+			completion.submit(new Fetch(uris.subList(from, Math.min(from + batchSize, uris.size())), hop));
+			fetches++;
+		}
+		return fetches;
+	}
+
+	/**
+	 * Result of one selector request
+	 */
+	class Fetch implements Callable<Fetch> {
+
+		final List<String>	 uris;
+		final int	         hop;
+		ArrayList<Triple>	 triples;
+
+		Fetch(List<String> uris, int hop) {
+			this.uris = uris;
+			this.hop = hop;
+		}
+
+		@Override
+		public Fetch call() {
+			if (uris.size() == 1) {
+				triples = selector.get(uris.get(0));
+			}
+			else {
+				triples = new ArrayList<Triple>();
+				for (ArrayList<Triple> uriTriples : ((BatchDBPediaEdgeSelector) selector).getAll(uris).values())
+					triples.addAll(uriTriples);
+			}
+			return this;
+		}
+	}
+
+}
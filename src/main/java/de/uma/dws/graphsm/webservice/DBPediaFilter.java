@@ -94,6 +94,17 @@ public class DBPediaFilter {
 		return returnCopy(uriList, predFilter);
 	}
 	
+	/**
+	 * @return false if the subject, predicate or object of t is on the categories or predicates filter list, same as
+	 *         {@link #defaultCategoriesFilter(Collection)} and {@link #defaultPredicateFilter(Collection)} for a single
+	 *         triple without logging
+	 */
+	public boolean accept(Triple t) {
+		return !(categoriesFilter.contains(t.getObj()) || categoriesFilter.contains(t.getSub())
+		         || categoriesFilter.contains(t.getPred()) || predFilter.contains(t.getObj())
+		         || predFilter.contains(t.getSub()) || predFilter.contains(t.getPred()));
+	}
+	
 	public static void main(String[] args) {
 		
 		ArrayList<Triple> triple = new ArrayList<Triple>(3);
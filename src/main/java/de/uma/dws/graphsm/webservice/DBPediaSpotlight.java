@@ -14,9 +14,7 @@ import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.type.TypeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,16 +27,19 @@ public class DBPediaSpotlight implements Annotator{
 	final static Logger log = LoggerFactory.getLogger(DBPediaSpotlight.class);
 	final static Configuration conf = ConfFactory.getConf();
 	final static String dbPediaSpotlightUrl = conf.getString("dbpedia.spotlight.url");
+	final static String DISAMBIGUATOR = "Default"; //Document //Default
+	final static String CONFIDENCE = "0.2";
+	final static String SUPPORT = "3";
 	
 	@SuppressWarnings("unchecked")
 	public ArrayList<String> annotate(String text) {
 		
 		List<NameValuePair> params = new ArrayList<NameValuePair>();
-		params.add(new BasicNameValuePair("disambiguator", "Default")); //Document //Default
+		params.add(new BasicNameValuePair("disambiguator", DISAMBIGUATOR));
 		//params.add(new BasicNameValuePair("spotter", "AtLeastOneNounSelector")); //LingPipeSpotter (=all), CoOccurrenceBasedSelector
 		//TODO Read confidence, support, disambiguator from conf file
-		params.add(new BasicNameValuePair("confidence", "0.2"));
-		params.add(new BasicNameValuePair("support", "3"));
+		params.add(new BasicNameValuePair("confidence", CONFIDENCE));
+		params.add(new BasicNameValuePair("support", SUPPORT));
 		params.add(new BasicNameValuePair("text", text));
 		//params.add(new BasicNameValuePair("types", "")); //Person,Organisation
 		//params.add(new BasicNameValuePair("policy", "whitelist"));
@@ -47,18 +48,18 @@ public class DBPediaSpotlight implements Annotator{
 		httppost.setHeader("Accept", "application/json");
 		httppost.setHeader("content-type", "application/x-www-form-urlencoded");
 		
-		DefaultHttpClient httpclient = new DefaultHttpClient();
 		HashMap<String,Object> jsonResult = null;
 		
 		try {
 			UrlEncodedFormEntity entity = new UrlEncodedFormEntity(params, "UTF-8");
 			httppost.setEntity(entity);
-			HttpResponse res = httpclient.execute(httppost);
+			HttpResponse res = HttpClientFactory.getClient().execute(httppost);
 			log.debug("Connection status: {}", res);
 		    TypeReference<HashMap<String,Object>> typeRef = new TypeReference<HashMap<String,Object>>() {};
-		    jsonResult = new ObjectMapper().readValue(res.getEntity().getContent(), typeRef);
+		    jsonResult = HttpClientFactory.getMapper().readValue(res.getEntity().getContent(), typeRef);
 		} catch (ClientProtocolException e) {
 			log.warn("DBPedia Spotlight connection error: {}", e);
+			return new ArrayList<String>();
 		} catch (IOException e) {
 			log.error("{}",e);
 			return new ArrayList<String>();
@@ -99,6 +100,11 @@ public class DBPediaSpotlight implements Annotator{
 	   return "Spotlight";
    }
 
+	@Override
+	public String getSetup() {
+		return dbPediaSpotlightUrl + "?disambiguator=" + DISAMBIGUATOR + "&confidence=" + CONFIDENCE + "&support=" + SUPPORT;
+	}
+
 	public static void main(String[] args) {
 		File  f = new File("src/main/resources/dataset/NewsObamaBerlin/newspaper_all_text.txt");
 		ArrayList<String> line = MyFileReader.readLinesFile(f);
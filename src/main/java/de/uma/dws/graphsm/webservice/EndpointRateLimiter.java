@@ -0,0 +1,50 @@
+package de.uma.dws.graphsm.webservice;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces the requests of all threads to one endpoint by a minimum interval. Each caller reserves the next free time
+ * slot and sleeps until it starts, so concurrent callers are served in order without busy waiting.
+ */
+public class EndpointRateLimiter {
+
+	private static final HashMap<String, EndpointRateLimiter>	limiters	= new HashMap<String, EndpointRateLimiter>();
+
+	final long	                                              intervalNanos;
+	private long	                                            nextSlot	= System.nanoTime();
+
+	public EndpointRateLimiter(long minIntervalMsec) {
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minIntervalMsec));
+	}
+
+	/**
+	 * @return The limiter shared by all requests to endpoint, created with minIntervalMsec on first use
+	 */
+	public static synchronized EndpointRateLimiter forEndpoint(String endpoint, long minIntervalMsec) {
+		EndpointRateLimiter limiter = limiters.get(endpoint);
+		if (limiter == null) {
+			limiter = new EndpointRateLimiter(minIntervalMsec);
+			limiters.put(endpoint, limiter);
+		}
+		return limiter;
+	}
+
+	/**
+	 * Blocks until the next request may be sent
+	 */
+	public void acquire() throws InterruptedException {
+		if (intervalNanos == 0)
+			return;
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long slot = Math.max(now, nextSlot);
+			nextSlot = slot + intervalNanos;
+			wait = slot - now;
+		}
+		if (wait > 0)
+			TimeUnit.NANOSECONDS.sleep(wait);
+	}
+
+}
@@ -0,0 +1,50 @@
+package de.uma.dws.graphsm.webservice;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uma.dws.graphsm.ConfFactory;
+
+/**
+ * HTTP client and JSON mapper shared by the annotation web services. The client keeps up to http.pool.size alive
+ * connections per host, so consecutive requests skip the TCP (and TLS) handshake. Both are thread-safe.
+ */
+public class HttpClientFactory {
+
+	final static Logger	        log	   = LoggerFactory.getLogger(HttpClientFactory.class);
+	final static Configuration	  conf	  = ConfFactory.getConf();
+
+	private static HttpClient	  client	= null;
+	private static ObjectMapper	mapper	= null;
+
+	private HttpClientFactory() {
+	}
+
+	public static synchronized HttpClient getClient() {
+		if (client == null) {
+			int poolSize = Math.max(1, conf.getInt("http.pool.size", conf.getInt("system.parallel.threads", 1)));
+			PoolingClientConnectionManager connManager = new PoolingClientConnectionManager();
+			connManager.setMaxTotal(poolSize);
+			connManager.setDefaultMaxPerRoute(poolSize);
+
+			client = new DefaultHttpClient(connManager);
+			HttpConnectionParams.setConnectionTimeout(client.getParams(), conf.getInt("http.conn.timeout.sec", 30) * 1000);
+			HttpConnectionParams.setSoTimeout(client.getParams(), conf.getInt("http.socket.timeout.sec", 120) * 1000);
+			log.info("Shared HTTP client with {} pooled connections", poolSize);
+		}
+		return client;
+	}
+
+	public static synchronized ObjectMapper getMapper() {
+		if (mapper == null)
+			mapper = new ObjectMapper();
+		return mapper;
+	}
+
+}
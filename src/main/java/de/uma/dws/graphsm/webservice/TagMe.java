@@ -14,9 +14,7 @@ import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.type.TypeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,21 +55,21 @@ public class TagMe implements Annotator{
 		httppost.setHeader("Accept", "application/json");
 		httppost.setHeader("content-type", "application/x-www-form-urlencoded");
 
-		DefaultHttpClient httpclient = new DefaultHttpClient();
 		HashMap<String, Object> jsonResult = null;
 
 		try {
 			UrlEncodedFormEntity entity = new UrlEncodedFormEntity(params, "UTF-8");
 			httppost.setEntity(entity);
-			HttpResponse res = httpclient.execute(httppost);
+			HttpResponse res = HttpClientFactory.getClient().execute(httppost);
 			log.debug("Connection status: {}", res);
 
 			TypeReference<HashMap<String, Object>> typeRef = new TypeReference<HashMap<String, Object>>() {
 			};
-			jsonResult = new ObjectMapper().readValue(res.getEntity().getContent(), typeRef);
+			jsonResult = HttpClientFactory.getMapper().readValue(res.getEntity().getContent(), typeRef);
 		}
 		catch (ClientProtocolException e) {
 			log.warn("TagMe Annotation Service connection error: {}", e);
+			return new ArrayList<String>();
 		}
 		catch (IOException e) {
 			log.error("{}", e);
@@ -137,6 +135,11 @@ public class TagMe implements Annotator{
 	   return "TagMe";
    }
 
+	@Override
+	public String getSetup() {
+		return TagMeUrl;
+	}
+
 
 	public static void main(String[] args) {
 		